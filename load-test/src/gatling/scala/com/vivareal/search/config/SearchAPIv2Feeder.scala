@@ -1,7 +1,11 @@
 package com.vivareal.search.config
 
+import java.util.Locale
+
 import com.typesafe.config.ConfigFactory
 
+import scala.collection.JavaConverters._
+import scala.math._
 import scala.util.Random
 
 object SearchAPIv2Feeder {
@@ -21,4 +25,22 @@ object SearchAPIv2Feeder {
       .map(ids => Map("value" -> ids.mkString(",")))
       .toArray
   }
+
+  def polygons(): Array[Map[String, String]] = {
+    val vertices = config.getInt("gatling.polygons.vertices")
+
+    // Neighbourhood like outlines (~2km wide), as drawn on a map with a few meters of noise on each vertex
+    config.getStringList("api.polygons.centers").asScala.flatMap(center => {
+      val Array(lat, lon) = center.split(",").map(_.toDouble)
+      (1 to 10).map(_ => {
+        val lobes = 2 + Random.nextInt(4)
+        val points = (0 until vertices).map(i => {
+          val angle = 2 * Pi * i / vertices
+          val radius = 0.01 * (1 + 0.3 * sin(lobes * angle)) + 0.00005 * Random.nextGaussian()
+          "[%.6f,%.6f]".formatLocal(Locale.US, lon + radius * cos(angle), lat + radius * sin(angle))
+        })
+        Map("value" -> points.mkString("[", ",", "]"))
+      })
+    }).toArray
+  }
 }
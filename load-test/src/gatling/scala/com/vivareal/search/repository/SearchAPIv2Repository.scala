@@ -46,5 +46,6 @@ object SearchAPIv2Repository {
     val FACETS = "facets"
     val IDS = "ids"
     val IDS_IN = "idsIn"
+    val POLYGONS = "polygons"
   }
 }
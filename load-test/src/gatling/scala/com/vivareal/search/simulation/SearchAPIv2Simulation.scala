@@ -47,6 +47,12 @@ class SearchAPIv2Simulation extends Simulation {
             feed(SearchAPIv2Feeder.idsIN(SearchAPIv2Repository.getIds(IDS_IN, Some(gatling.getInt("idsIn.range") * gatling.getInt("idsIn.users")))))
               .exec(http("By ID's IN").get(index + "?filter=id IN [${value}]"))
           }
+
+        case POLYGONS => scenario(POLYGONS)
+          .repeat(gatling.getInt("repeat")) {
+            feed(SearchAPIv2Feeder.polygons().random)
+              .exec(http("Polygon").get(index + s"?filter=${api.getString("polygons.field")} POLYGON $${value}"))
+          }
       }
     .map(scn => scn.inject(rampUsers(gatling.getInt(s"${scn.name}.users")) over (gatling.getInt("rampUp") seconds)))
 
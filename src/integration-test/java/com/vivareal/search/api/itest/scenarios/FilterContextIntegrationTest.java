@@ -0,0 +1,74 @@
+package com.vivareal.search.api.itest.scenarios;
+
+import com.jayway.restassured.specification.RequestSpecification;
+import com.vivareal.search.api.itest.SearchApiIntegrationTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static com.jayway.restassured.RestAssured.given;
+import static com.jayway.restassured.http.ContentType.JSON;
+import static com.vivareal.search.api.itest.configuration.es.ESIndexHandler.TEST_DATA_INDEX;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.rangeClosed;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Without query string the filters run in the filter context, so they must match the same documents
+ * of the scored filters (with a query string that matches all the documents).
+ */
+@RunWith(SpringRunner.class)
+public class FilterContextIntegrationTest extends SearchApiIntegrationTest {
+
+    private static final String Q_MATCHING_ALL = "string with char k";
+
+    private static final List<String> FILTERS = asList(
+        "isEven EQ true",
+        "NOT isEven EQ true",
+        "numeric GT 10 AND numeric LTE 20",
+        "numeric IN [1, 2, 3] OR isEven EQ true",
+        "numeric RANGE [5, 15] AND NOT (isEven EQ true OR numeric = 7)",
+        "nested.number >= 10 AND NOT nested.boolean EQ true",
+        "object.number >= 10 AND object.boolean EQ true",
+        "numeric < 20 AND (numeric > 25 OR isEven EQ true AND numeric < 10)"
+    );
+
+    @Test
+    public void sameResultsWithAndWithoutQueryString() {
+        FILTERS.forEach(filter -> assertEquals(filter, search(filter, null), search(filter, Q_MATCHING_ALL)));
+    }
+
+    @Test
+    public void filterContextResults() {
+        assertEquals(rangeClosed(11, 20).boxed().collect(toList()), search("numeric GT 10 AND numeric LTE 20", null));
+        assertEquals(asList(5, 9, 11, 13, 15), search("numeric RANGE [5, 15] AND NOT (isEven EQ true OR numeric = 7)", null));
+    }
+
+    private List<Integer> search(String filter, String q) {
+        RequestSpecification request = given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+            .queryParam("filter", filter)
+            .queryParam("size", standardDatasetSize)
+            .queryParam("includeFields", "numeric");
+
+        if (q != null)
+            request.queryParam("q", q);
+
+        List<Integer> numerics = request
+        .expect()
+            .statusCode(SC_OK)
+        .when()
+            .get(TEST_DATA_INDEX)
+        .then()
+            .extract()
+            .path("result.testdata.numeric");
+
+        return numerics.stream().sorted().collect(toList());
+    }
+}
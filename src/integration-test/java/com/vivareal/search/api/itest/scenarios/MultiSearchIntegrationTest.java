@@ -0,0 +1,92 @@
+package com.vivareal.search.api.itest.scenarios;
+
+import com.vivareal.search.api.itest.SearchApiIntegrationTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static com.jayway.restassured.RestAssured.given;
+import static com.jayway.restassured.http.ContentType.JSON;
+import static java.util.Arrays.asList;
+import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+@RunWith(SpringRunner.class)
+public class MultiSearchIntegrationTest extends SearchApiIntegrationTest {
+
+    @Test
+    public void validateMultiSearchResponsesInOrderWithItemErrors() {
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+            .body("[" +
+                "{\"index\": \"testdata\", \"filter\": \"numeric IN [1, 2]\"}," +
+                "{\"index\": \"testdata\", \"filter\": \"numeric INVALID 1\"}," +
+                "{\"index\": \"testdata\", \"size\": 0}" +
+            "]")
+        .expect()
+            .statusCode(SC_OK)
+        .when()
+            .post("/_msearch")
+        .then()
+            .body("responses", hasSize(3))
+            .body("responses[0].totalCount", equalTo(2))
+            .body("responses[0].result.testdata", hasSize(2))
+            .body("responses[1].status", equalTo(SC_BAD_REQUEST))
+            .body("responses[2].totalCount", equalTo(standardDatasetSize))
+            .body("responses[2].result.testdata", hasSize(0))
+        ;
+    }
+
+    @Test
+    public void validateMultiSearchByNdjson() {
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType("application/x-ndjson")
+            .body("{\"index\": \"testdata\", \"filter\": \"numeric = 1\"}\n{\"index\": \"testdata\", \"filter\": \"numeric = 2\"}\n")
+        .expect()
+            .statusCode(SC_OK)
+        .when()
+            .post("/_msearch")
+        .then()
+            .body("responses", hasSize(2))
+            .body("responses.result.testdata.numeric.flatten()", equalTo(asList(1, 2)))
+        ;
+    }
+
+    @Test
+    public void validateMultiSearchDeepPageItemKeepsFromAndSize() {
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+            .body("[{\"index\": \"testdata\", \"from\": 1000, \"size\": 10}]")
+        .expect()
+            .statusCode(SC_OK)
+        .when()
+            .post("/_msearch")
+        .then()
+            .body("responses", hasSize(1))
+            .body("responses[0].totalCount", equalTo(standardDatasetSize))
+            .body("responses[0].result.testdata", hasSize(0))
+        ;
+    }
+
+    @Test
+    public void shouldReturnErrorOnInvalidMultiSearchBody() {
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+            .body("[{\"index\": ")
+        .expect()
+            .statusCode(SC_BAD_REQUEST)
+        .when()
+            .post("/_msearch")
+        ;
+    }
+}
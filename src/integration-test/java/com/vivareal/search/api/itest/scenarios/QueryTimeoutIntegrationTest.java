@@ -21,6 +21,8 @@ import static java.lang.Thread.sleep;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.IntStream.rangeClosed;
 import static org.apache.http.HttpStatus.SC_GATEWAY_TIMEOUT;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
 
 @Component
 @RunWith(SpringRunner.class)
@@ -40,6 +42,39 @@ public class QueryTimeoutIntegrationTest extends SearchApiIntegrationTest {
 
     @Test
     public void validateQueryTimeout() throws InterruptedException {
+        timeoutQueries();
+
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+        .expect()
+            .statusCode(SC_GATEWAY_TIMEOUT)
+        .when()
+            .get(TEST_DATA_INDEX + "?facets=id,array_integer,numeric,nested.number,nested.boolean,nested.odd,nested.object.array_string")
+        ;
+    }
+
+    @Test
+    public void validateQueryTimeoutErrorBodyOfAsyncSearch() throws InterruptedException {
+        timeoutQueries();
+
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+        .expect()
+            .statusCode(SC_GATEWAY_TIMEOUT)
+        .when()
+            .get(TEST_DATA_INDEX + "?facets=id,numeric&size=20")
+        .then()
+            .body("status", equalTo(SC_GATEWAY_TIMEOUT))
+            .body("error", equalTo("Gateway Timeout"))
+            .body("request.facets", hasItem("id,numeric"))
+        ;
+    }
+
+    private void timeoutQueries() throws InterruptedException {
         esIndexHandler.putStandardProperty("es.query.timeout.value", 1);
         esIndexHandler.putStandardProperty("es.query.timeout.unit", NANOSECONDS.name());
         esIndexHandler.addStandardProperties();
@@ -57,15 +92,5 @@ public class QueryTimeoutIntegrationTest extends SearchApiIntegrationTest {
                     sources.clear();
                 }
             });
-
-        given()
-            .log().all()
-            .baseUri(baseUrl)
-            .contentType(JSON)
-        .expect()
-            .statusCode(SC_GATEWAY_TIMEOUT)
-        .when()
-            .get(TEST_DATA_INDEX + "?facets=id,array_integer,numeric,nested.number,nested.boolean,nested.odd,nested.object.array_string")
-        ;
     }
 }
@@ -13,13 +13,15 @@ import static java.util.stream.IntStream.rangeClosed;
 import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
 import static org.apache.http.HttpStatus.SC_OK;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
 
 @RunWith(SpringRunner.class)
 public class SearchAfterIntegrationTest extends SearchApiIntegrationTest {
 
     @Test
     public void validateSortAscUsingSearchAfterToPagination() {
-        given()
+        String cursorId = given()
             .log().all()
             .baseUri(baseUrl)
             .contentType(JSON)
@@ -29,8 +31,9 @@ public class SearchAfterIntegrationTest extends SearchApiIntegrationTest {
             .get(TEST_DATA_INDEX + "?size=5&includeFields=numeric&sort=numeric ASC")
         .then()
             .body("result.testdata.numeric", equalTo(rangeClosed(1, 5).boxed().collect(toList())))
-            .body("cursorId", equalTo("5_testdata#5"))
-        ;
+            .body("cursorId", notNullValue())
+        .extract()
+            .path("cursorId");
 
         given()
             .log().all()
@@ -39,10 +42,10 @@ public class SearchAfterIntegrationTest extends SearchApiIntegrationTest {
         .expect()
             .statusCode(SC_OK)
         .when()
-            .get(TEST_DATA_INDEX + "?size=5&includeFields=numeric&sort=numeric ASC&cursorId=5_testdata#5")
+            .get(TEST_DATA_INDEX + "?size=5&includeFields=numeric&sort=numeric ASC&cursorId=" + cursorId)
         .then()
             .body("result.testdata.numeric", equalTo(rangeClosed(6, 10).boxed().collect(toList())))
-            .body("cursorId", equalTo("10_testdata#10"))
+            .body("cursorId", not(equalTo(cursorId)))
         ;
     }
 
@@ -59,4 +62,26 @@ public class SearchAfterIntegrationTest extends SearchApiIntegrationTest {
         ;
     }
 
+    @Test
+    public void shouldReturnErrorOnSearchAfterWithCursorOfAnotherSort() {
+        String cursorId = given()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+        .when()
+            .get(TEST_DATA_INDEX + "?size=5&includeFields=numeric&sort=numeric ASC")
+        .then()
+        .extract()
+            .path("cursorId");
+
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+        .expect()
+            .statusCode(SC_BAD_REQUEST)
+        .when()
+            .get(TEST_DATA_INDEX + "?size=5&includeFields=numeric&sort=numeric DESC&cursorId=" + cursorId)
+        ;
+    }
+
 }
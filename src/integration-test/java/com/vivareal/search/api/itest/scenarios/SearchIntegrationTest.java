@@ -25,6 +25,7 @@ import static java.lang.Math.ceil;
 import static java.lang.Math.max;
 import static java.lang.String.format;
 import static java.lang.Thread.sleep;
+import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.IntStream.range;
 import static java.util.stream.IntStream.rangeClosed;
@@ -124,6 +125,40 @@ public class SearchIntegrationTest extends SearchApiIntegrationTest {
             .get(TEST_DATA_INDEX + "/" + standardDatasetSize + 1);
     }
 
+    @Test
+    public void responseOkWhenSearchDocumentsByIdsInOrderSkippingTheNonExistingOnes() {
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+        .expect()
+            .statusCode(SC_OK)
+        .when()
+            .get(format("%s/_mget?ids=3,%d,1&includeFields=id,numeric", TEST_DATA_INDEX, standardDatasetSize + 1))
+        .then()
+            .body("totalCount", equalTo(2))
+            .body("result." + TEST_DATA_INDEX + ".numeric", equalTo(asList(3, 1)))
+            .body("result." + TEST_DATA_INDEX + "[0]", not(hasKey("isEven")))
+        ;
+    }
+
+    @Test
+    public void responseOkWhenSearchDocumentsByIdsOnTheBody() {
+        given()
+            .log().all()
+            .baseUri(baseUrl)
+            .contentType(JSON)
+            .body("{\"ids\": [\"2\", \"4\"]}")
+        .expect()
+            .statusCode(SC_OK)
+        .when()
+            .post(TEST_DATA_INDEX + "/_mget")
+        .then()
+            .body("totalCount", equalTo(2))
+            .body("result." + TEST_DATA_INDEX + ".id", equalTo(asList("2", "4")))
+        ;
+    }
+
     @Test
     public void validateEqualsFilter() {
         int id = standardDatasetSize / 3;
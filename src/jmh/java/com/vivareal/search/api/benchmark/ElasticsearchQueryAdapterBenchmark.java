@@ -2,6 +2,13 @@ package com.vivareal.search.api.benchmark;
 
 import com.vivareal.search.api.adapter.ElasticsearchQueryAdapter;
 import com.vivareal.search.api.adapter.ElasticsearchSettingsAdapter;
+import com.vivareal.search.api.adapter.ViewportTileAdapter;
+import com.vivareal.search.api.cache.FacetPlanCache;
+import com.vivareal.search.api.cache.FilterQueryCache;
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.cache.QueryStringPlanCache;
+import com.vivareal.search.api.cache.SearchTemplateCache;
 import com.vivareal.search.api.model.http.SearchApiRequestBuilder;
 import com.vivareal.search.api.model.mapping.MappingType;
 import com.vivareal.search.api.model.search.Filterable;
@@ -10,6 +17,7 @@ import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_QUERY_CACHE_SIZE;
 import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 
@@ -27,13 +35,25 @@ public class ElasticsearchQueryAdapterBenchmark {
             public boolean isTypeOf(String index, String fieldName, MappingType type) {
                 return type != FIELD_TYPE_NESTED;
             }
-        }, null, null, null);
+        }, null, null, null, new QueryFragmentCache(new IndexCacheRegistry()), new FilterQueryCache(new IndexCacheRegistry()), new SearchTemplateCache(new IndexCacheRegistry()), new ViewportTileAdapter(null, null), new QueryStringPlanCache(new IndexCacheRegistry()), new FacetPlanCache(new IndexCacheRegistry()));
         final BoolQueryBuilder bqb = boolQuery();
         final Filterable filterable = SearchApiRequestBuilder.create().index("tincas").filter("a = 1").build();
+        final Filterable cachedFilterable = SearchApiRequestBuilder.create().index("cached").filter("a = 1 AND (b IN [1, 2] OR NOT c:'d')").build();
+
+        public ElasticsearchQueryAdapterState() {
+            FILTER_QUERY_CACHE_SIZE.setValue("cached", "100");
+        }
     }
 
     @Benchmark
     public void applyFilterQuery(ElasticsearchQueryAdapterState state) {
         state.adapter.applyFilterQuery(state.bqb, state.filterable);
     }
+
+    @Benchmark
+    public BoolQueryBuilder applyCachedFilterQuery(ElasticsearchQueryAdapterState state) {
+        BoolQueryBuilder queryBuilder = boolQuery();
+        state.adapter.applyFilterQuery(queryBuilder, state.cachedFilterable);
+        return queryBuilder;
+    }
 }
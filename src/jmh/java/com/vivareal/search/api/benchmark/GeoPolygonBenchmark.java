@@ -0,0 +1,119 @@
+package com.vivareal.search.api.benchmark;
+
+import com.vivareal.search.api.adapter.ElasticsearchQueryAdapter;
+import com.vivareal.search.api.adapter.ElasticsearchSettingsAdapter;
+import com.vivareal.search.api.adapter.ViewportTileAdapter;
+import com.vivareal.search.api.cache.FacetPlanCache;
+import com.vivareal.search.api.cache.FilterQueryCache;
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.cache.QueryStringPlanCache;
+import com.vivareal.search.api.cache.SearchTemplateCache;
+import com.vivareal.search.api.model.http.SearchApiRequestBuilder;
+import com.vivareal.search.api.model.mapping.MappingType;
+import com.vivareal.search.api.model.search.Filterable;
+import org.apache.lucene.geo.Polygon;
+import org.apache.lucene.geo.Polygon2D;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.GeoPolygonQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.POLYGON_BOUNDING_BOX;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.POLYGON_SIMPLIFY_TOLERANCE;
+import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
+import static java.lang.Math.*;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+
+/**
+ * Cost of the <code>POLYGON</code> filters with and without simplification: <code>build</code> is the query building time
+ * (without filter caches) and <code>contains</code> is the point-in-polygon test done by Lucene for each matched document
+ */
+public class GeoPolygonBenchmark {
+
+    private static final String INDEX = "polygon";
+
+    private static final int DOCUMENTS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class GeoPolygonState {
+
+        @Param({"100", "500", "1000"})
+        int vertices;
+
+        @Param({"0", "10", "50"})
+        int tolerance;
+
+        Filterable filterable;
+
+        Polygon2D polygon;
+
+        final double[] latitudes = new double[DOCUMENTS];
+        final double[] longitudes = new double[DOCUMENTS];
+
+        final ElasticsearchQueryAdapter adapter = new ElasticsearchQueryAdapter(null, new ElasticsearchSettingsAdapter(null) {
+            @Override
+            public boolean checkFieldName(String index, String fieldName, boolean acceptAsterisk) {
+                return true;
+            }
+
+            @Override
+            public boolean isTypeOf(String index, String fieldName, MappingType type) {
+                return type != FIELD_TYPE_NESTED;
+            }
+        }, null, null, null, new QueryFragmentCache(new IndexCacheRegistry()), new FilterQueryCache(new IndexCacheRegistry()), new SearchTemplateCache(new IndexCacheRegistry()), new ViewportTileAdapter(null, null), new QueryStringPlanCache(new IndexCacheRegistry()), new FacetPlanCache(new IndexCacheRegistry()));
+
+        @Setup
+        public void setup() {
+            POLYGON_SIMPLIFY_TOLERANCE.setValue(INDEX, String.valueOf(tolerance));
+            POLYGON_BOUNDING_BOX.setValue(INDEX, "true");
+
+            // A neighbourhood like outline: ~2km wide with a few meters of noise on each vertex, as drawn on a map
+            Random random = new Random(vertices);
+            StringBuilder filter = new StringBuilder("address.geoLocation POLYGON [");
+            for (int i = 0; i < vertices; i++) {
+                double angle = 2 * PI * i / vertices;
+                double radius = 0.01 * (1 + 0.3 * sin(3 * angle)) + 0.00005 * random.nextGaussian();
+                filter.append(i == 0 ? "" : ",").append('[').append(-46.63 + radius * cos(angle)).append(',').append(-23.55 + radius * sin(angle)).append(']');
+            }
+            filterable = SearchApiRequestBuilder.create().index(INDEX).filter(filter.append(']').toString()).build();
+
+            BoolQueryBuilder query = boolQuery();
+            adapter.applyFilterQuery(query, filterable);
+            List<GeoPoint> points = ((GeoPolygonQueryBuilder) ((BoolQueryBuilder) query.filter().get(0)).filter().get(1)).points();
+            double[] lats = new double[points.size()], lons = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                lats[i] = points.get(i).lat();
+                lons[i] = points.get(i).lon();
+            }
+            polygon = Polygon2D.create(new Polygon(lats, lons));
+
+            for (int i = 0; i < DOCUMENTS; i++) {
+                latitudes[i] = -23.55 + 0.013 * (2 * random.nextDouble() - 1);
+                longitudes[i] = -46.63 + 0.013 * (2 * random.nextDouble() - 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public QueryBuilder build(GeoPolygonState state) {
+        BoolQueryBuilder queryBuilder = boolQuery();
+        state.adapter.applyFilterQuery(queryBuilder, state.filterable);
+        return queryBuilder;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public int contains(GeoPolygonState state) {
+        int matches = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            if (state.polygon.contains(state.latitudes[i], state.longitudes[i]))
+                matches++;
+        }
+        return matches;
+    }
+}
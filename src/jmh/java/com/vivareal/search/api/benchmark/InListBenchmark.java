@@ -0,0 +1,91 @@
+package com.vivareal.search.api.benchmark;
+
+import com.vivareal.search.api.adapter.ElasticsearchQueryAdapter;
+import com.vivareal.search.api.adapter.ElasticsearchSettingsAdapter;
+import com.vivareal.search.api.adapter.ViewportTileAdapter;
+import com.vivareal.search.api.cache.FacetPlanCache;
+import com.vivareal.search.api.cache.FilterQueryCache;
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.cache.QueryStringPlanCache;
+import com.vivareal.search.api.cache.SearchTemplateCache;
+import com.vivareal.search.api.model.http.SearchApiRequestBuilder;
+import com.vivareal.search.api.model.mapping.MappingType;
+import com.vivareal.search.api.model.parser.RecursiveDescentQueryParser;
+import com.vivareal.search.api.model.query.QueryFragment;
+import com.vivareal.search.api.model.search.Filterable;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_MAPPING_META_FIELDS_ID;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_CACHE_SIZE;
+import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+
+/**
+ * Parse and build time of long <code>IN</code> lists, run it with <code>-prof gc</code> to get the allocated bytes
+ */
+public class InListBenchmark {
+
+    private static final String INDEX = "inlist";
+
+    @State(Scope.Benchmark)
+    public static class InListState {
+
+        @Param({"1000", "10000", "50000"})
+        int size;
+
+        String idsFilter;
+        String termsFilter;
+
+        Filterable ids;
+        Filterable terms;
+
+        final ElasticsearchQueryAdapter adapter = new ElasticsearchQueryAdapter(null, new ElasticsearchSettingsAdapter(null) {
+            @Override
+            public boolean checkFieldName(String index, String fieldName, boolean acceptAsterisk) {
+                return true;
+            }
+
+            @Override
+            public boolean isTypeOf(String index, String fieldName, MappingType type) {
+                return type != FIELD_TYPE_NESTED;
+            }
+        }, null, null, null, new QueryFragmentCache(new IndexCacheRegistry()), new FilterQueryCache(new IndexCacheRegistry()), new SearchTemplateCache(new IndexCacheRegistry()), new ViewportTileAdapter(null, null), new QueryStringPlanCache(new IndexCacheRegistry()), new FacetPlanCache(new IndexCacheRegistry()));
+
+        @Setup
+        public void setup() {
+            // The parsed filters are cached, so the build benchmarks don't parse them again
+            FILTER_CACHE_SIZE.setValue(INDEX, "10");
+            ES_MAPPING_META_FIELDS_ID.setValue(INDEX, "id");
+
+            StringBuilder values = new StringBuilder();
+            for (int i = 0; i < size; i++)
+                values.append(i == 0 ? "" : ",").append(1_000_000 + i);
+
+            idsFilter = "id IN [" + values + "]";
+            termsFilter = "listingId IN [" + values + "]";
+            ids = SearchApiRequestBuilder.create().index(INDEX).filter(idsFilter).build();
+            terms = SearchApiRequestBuilder.create().index(INDEX).filter(termsFilter).build();
+        }
+    }
+
+    @Benchmark
+    public QueryFragment parse(InListState state) {
+        return RecursiveDescentQueryParser.parse(state.termsFilter);
+    }
+
+    @Benchmark
+    public BoolQueryBuilder buildIdsQuery(InListState state) {
+        BoolQueryBuilder queryBuilder = boolQuery();
+        state.adapter.applyFilterQuery(queryBuilder, state.ids);
+        return queryBuilder;
+    }
+
+    @Benchmark
+    public BoolQueryBuilder buildTermsQuery(InListState state) {
+        BoolQueryBuilder queryBuilder = boolQuery();
+        state.adapter.applyFilterQuery(queryBuilder, state.terms);
+        return queryBuilder;
+    }
+}
@@ -1,24 +1,68 @@
 package com.vivareal.search.api.benchmark;
 
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.QueryFragmentCache;
 import com.vivareal.search.api.model.parser.QueryParser;
+import com.vivareal.search.api.model.parser.RecursiveDescentQueryParser;
 import com.vivareal.search.api.model.query.QueryFragment;
 import org.jparsec.Parser;
 import org.openjdk.jmh.annotations.*;
 
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_CACHE_SIZE;
+
 public class QueryParserBenchmark {
 
+    private static final String INDEX = "tincas";
+
+    private static final String SIMPLE_QUERY = "a = 1";
+
+    private static final String RECURSIVE_QUERY = "rooms:3 AND pimba:2 AND(suites=1 OR (parkingLots IN [1,\"abc\"] AND xpto <> 3))";
+
     @State(Scope.Benchmark)
     public static class QueryState {
         final Parser<QueryFragment> parser = QueryParser.get();
     }
 
+    @State(Scope.Benchmark)
+    public static class WarmCacheState {
+        QueryFragmentCache cache;
+
+        @Setup
+        public void setup() {
+            FILTER_CACHE_SIZE.setValue(INDEX, "1000");
+            cache = new QueryFragmentCache(new IndexCacheRegistry());
+            cache.parse(INDEX, SIMPLE_QUERY);
+            cache.parse(INDEX, RECURSIVE_QUERY);
+        }
+    }
+
     @Benchmark
     public void simpleQuery(QueryState state) {
-        state.parser.parse("a = 1");
+        state.parser.parse(SIMPLE_QUERY);
     }
 
     @Benchmark
     public void recursiveQuery(QueryState state) {
-        state.parser.parse("rooms:3 AND pimba:2 AND(suites=1 OR (parkingLots IN [1,\"abc\"] AND xpto <> 3))");
+        state.parser.parse(RECURSIVE_QUERY);
+    }
+
+    @Benchmark
+    public QueryFragment simpleQueryRecursiveDescent() {
+        return RecursiveDescentQueryParser.parse(SIMPLE_QUERY);
+    }
+
+    @Benchmark
+    public QueryFragment recursiveQueryRecursiveDescent() {
+        return RecursiveDescentQueryParser.parse(RECURSIVE_QUERY);
+    }
+
+    @Benchmark
+    public QueryFragment simpleQueryWarmCache(WarmCacheState state) {
+        return state.cache.parse(INDEX, SIMPLE_QUERY);
+    }
+
+    @Benchmark
+    public QueryFragment recursiveQueryWarmCache(WarmCacheState state) {
+        return state.cache.parse(INDEX, RECURSIVE_QUERY);
     }
 }
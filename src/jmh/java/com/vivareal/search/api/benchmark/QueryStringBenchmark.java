@@ -0,0 +1,102 @@
+package com.vivareal.search.api.benchmark;
+
+import com.vivareal.search.api.adapter.*;
+import com.vivareal.search.api.cache.*;
+import com.vivareal.search.api.model.http.FilterableApiRequest;
+import com.vivareal.search.api.model.http.SearchApiRequestBuilder;
+import com.vivareal.search.api.model.mapping.MappingType;
+import com.vivareal.search.api.model.search.Fetchable;
+import com.vivareal.search.api.model.search.Indexable;
+import com.vivareal.search.api.model.http.BaseApiRequest;
+import org.elasticsearch.action.*;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.common.settings.Settings;
+import org.openjdk.jmh.annotations.*;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
+import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_STRING;
+
+/**
+ * Building time of the requests with query string (<code>q</code>), with and without the compiled field plans
+ */
+public class QueryStringBenchmark {
+
+    private static final String FIELDS = "title:3,description,address.street:2,address.neighborhood:2,address.city,amenities,unitTypes,pricingInfos.businessType";
+
+    @State(Scope.Benchmark)
+    public static class QueryStringState {
+
+        @Param({"cached", "uncached"})
+        String index;
+
+        FilterableApiRequest request;
+
+        final ElasticsearchSettingsAdapter settingsAdapter = new ElasticsearchSettingsAdapter(null) {
+            @Override
+            public void checkIndex(Indexable request) {
+            }
+
+            @Override
+            public boolean checkFieldName(String index, String fieldName, boolean acceptAsterisk) {
+                return true;
+            }
+
+            @Override
+            public boolean isTypeOf(String index, String fieldName, MappingType type) {
+                return type == FIELD_TYPE_NESTED ? fieldName.equals("pricingInfos") : type == FIELD_TYPE_STRING && !fieldName.startsWith("address");
+            }
+        };
+
+        // Only creates the request builders, nothing is executed
+        final ESClient esClient = new ESClient(null) {
+            private final AbstractClient client = new AbstractClient(Settings.EMPTY, null) {
+                @Override
+                protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+                    Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+
+            @Override
+            public SearchRequestBuilder prepareSearch(BaseApiRequest request) {
+                return new SearchRequestBuilder(client, SearchAction.INSTANCE).setIndices(request.getIndex());
+            }
+        };
+
+        final SourceFieldAdapter sourceFieldAdapter = new SourceFieldAdapter(settingsAdapter, new SourceFieldsCache(new IndexCacheRegistry())) {
+            @Override
+            public void apply(SearchRequestBuilder searchRequestBuilder, Fetchable request) {
+            }
+        };
+
+        final ElasticsearchQueryAdapter adapter = new ElasticsearchQueryAdapter(esClient, settingsAdapter, sourceFieldAdapter, new SearchAfterQueryAdapter(),
+            new SortQueryAdapter(settingsAdapter, new SortPlanCache(new IndexCacheRegistry())), new QueryFragmentCache(new IndexCacheRegistry()),
+            new FilterQueryCache(new IndexCacheRegistry()), new SearchTemplateCache(new IndexCacheRegistry()), new ViewportTileAdapter(settingsAdapter, null),
+            new QueryStringPlanCache(new IndexCacheRegistry()), new FacetPlanCache(new IndexCacheRegistry()));
+
+        @Setup
+        public void setup() {
+            QS_DEFAULT_FIELDS.setValue(index, FIELDS);
+            QS_MM.setValue(index, "75%");
+            QS_PLAN_CACHE_SIZE.setValue(index, "cached".equals(index) ? "100" : "0");
+            ES_QUERY_TIMEOUT_VALUE.setValue(index, "100");
+            ES_QUERY_TIMEOUT_UNIT.setValue(index, "MILLISECONDS");
+            ES_DEFAULT_SIZE.setValue(index, "20");
+            ES_MAX_SIZE.setValue(index, "200");
+
+            request = SearchApiRequestBuilder.filterable().index(index).q("apartamento 2 quartos com piscina").sort("").build();
+        }
+    }
+
+    @Benchmark
+    public SearchRequestBuilder query(QueryStringState state) {
+        return state.adapter.query(state.request);
+    }
+}
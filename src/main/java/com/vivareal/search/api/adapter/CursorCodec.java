@@ -0,0 +1,111 @@
+package com.vivareal.search.api.adapter;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+
+import java.io.IOException;
+import java.util.Base64;
+
+import static com.google.common.hash.Hashing.murmur3_32;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DEFAULT_SORT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Encodes the sort values of the last hit (the <code>search_after</code> of the next page) as the URL-safe base64 of:
+ * the format version, the fingerprint of the sort they were created for, and each value with its type
+ * (<code>long</code>, <code>double</code>, <code>string</code>, <code>boolean</code> or <code>null</code>).
+ *
+ * A cursor of another format or sort is rejected with an {@link IllegalArgumentException}, before searching.
+ */
+public final class CursorCodec {
+
+    static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte STRING = 3;
+    private static final byte BOOLEAN = 4;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private CursorCodec() {
+    }
+
+    /**
+     * @return the fingerprint of the requested sort (or of the index default sort when not requested)
+     */
+    public static int fingerprint(final String index, final String sort) {
+        return murmur3_32().hashString(ofNullable(ES_DEFAULT_SORT.<String>getValue(sort, index)).orElse(""), UTF_8).asInt();
+    }
+
+    public static String encode(final int fingerprint, final Object[] sortValues) {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeByte(VERSION);
+            out.writeInt(fingerprint);
+            out.writeVInt(sortValues.length);
+            for (Object value : sortValues) {
+                if (value == null) {
+                    out.writeByte(NULL);
+                } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    out.writeByte(LONG);
+                    out.writeZLong(((Number) value).longValue());
+                } else if (value instanceof Number) {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    out.writeByte(BOOLEAN);
+                    out.writeBoolean((Boolean) value);
+                } else {
+                    out.writeByte(STRING);
+                    out.writeString(value.toString());
+                }
+            }
+            return ENCODER.encodeToString(BytesReference.toBytes(out.bytes()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Object[] decode(final int fingerprint, final String cursorId) {
+        byte[] bytes;
+        try {
+            bytes = DECODER.decode(cursorId);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursorId: not URL-safe base64", e);
+        }
+
+        try (StreamInput in = StreamInput.wrap(bytes)) {
+            if (in.readByte() != VERSION)
+                throw new IllegalArgumentException("Invalid cursorId: unknown format");
+            if (in.readInt() != fingerprint)
+                throw new IllegalArgumentException("Invalid cursorId: it was created for another sort");
+
+            int size = in.readVInt();
+            if (size < 0 || size > in.available())
+                throw new IllegalArgumentException("Invalid cursorId: invalid number of values");
+
+            Object[] sortValues = new Object[size];
+            for (int i = 0; i < sortValues.length; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                    case NULL: sortValues[i] = null; break;
+                    case LONG: sortValues[i] = in.readZLong(); break;
+                    case DOUBLE: sortValues[i] = in.readDouble(); break;
+                    case BOOLEAN: sortValues[i] = in.readBoolean(); break;
+                    case STRING: sortValues[i] = in.readString(); break;
+                    default: throw new IllegalArgumentException("Invalid cursorId: unknown value type " + type);
+                }
+            }
+            if (in.available() > 0)
+                throw new IllegalArgumentException("Invalid cursorId: unexpected trailing bytes");
+
+            return sortValues;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursorId", e);
+        }
+    }
+}
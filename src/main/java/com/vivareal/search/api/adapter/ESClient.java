@@ -2,7 +2,10 @@ package com.vivareal.search.api.adapter;
 
 import com.vivareal.search.api.model.http.BaseApiRequest;
 import org.elasticsearch.action.admin.indices.get.GetIndexResponse;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
 import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.client.transport.TransportClient;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +25,10 @@ public class ESClient {
         return transportClient.admin().indices().prepareGetIndex().get();
     }
 
+    public IndicesStatsResponse getRequestCacheStats() {
+        return transportClient.admin().indices().prepareStats().clear().setRequestCache(true).get();
+    }
+
     public GetRequestBuilder prepareGet(BaseApiRequest request, String id) {
         return transportClient.prepareGet(request.getIndex(), request.getIndex(), id);
     }
@@ -29,4 +36,12 @@ public class ESClient {
     public SearchRequestBuilder prepareSearch(BaseApiRequest request) {
         return transportClient.prepareSearch(request.getIndex());
     }
+
+    public MultiGetRequestBuilder prepareMultiGet() {
+        return transportClient.prepareMultiGet();
+    }
+
+    public MultiSearchRequestBuilder prepareMultiSearch() {
+        return transportClient.prepareMultiSearch();
+    }
 }
@@ -1,25 +1,36 @@
 package com.vivareal.search.api.adapter;
 
 import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.cache.FacetPlanCache;
+import com.vivareal.search.api.cache.FilterQueryCache;
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.cache.QueryStringPlanCache;
+import com.vivareal.search.api.cache.SearchTemplateCache;
+import com.vivareal.search.api.cache.SearchTemplateCache.Section;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import com.vivareal.search.api.exception.InvalidFieldException;
 import com.vivareal.search.api.exception.UnsupportedFieldException;
 import com.vivareal.search.api.model.http.BaseApiRequest;
 import com.vivareal.search.api.model.http.FilterableApiRequest;
 import com.vivareal.search.api.model.http.SearchApiRequest;
 import com.vivareal.search.api.model.parser.FacetParser;
-import com.vivareal.search.api.model.parser.QueryParser;
 import com.vivareal.search.api.model.query.*;
 import com.vivareal.search.api.model.search.Facetable;
 import com.vivareal.search.api.model.search.Filterable;
 import com.vivareal.search.api.model.search.Queryable;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
-import org.elasticsearch.search.aggregations.bucket.nested.NestedAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,20 +40,27 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
 import static com.google.common.collect.Maps.newHashMap;
 import static com.vivareal.search.api.adapter.ElasticsearchSettingsAdapter.SHARDS;
+import static com.vivareal.search.api.cache.SearchTemplateCache.Section.*;
 import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
 import static com.vivareal.search.api.model.mapping.MappingType.*;
 import static com.vivareal.search.api.model.query.LogicalOperator.AND;
 import static com.vivareal.search.api.model.query.RelationalOperator.*;
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
+import static java.lang.String.format;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
 import static java.util.Optional.*;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.lucene.search.join.ScoreMode.None;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.nested;
@@ -54,20 +72,32 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 @Scope(SCOPE_SINGLETON)
 @Qualifier("ElasticsearchQuery")
 @DependsOn("searchApiEnv")
-public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder, SearchRequestBuilder> {
+public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder, SearchRequestBuilder, MultiGetRequestBuilder> {
 
     private static final Logger LOG = LoggerFactory.getLogger(ElasticsearchQueryAdapter.class);
 
     private static final String NOT_NESTED = "not_nested";
 
+    private static final String LIKE_LEADING_WILDCARD_REJECT = "reject";
+
     private static final String MM_ERROR_MESSAGE = "Minimum Should Match (mm) should be a valid integer number (-100 <> +100)";
 
+    private static final int MAX_CACHED_MM_LENGTH = 5;
+
+    private static final Set<String> VALID_MM = ConcurrentHashMap.newKeySet();
+
     private final ESClient esClient;
 
     private final SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter;
     private final SourceFieldAdapter sourceFieldAdapter;
     private final SearchAfterQueryAdapter searchAfterQueryAdapter;
     private final SortQueryAdapter sortQueryAdapter;
+    private final QueryFragmentCache queryFragmentCache;
+    private final FilterQueryCache filterQueryCache;
+    private final SearchTemplateCache searchTemplateCache;
+    private final ViewportTileAdapter viewportTileAdapter;
+    private final QueryStringPlanCache queryStringPlanCache;
+    private final FacetPlanCache facetPlanCache;
 
     @Autowired
     public ElasticsearchQueryAdapter(ESClient esClient,
@@ -75,12 +105,24 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
                                      Map<String, Object>>, String> settingsAdapter,
                                      SourceFieldAdapter sourceFieldAdapter,
                                      SearchAfterQueryAdapter searchAfterQueryAdapter,
-                                     SortQueryAdapter sortQueryAdapter) {
+                                     SortQueryAdapter sortQueryAdapter,
+                                     QueryFragmentCache queryFragmentCache,
+                                     FilterQueryCache filterQueryCache,
+                                     SearchTemplateCache searchTemplateCache,
+                                     ViewportTileAdapter viewportTileAdapter,
+                                     QueryStringPlanCache queryStringPlanCache,
+                                     FacetPlanCache facetPlanCache) {
         this.esClient = esClient;
         this.settingsAdapter = settingsAdapter;
         this.sourceFieldAdapter = sourceFieldAdapter;
         this.searchAfterQueryAdapter = searchAfterQueryAdapter;
         this.sortQueryAdapter = sortQueryAdapter;
+        this.queryFragmentCache = queryFragmentCache;
+        this.filterQueryCache = filterQueryCache;
+        this.searchTemplateCache = searchTemplateCache;
+        this.viewportTileAdapter = viewportTileAdapter;
+        this.queryStringPlanCache = queryStringPlanCache;
+        this.facetPlanCache = facetPlanCache;
     }
 
     @Override
@@ -99,16 +141,103 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
         return requestBuilder;
     }
 
+    @Override
+    @Trace
+    public MultiGetRequestBuilder getByIds(BaseApiRequest request, Collection<String> ids) {
+        settingsAdapter.checkIndex(request);
+
+        Integer maxIds = ES_MGET_MAX_IDS.getValue(request.getIndex());
+        if (isEmpty(ids) || (maxIds != null && ids.size() > maxIds))
+            throw new IllegalArgumentException(maxIds == null ? "Parameter [ids] must have at least 1 id" : format("Parameter [ids] must have from 1 to %d ids", maxIds));
+
+        FetchSourceContext fetchSource = sourceFieldAdapter.fetchSource(request);
+        MultiGetRequestBuilder requestBuilder = esClient.prepareMultiGet().setRealtime(false);
+        ids.forEach(id -> requestBuilder.add(new MultiGetRequest.Item(request.getIndex(), request.getIndex(), id).fetchSourceContext(fetchSource)));
+
+        LOG.debug("Query getByIds {}", requestBuilder.request());
+
+        return requestBuilder;
+    }
+
     @Override
     @Trace
     public SearchRequestBuilder query(FilterableApiRequest request) {
-        return prepareQuery(request, (searchBuilder, queryBuilder) -> buildQueryByFilterableApiRequest(request, searchBuilder, queryBuilder));
+        SearchRequestBuilder searchBuilder = prepareQuery(request, (requestBuilder, queryBuilder) -> buildQueryByFilterableApiRequest(request, requestBuilder, queryBuilder));
+        viewportTileAdapter.applyRequestCache(searchBuilder, request);
+        return searchBuilder;
     }
 
+    /**
+     * The facets only requests (<code>size=0</code>) are built as the {@link Section#FACETS} ones
+     */
     @Override
     @Trace
     public SearchRequestBuilder query(SearchApiRequest request) {
-        return prepareQuery(request, (searchBuilder, queryBuilder) -> buildQueryBySearchApiRequest(request, searchBuilder, queryBuilder));
+        return query(request, request.getSize() == 0 ? FACETS : HITS_AND_FACETS);
+    }
+
+    @Override
+    @Trace
+    public SearchRequestBuilder queryHits(SearchApiRequest request) {
+        return query(request, HITS);
+    }
+
+    /**
+     * The facets requests (no hits, just the total count and the facets) are served by the shard request cache, whose
+     * key is the request body, so they are built the same way (e.g. <code>from=0</code>, facets in name order) for the
+     * same query, filter and facets, whatever the page, sort and fields requested
+     */
+    @Override
+    @Trace
+    public SearchRequestBuilder queryFacets(SearchApiRequest request) {
+        return query(request, FACETS);
+    }
+
+    private SearchRequestBuilder query(SearchApiRequest request, Section section) {
+        settingsAdapter.checkIndex(request);
+
+        String index = request.getIndex();
+        request.setPaginationValues(ES_DEFAULT_SIZE.getValue(index), ES_MAX_SIZE.getValue(index));
+        if (section != FACETS)
+            checkDeepPage(request);
+
+        SearchRequestBuilder searchBuilder = esClient.prepareSearch(request)
+            .setSource(searchTemplateCache.get(index, request, section, settingsAdapter.mappingVersion(index), r -> buildSearchTemplate(r, section)));
+
+        if (section == FACETS) {
+            searchBuilder.setFrom(0).setSize(0).setRequestCache(true);
+        } else {
+            searchBuilder.setFrom(request.getFrom()).setSize(request.getSize());
+            searchAfterQueryAdapter.apply(searchBuilder, request);
+            viewportTileAdapter.applyRequestCache(searchBuilder, request);
+        }
+
+        LOG.debug("Request: {} - Query: {}", request, searchBuilder);
+        return searchBuilder;
+    }
+
+    /**
+     * Builds everything but the pagination and the cursor, that are applied on each request over a copy of this template.
+     * The facets have no hits, so they skip the source filtering and the sort, and have their own timeout (if any).
+     */
+    private SearchSourceBuilder buildSearchTemplate(SearchApiRequest request, Section section) {
+        SearchSourceBuilder source = prepareQuery(request, (searchBuilder, queryBuilder) -> {
+            if (section == FACETS) {
+                applyQueryString(queryBuilder, request);
+                applyFilterQuery(queryBuilder, request);
+            } else {
+                buildSearchSource(request, searchBuilder, queryBuilder);
+            }
+
+            if (section != HITS)
+                applyFacets(searchBuilder, request);
+        }).request().source();
+
+        Long facetTimeout = ES_FACET_TIMEOUT_VALUE.getValue(request.getIndex());
+        if (section == FACETS && facetTimeout != null && facetTimeout > 0)
+            source.timeout(new TimeValue(facetTimeout, TimeUnit.valueOf(ES_QUERY_TIMEOUT_UNIT.getValue(request.getIndex()))));
+
+        return source;
     }
 
     private SearchRequestBuilder prepareQuery(BaseApiRequest request, BiConsumer<SearchRequestBuilder, BoolQueryBuilder> builder) {
@@ -129,17 +258,29 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
 
     private void buildQueryByFilterableApiRequest(FilterableApiRequest request, SearchRequestBuilder searchBuilder, BoolQueryBuilder queryBuilder) {
         applyPage(searchBuilder, request);
+        buildSearchSource(request, searchBuilder, queryBuilder);
+        searchAfterQueryAdapter.apply(searchBuilder, request);
+    }
+
+    private void buildSearchSource(FilterableApiRequest request, SearchRequestBuilder searchBuilder, BoolQueryBuilder queryBuilder) {
         sourceFieldAdapter.apply(searchBuilder, request);
-        applyPage(searchBuilder, request);
         applyQueryString(queryBuilder, request);
         applyFilterQuery(queryBuilder, request);
+        viewportTileAdapter.apply(searchBuilder, request);
         sortQueryAdapter.apply(searchBuilder, request);
-        searchAfterQueryAdapter.apply(searchBuilder, request);
     }
 
-    private void buildQueryBySearchApiRequest(SearchApiRequest request, SearchRequestBuilder searchBuilder, BoolQueryBuilder queryBuilder) {
-        buildQueryByFilterableApiRequest(request, searchBuilder, queryBuilder);
-        applyFacets(searchBuilder, request);
+    /**
+     * The pages from <code>es.deep.page.from</code> on make every shard collect all the previous hits. Without the page
+     * checkpoints of the search service (<code>es.deep.page.checkpoints</code>), the sorted ones must be paginated by
+     * <code>cursorId</code>. The unsorted ones can't be, so they keep the <code>from</code>/<code>size</code> pagination.
+     */
+    private void checkDeepPage(FilterableApiRequest request) {
+        String index = request.getIndex();
+        Integer deepPageFrom = ES_DEEP_PAGE_FROM.getValue(index);
+        if (request.getCursorId() == null && deepPageFrom != null && deepPageFrom > 0 && request.getFrom() >= deepPageFrom
+            && !parseBoolean(ES_DEEP_PAGE_CHECKPOINTS.getValue(index)) && isNotBlank(ES_DEFAULT_SORT.getValue(request.getSort(), index)))
+            throw new IllegalArgumentException(format("Parameter [from] must be lower than %d, the next pages must be requested with the [cursorId] of the previous page", deepPageFrom));
     }
 
     private void applyPage(SearchRequestBuilder searchBuilder, FilterableApiRequest request) {
@@ -149,11 +290,61 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
         searchBuilder.setSize(request.getSize());
     }
 
+    /**
+     * The filter clauses are compiled once by index mapping version and shared between requests, so they must not be changed
+     */
     public void applyFilterQuery(BoolQueryBuilder queryBuilder, final Filterable filter) {
-        ofNullable(filter.getFilter()).ifPresent(f -> applyFilterQuery(queryBuilder, QueryParser.parse(f), filter.getIndex(), newHashMap()));
+        final String index = filter.getIndex();
+        final boolean scoring = filter instanceof Queryable && !isEmpty(((Queryable) filter).getQ());
+        ofNullable(filter.getFilter()).ifPresent(f -> addFilterClauses(queryBuilder, filterQueryCache.get(index, f, settingsAdapter.mappingVersion(index), this::compileFilterQuery), scoring));
     }
 
-    private void applyFilterQuery(BoolQueryBuilder queryBuilder, final QueryFragment queryFragment, final String indexName, Map<String, BoolQueryBuilder> nestedQueries) {
+    /**
+     * The <code>must</code> clauses that cannot change the score (all of them when there is no query string) are added
+     * in the filter context, that is not scored and can be cached by Elasticsearch. It matches the same documents.
+     * The clauses already in the filter context of the compiled filter are kept there.
+     */
+    private static void addFilterClauses(BoolQueryBuilder queryBuilder, final BoolQueryBuilder filterQuery, final boolean scoring) {
+        queryBuilder.filter().addAll(filterQuery.filter());
+        filterQuery.must().forEach(clause -> ((!scoring || isConstantScore(clause)) && isFilterContextSafe(clause) ? queryBuilder.filter() : queryBuilder.must()).add(clause));
+        queryBuilder.mustNot().addAll(filterQuery.mustNot());
+        queryBuilder.should().addAll(filterQuery.should());
+    }
+
+    private static boolean isConstantScore(final QueryBuilder clause) {
+        return !(clause instanceof MatchQueryBuilder || clause instanceof BoolQueryBuilder);
+    }
+
+    /**
+     * In the filter context a bool query requires one of its <code>should</code> clauses even when there are
+     * <code>must</code> clauses, so the groups mixing <code>AND</code> and <code>OR</code> must stay in the query context
+     */
+    private static boolean isFilterContextSafe(final QueryBuilder clause) {
+        if (clause instanceof NestedQueryBuilder)
+            return isFilterContextSafe(((NestedQueryBuilder) clause).query());
+
+        if (!(clause instanceof BoolQueryBuilder))
+            return true;
+
+        BoolQueryBuilder bool = (BoolQueryBuilder) clause;
+        if (!bool.should().isEmpty() && (!bool.must().isEmpty() || !bool.filter().isEmpty()))
+            return false;
+
+        return bool.must().stream().allMatch(ElasticsearchQueryAdapter::isFilterContextSafe)
+            && bool.should().stream().allMatch(ElasticsearchQueryAdapter::isFilterContextSafe);
+    }
+
+    private BoolQueryBuilder compileFilterQuery(final String index, final String filter) {
+        BoolQueryBuilder filterQuery = boolQuery();
+        applyFilterQuery(filterQuery, queryFragmentCache.parse(index, filter), index, newHashMap(), true);
+        return FilterQueryOptimizer.optimize(filterQuery, FILTER_OPTIMIZER.getValue(index), field -> isExactField(index, field));
+    }
+
+    private boolean isExactField(final String index, final String fieldName) {
+        return settingsAdapter.isTypeOf(index, fieldName, FIELD_TYPE_KEYWORD) || settingsAdapter.isTypeOf(index, fieldName, FIELD_TYPE_NUMBER) || settingsAdapter.isTypeOf(index, fieldName, FIELD_TYPE_BOOLEAN);
+    }
+
+    private void applyFilterQuery(BoolQueryBuilder queryBuilder, final QueryFragment queryFragment, final String indexName, Map<String, BoolQueryBuilder> nestedQueries, final boolean root) {
         if (queryFragment == null || !(queryFragment instanceof QueryFragmentList))
             return;
 
@@ -167,7 +358,7 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
                 BoolQueryBuilder recursiveQueryBuilder = boolQuery();
                 logicalOperator = getLogicalOperatorByQueryFragmentList(queryFragmentList, index, logicalOperator);
                 addFilterQuery(queryBuilder, recursiveQueryBuilder, logicalOperator, isNotBeforeCurrentQueryFragment(queryFragmentList, index), false, null, nestedQueries);
-                applyFilterQuery(recursiveQueryBuilder, queryFragmentFilter, indexName, newHashMap());
+                applyFilterQuery(recursiveQueryBuilder, queryFragmentFilter, indexName, newHashMap(), false);
 
             } else if (queryFragmentFilter instanceof QueryFragmentItem) {
                 QueryFragmentItem queryFragmentItem = (QueryFragmentItem) queryFragmentFilter;
@@ -222,16 +413,14 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
                         if (!settingsAdapter.isTypeOf(indexName, fieldName, FIELD_TYPE_KEYWORD))
                             throw new UnsupportedFieldException(fieldName, settingsAdapter.getFieldType(indexName, fieldName), FIELD_TYPE_KEYWORD.toString(), LIKE);
 
-                        addFilterQuery(queryBuilder, wildcardQuery(fieldName, filter.getValue().first()), logicalOperator, not, nested, fieldFirstName, nestedQueries);
+                        addFilterQuery(queryBuilder, likeQuery(indexName, fieldName, filter.getValue().first()), logicalOperator, not, nested, fieldFirstName, nestedQueries);
                         break;
 
                     case IN:
                         if (fieldName.equals(ES_MAPPING_META_FIELDS_ID.getValue(indexName))) {
-                            String[] values = filterValue.stream().map(contents -> ((Value) contents).value(0)).map(Object::toString).toArray(String[]::new);
-                            addFilterQuery(queryBuilder, idsQuery().addIds(values), logicalOperator, not, nested, fieldFirstName, nestedQueries);
+                            addFilterQuery(queryBuilder, idsQuery().addIds(ids(filterValue)), logicalOperator, not, nested, fieldFirstName, nestedQueries);
                         } else {
-                            Object[] values = filterValue.stream().map(contents -> ((Value) contents).value(0)).toArray();
-                            addFilterQuery(queryBuilder, termsQuery(fieldName, values), logicalOperator, not, nested, fieldFirstName, nestedQueries);
+                            addFilterQuery(queryBuilder, inQuery(fieldName, filterValue), logicalOperator, not, nested, fieldFirstName, nestedQueries);
                         }
                         break;
 
@@ -241,10 +430,12 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
 
                         List<GeoPoint> points = filterValue
                             .stream()
-                            .map(point -> new GeoPoint(((Value) point).<Double>value(1), ((Value) point).<Double>value(0)))
+                            .map(point -> new GeoPoint(((Value) point).<Number>value(1).doubleValue(), ((Value) point).<Number>value(0).doubleValue()))
                             .collect(toList());
 
-                        addFilterQuery(queryBuilder, geoPolygonQuery(fieldName, points), logicalOperator, not, nested, fieldFirstName, nestedQueries);
+                        QueryBuilder polygonQuery = GeoPolygonPlanner.plan(fieldName, points, ofNullable(POLYGON_SIMPLIFY_TOLERANCE.<Integer>getValue(indexName)).orElse(0),
+                            Boolean.parseBoolean(POLYGON_BOUNDING_BOX.getValue(indexName)));
+                        addFilterQuery(queryBuilder, polygonQuery, logicalOperator, not, nested, fieldFirstName, nestedQueries);
                         break;
 
                     case VIEWPORT:
@@ -254,7 +445,10 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
                         GeoPoint topRight = new GeoPoint(filterValue.value(0, 1), filterValue.value(0, 0));
                         GeoPoint bottomLeft = new GeoPoint(filterValue.value(1, 1), filterValue.value(1, 0));
 
-                        addFilterQuery(queryBuilder, geoBoundingBoxQuery(fieldName).setCornersOGC(bottomLeft, topRight), logicalOperator, not, nested, fieldFirstName, nestedQueries);
+                        QueryBuilder viewportQuery = root && viewportTileAdapter.isTiled(indexName, queryFragmentList, index)
+                            ? viewportTileAdapter.query(indexName, fieldName, topRight, bottomLeft)
+                            : geoBoundingBoxQuery(fieldName).setCornersOGC(bottomLeft, topRight);
+                        addFilterQuery(queryBuilder, viewportQuery, logicalOperator, not, nested, fieldFirstName, nestedQueries);
                         break;
 
                     default:
@@ -264,6 +458,50 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
         }
     }
 
+    private QueryBuilder likeQuery(final String indexName, final String fieldName, final String pattern) {
+        return LikeQueryPlanner.plan(fieldName, pattern, subfield(indexName, fieldName, LIKE_REVERSE_SUBFIELD), subfield(indexName, fieldName, LIKE_NGRAM_SUBFIELD),
+            ofNullable(LIKE_NGRAM_MIN_GRAM.<Integer>getValue(indexName)).orElse(0), ofNullable(LIKE_NGRAM_MAX_GRAM.<Integer>getValue(indexName)).orElse(0),
+            !LIKE_LEADING_WILDCARD_REJECT.equals(LIKE_LEADING_WILDCARD.getValue(indexName)));
+    }
+
+    /**
+     * @return the configured subfield when it exists on the index mapping
+     */
+    private String subfield(final String indexName, final String fieldName, final RemoteProperties subfieldProperty) {
+        String subfieldName = subfieldProperty.getValue(indexName);
+        if (isEmpty(subfieldName))
+            return null;
+
+        String subfield = fieldName + "." + subfieldName;
+        try {
+            return settingsAdapter.checkFieldName(indexName, subfield, false) ? subfield : null;
+        } catch (InvalidFieldException e) {
+            return null;
+        }
+    }
+
+    private static String[] ids(final Value value) {
+        ValueArray array = value.array();
+        if (array != null)
+            return array.toStrings();
+
+        return value.stream().map(contents -> ((Value) contents).value(0)).map(Object::toString).toArray(String[]::new);
+    }
+
+    private static TermsQueryBuilder inQuery(final String fieldName, final Value value) {
+        ValueArray array = value.array();
+        if (array instanceof ValueArray.Integers)
+            return termsQuery(fieldName, ((ValueArray.Integers) array).values());
+
+        if (array instanceof ValueArray.Decimals)
+            return termsQuery(fieldName, ((ValueArray.Decimals) array).values());
+
+        if (array instanceof ValueArray.Strings)
+            return termsQuery(fieldName, ((ValueArray.Strings) array).values());
+
+        return termsQuery(fieldName, value.stream().map(contents -> ((Value) contents).value(0)).toArray());
+    }
+
     private void addFilterQuery(BoolQueryBuilder boolQueryBuilder, final QueryBuilder queryBuilder, final LogicalOperator logicalOperator, final boolean not, final boolean nested, final String fieldFirstName, Map<String, BoolQueryBuilder> nestedQueries) {
         Optional<QueryBuilder> optionalQuery = (nested ? buildNestedQuery(fieldFirstName, queryBuilder, logicalOperator, not, nestedQueries) : ofNullable(queryBuilder));
         optionalQuery.ifPresent(query -> addFilterQueryByLogicalOperator(boolQueryBuilder, query, logicalOperator, not, nested));
@@ -328,47 +566,46 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
         String mm = isEmpty(request.getMm()) ? QS_MM.getValue(indexName) : request.getMm();
         checkMM(mm, request);
 
-        Map<String, AbstractQueryBuilder> queryStringQueries = new HashMap<>();
+        queryStringPlanCache.get(indexName, QS_DEFAULT_FIELDS.getValue(request.getFields(), indexName), settingsAdapter.mappingVersion(indexName), this::compileQueryStringFields)
+            .forEach((nestedPath, fields) -> {
+                QueryStringQueryBuilder queryStringQuery = queryStringQuery(request.getQ()).fields(fields).minimumShouldMatch(mm).tieBreaker(0.2f).phraseSlop(2);
+                queryBuilder.should().add(NOT_NESTED.equals(nestedPath) ? queryStringQuery : nestedQuery(nestedPath, queryStringQuery, None));
+            });
+    }
+
+    /**
+     * @return the boost by field name (with the <code>.raw</code> suffix for the string fields) grouped by nested path
+     */
+    private Map<String, Map<String, Float>> compileQueryStringFields(final String indexName, final Set<String> fields) {
+        Map<String, Map<String, Float>> queryStringFields = new HashMap<>();
 
-        QS_DEFAULT_FIELDS.getValue(request.getFields(), indexName).forEach(field -> {
+        fields.forEach(field -> {
             String[] boostFieldValues = field.split(":");
             String fieldName = boostFieldValues[0];
+            String firstName = fieldName.split("\\.")[0];
 
-            if (settingsAdapter.isTypeOf(indexName, fieldName.split("\\.")[0], FIELD_TYPE_NESTED)) {
-                String nestedField = fieldName.split("\\.")[0];
+            String nestedPath = settingsAdapter.isTypeOf(indexName, firstName, FIELD_TYPE_NESTED) ? firstName : NOT_NESTED;
 
-                if (queryStringQueries.containsKey(nestedField)) {
-                    buildQueryStringQuery((QueryStringQueryBuilder) ((NestedQueryBuilder) queryStringQueries.get(nestedField)).query(), indexName, request.getQ(), boostFieldValues, mm);
-                } else {
-                    queryStringQueries.put(nestedField, nestedQuery(nestedField, buildQueryStringQuery(null, indexName, request.getQ(), boostFieldValues, mm), None));
-                }
-            } else {
-                if (queryStringQueries.containsKey(NOT_NESTED)) {
-                    buildQueryStringQuery((QueryStringQueryBuilder) queryStringQueries.get(NOT_NESTED), indexName, request.getQ(), boostFieldValues, mm);
-                } else {
-                    queryStringQueries.put(NOT_NESTED, buildQueryStringQuery(null, indexName, request.getQ(), boostFieldValues, mm));
-                }
+            if (settingsAdapter.isTypeOf(indexName, fieldName, FIELD_TYPE_STRING) && !fieldName.contains(".raw")) {
+                fieldName = fieldName.concat(".raw");
             }
-        });
-        queryStringQueries.forEach((nestedPath, nestedQuery) -> queryBuilder.should().add(nestedQuery));
-    }
-
-    private QueryStringQueryBuilder buildQueryStringQuery(QueryStringQueryBuilder queryStringQueryBuilder, final String indexName, final String q, final String[] boostFieldValues, final String mm) {
-        if (queryStringQueryBuilder == null)
-            queryStringQueryBuilder = queryStringQuery(q);
 
-        String fieldName = boostFieldValues[0];
-
-        if (settingsAdapter.isTypeOf(indexName, fieldName, FIELD_TYPE_STRING) && !fieldName.contains(".raw")) {
-            fieldName = fieldName.concat(".raw");
-        }
+            float boost = (boostFieldValues.length == 2 ? Float.parseFloat(boostFieldValues[1]) : 1.0f);
+            queryStringFields.computeIfAbsent(nestedPath, path -> new HashMap<>()).put(fieldName, boost);
+        });
 
-        float boost = (boostFieldValues.length == 2 ? Float.parseFloat(boostFieldValues[1]) : 1.0f);
-        queryStringQueryBuilder.field(fieldName, boost).minimumShouldMatch(mm).tieBreaker(0.2f).phraseSlop(2);
-        return queryStringQueryBuilder;
+        Map<String, Map<String, Float>> plan = new LinkedHashMap<>();
+        queryStringFields.forEach((nestedPath, boosts) -> plan.put(nestedPath, unmodifiableMap(boosts)));
+        return unmodifiableMap(plan);
     }
 
+    /**
+     * The valid values are kept, the short ones only, so the set is bounded (e.g. <code>-100%</code>)
+     */
     private void checkMM(final String mm, final Queryable request) {
+        if (VALID_MM.contains(mm))
+            return;
+
         if (mm.contains(".") || mm.contains("%") && ((mm.length() - 1) > mm.indexOf('%')))
             throw new NumberFormatException(MM_ERROR_MESSAGE);
 
@@ -381,6 +618,9 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
 
         if (number < -100 || number > 100)
             throw new IllegalArgumentException(MM_ERROR_MESSAGE);
+
+        if (mm.length() <= MAX_CACHED_MM_LENGTH)
+            VALID_MM.add(mm);
     }
 
     private void applyFacets(SearchRequestBuilder searchRequestBuilder, final Facetable request) {
@@ -391,41 +631,63 @@ public class ElasticsearchQueryAdapter implements QueryAdapter<GetRequestBuilder
         final String indexName = request.getIndex();
         request.setFacetingValues(ES_FACET_SIZE.getValue(indexName));
 
-        final int facetSize = request.getFacetSize();
-        final int shardSize = parseInt(String.valueOf(settingsAdapter.settingsByKey(request.getIndex(), SHARDS)));
+        facetPlanCache.get(indexName, value, request.getFacetSize(), settingsAdapter.mappingVersion(indexName), (facets, facetSize) -> compileFacets(indexName, facets, facetSize))
+            .forEach(searchRequestBuilder::addAggregation);
+    }
+
+    /**
+     * The <code>shard_size</code> follows the Elasticsearch heuristic (<code>size * 1.5 + 10</code>) when the index has
+     * more than one shard, and is the facet size when every term fits in it (known cardinality) or there is a single shard.
+     * The <code>execution_hint</code> is <code>map</code> for fields with cardinality from <code>es.facet.map.cardinality</code>
+     * on, so their global ordinals aren't built, and <code>global_ordinals</code> for the other known fields.
+     * Entries of <code>es.facet.cardinality</code> that aren't <code>field:number</code> are logged and ignored.
+     *
+     * @return the top level aggregations, with the facets of nested fields grouped by their nested path
+     */
+    private List<AggregationBuilder> compileFacets(final String indexName, final Set<String> facets, final int facetSize) {
+        final int shards = parseInt(String.valueOf(settingsAdapter.settingsByKey(indexName, SHARDS)));
+        final Integer mapCardinality = ES_FACET_MAP_CARDINALITY.getValue(indexName);
+        final Map<String, Long> cardinalities = new HashMap<>();
+        ofNullable(ES_FACET_CARDINALITY.<Set<String>>getValue(indexName)).ifPresent(values -> values.forEach(field -> {
+            String[] fieldCardinality = field.split(":");
+            try {
+                if (fieldCardinality.length != 2)
+                    throw new NumberFormatException("expected <field>:<cardinality>");
+                cardinalities.put(fieldCardinality[0].trim(), Long.parseLong(fieldCardinality[1].trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring the invalid es.facet.cardinality entry [{}] of index {}: {}", field, indexName, e.getMessage());
+            }
+        }));
+
+        List<AggregationBuilder> aggregations = new ArrayList<>();
+        Map<String, AggregationBuilder> nestedAggregations = new HashMap<>();
 
-        FacetParser.parse(value.stream().collect(joining(","))).forEach(facet -> {
+        FacetParser.parse(facets.stream().sorted().collect(joining(","))).forEach(facet -> {
             final String fieldName = facet.getName();
             final String firstName = facet.firstName();
             settingsAdapter.checkFieldName(indexName, fieldName, false);
 
-            AggregationBuilder agg = terms(fieldName)
+            final Long cardinality = cardinalities.get(fieldName);
+            TermsAggregationBuilder agg = terms(fieldName)
                 .field(fieldName)
                 .size(facetSize)
-                .shardSize(shardSize)
+                .shardSize(shards == 1 || (cardinality != null && cardinality <= facetSize) ? facetSize : facetSize * 3 / 2 + 10)
                 .order(Terms.Order.count(false));
 
+            if (cardinality != null)
+                agg.executionHint(mapCardinality != null && mapCardinality > 0 && cardinality >= mapCardinality ? "map" : "global_ordinals");
+
             if (settingsAdapter.isTypeOf(indexName, firstName, FIELD_TYPE_NESTED)) {
-                applyFacetsByNestedFields(searchRequestBuilder, firstName, agg);
+                nestedAggregations.computeIfAbsent(firstName, name -> {
+                    AggregationBuilder nestedAgg = nested(name, name);
+                    aggregations.add(nestedAgg);
+                    return nestedAgg;
+                }).subAggregation(agg);
             } else {
-                searchRequestBuilder.addAggregation(agg);
+                aggregations.add(agg);
             }
         });
-    }
 
-    private void applyFacetsByNestedFields(SearchRequestBuilder searchRequestBuilder, final String name, final AggregationBuilder agg) {
-        Optional<AggregationBuilder> nestedAgg = ofNullable(searchRequestBuilder.request().source().aggregations())
-        .flatMap(builder ->
-            builder.getAggregatorFactories()
-            .stream()
-            .filter(aggregationBuilder -> aggregationBuilder instanceof NestedAggregationBuilder && name.equals(aggregationBuilder.getName()))
-            .findFirst()
-        );
-
-        if (nestedAgg.isPresent()) {
-            nestedAgg.get().subAggregation(agg);
-        } else {
-            searchRequestBuilder.addAggregation(nested(name, name).subAggregation(agg));
-        }
+        return unmodifiableList(aggregations);
     }
 }
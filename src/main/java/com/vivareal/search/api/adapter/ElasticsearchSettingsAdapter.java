@@ -20,6 +20,7 @@ import org.springframework.stereotype.Component;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -50,6 +51,8 @@ public class ElasticsearchSettingsAdapter implements SettingsAdapter<Map<String,
     private final Map<String, String[]> defaultSourceIncludes;
     private final Map<String, String[]> defaultSourceExcludes;
 
+    private final Map<String, Long> mappingVersions;
+
     @Autowired
     public ElasticsearchSettingsAdapter(ESClient esClient) {
         this.esClient = esClient;
@@ -57,6 +60,7 @@ public class ElasticsearchSettingsAdapter implements SettingsAdapter<Map<String,
 
         defaultSourceIncludes = new HashMap<>();
         defaultSourceExcludes = new HashMap<>();
+        mappingVersions = newConcurrentMap();
     }
 
     @Override
@@ -100,6 +104,14 @@ public class ElasticsearchSettingsAdapter implements SettingsAdapter<Map<String,
         return type.typeOf(getFieldType(index, fieldName));
     }
 
+    /**
+     * @return a number increased every time the index mapping (or settings) changes on the cluster
+     */
+    @Override
+    public long mappingVersion(final String index) {
+        return mappingVersions.getOrDefault(index, 0L);
+    }
+
     @Scheduled(fixedRateString = "${es.settings.refresh.rate.ms}", initialDelayString = "${es.settings.refresh.initial.ms}")
     private void getSettingsInformationFromCluster() {
         GetIndexResponse getIndexResponse = esClient.getIndexResponse();
@@ -119,6 +131,7 @@ public class ElasticsearchSettingsAdapter implements SettingsAdapter<Map<String,
         );
 
         if (!structuredIndicesAux.isEmpty()) {
+            publishMappingVersions(structuredIndices, structuredIndicesAux);
             structuredIndices = structuredIndicesAux;
         }
 
@@ -127,6 +140,14 @@ public class ElasticsearchSettingsAdapter implements SettingsAdapter<Map<String,
         refreshDefaultSourceFields();
     }
 
+    private void publishMappingVersions(Map<String, Map<String, Object>> current, Map<String, Map<String, Object>> refreshed) {
+        Set<String> indices = new HashSet<>(current.keySet());
+        indices.addAll(refreshed.keySet());
+        indices.stream()
+            .filter(index -> !Objects.equals(current.get(index), refreshed.get(index)))
+            .forEach(index -> mappingVersions.merge(index, 1L, Long::sum));
+    }
+
     private void getMappingFromType(ObjectCursor<String> stringObjectCursor, Map<String, Object> indexInfo, ImmutableOpenMap<String, MappingMetaData> immutableIndexMapping, String index) {
         String type = stringObjectCursor.value;
         try {
@@ -0,0 +1,230 @@
+package com.vivareal.search.api.adapter;
+
+import org.elasticsearch.index.query.*;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.elasticsearch.index.query.AbstractQueryBuilder.DEFAULT_BOOST;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Rewrites a compiled filter query into a smaller one that matches the same documents, in the query and in the filter context.
+ *
+ * <ul>
+ *     <li><code>flatten</code>: removes the single clause groups and moves the clauses of the pure <code>AND</code> groups to their parent</li>
+ *     <li><code>terms</code>: merges the equalities of the same exact (keyword, number or boolean) field of <code>OR</code> and <code>NOT</code> clauses into one <code>terms</code> query</li>
+ *     <li><code>ranges</code>: fuses a lower and an upper bound of the same field into one <code>range</code> query (only safe for single valued fields)</li>
+ *     <li><code>dedupe</code>: removes the repeated clauses</li>
+ * </ul>
+ */
+final class FilterQueryOptimizer {
+
+    static final String FLATTEN = "flatten";
+    static final String TERMS = "terms";
+    static final String RANGES = "ranges";
+    static final String DEDUPE = "dedupe";
+
+    private final Set<String> rules;
+    private final Predicate<String> isExactField;
+
+    private FilterQueryOptimizer(final Set<String> rules, final Predicate<String> isExactField) {
+        this.rules = rules;
+        this.isExactField = isExactField;
+    }
+
+    /**
+     * Changes the given query, that must not be shared yet
+     */
+    static BoolQueryBuilder optimize(final BoolQueryBuilder query, final Set<String> rules, final Predicate<String> isExactField) {
+        if (rules == null || rules.isEmpty())
+            return query;
+
+        return new FilterQueryOptimizer(rules, isExactField).optimize(query);
+    }
+
+    private BoolQueryBuilder optimize(final BoolQueryBuilder query) {
+        clauses(query).forEach(this::optimizeClause);
+
+        if (!isPlain(query))
+            return query;
+
+        if (rules.contains(FLATTEN))
+            flatten(query);
+
+        if (rules.contains(TERMS)) {
+            mergeTerms(query.should());
+            mergeTerms(query.mustNot());
+        }
+
+        if (rules.contains(RANGES)) {
+            fuseRanges(query.must());
+            fuseRanges(query.filter());
+        }
+
+        if (rules.contains(DEDUPE))
+            clauses(query).forEach(FilterQueryOptimizer::dedupe);
+
+        return query;
+    }
+
+    private void optimizeClause(final List<QueryBuilder> clauses) {
+        clauses.forEach(clause -> {
+            if (clause instanceof BoolQueryBuilder)
+                optimize((BoolQueryBuilder) clause);
+            else if (clause instanceof NestedQueryBuilder && ((NestedQueryBuilder) clause).query() instanceof BoolQueryBuilder)
+                optimize((BoolQueryBuilder) ((NestedQueryBuilder) clause).query());
+        });
+    }
+
+    private static void flatten(final BoolQueryBuilder query) {
+        clauses(query).forEach(clauses -> clauses.replaceAll(FilterQueryOptimizer::unwrap));
+        hoist(query, query.must());
+        hoist(query, query.filter());
+    }
+
+    /**
+     * A group with only one <code>must</code>, <code>filter</code> or <code>should</code> clause matches the same documents of this clause,
+     * except for a compound <code>filter</code> clause that would leave the filter context
+     */
+    private static QueryBuilder unwrap(final QueryBuilder clause) {
+        if (!(clause instanceof BoolQueryBuilder) || !isPlain((BoolQueryBuilder) clause))
+            return clause;
+
+        BoolQueryBuilder group = (BoolQueryBuilder) clause;
+        if (!group.mustNot().isEmpty() || group.must().size() + group.filter().size() + group.should().size() != 1)
+            return clause;
+
+        if (!group.filter().isEmpty())
+            return isCompound(group.filter().get(0)) ? clause : group.filter().get(0);
+
+        return group.must().isEmpty() ? group.should().get(0) : group.must().get(0);
+    }
+
+    /**
+     * The clauses of a group without <code>should</code> clauses are moved to the parent, unless the group is the only
+     * required clause that keeps the parent <code>should</code> clauses optional
+     */
+    private static void hoist(final BoolQueryBuilder parent, final List<QueryBuilder> clauses) {
+        for (int i = 0; i < clauses.size(); i++) {
+            if (!(clauses.get(i) instanceof BoolQueryBuilder))
+                continue;
+
+            BoolQueryBuilder group = (BoolQueryBuilder) clauses.get(i);
+            boolean required = !group.must().isEmpty() || !group.filter().isEmpty();
+            if (!isPlain(group) || !group.should().isEmpty() || (!required && !parent.should().isEmpty()))
+                continue;
+
+            clauses.remove(i);
+            clauses.addAll(i, group.must());
+            parent.filter().addAll(group.filter());
+            parent.mustNot().addAll(group.mustNot());
+            i += group.must().size() - 1;
+        }
+    }
+
+    private void mergeTerms(final List<QueryBuilder> clauses) {
+        Map<String, List<Integer>> positionsByField = new LinkedHashMap<>();
+        for (int i = 0; i < clauses.size(); i++) {
+            String field = exactFieldName(clauses.get(i));
+            if (field != null)
+                positionsByField.computeIfAbsent(field, f -> new ArrayList<>(2)).add(i);
+        }
+
+        Set<Integer> removed = new HashSet<>();
+        positionsByField.forEach((field, positions) -> {
+            if (positions.size() < 2)
+                return;
+
+            List<Object> values = new ArrayList<>();
+            positions.forEach(position -> values.addAll(values(clauses.get(position))));
+            clauses.set(positions.get(0), termsQuery(field, new LinkedHashSet<>(termsQuery(field, values).values())));
+            removed.addAll(positions.subList(1, positions.size()));
+        });
+
+        for (int i = clauses.size() - 1; i >= 0; i--) {
+            if (removed.contains(i))
+                clauses.remove(i);
+        }
+    }
+
+    private String exactFieldName(final QueryBuilder clause) {
+        String field = null;
+        if (clause instanceof MatchQueryBuilder && isPlain((MatchQueryBuilder) clause))
+            field = ((MatchQueryBuilder) clause).fieldName();
+        else if (clause instanceof TermsQueryBuilder && isPlain((TermsQueryBuilder) clause))
+            field = ((TermsQueryBuilder) clause).fieldName();
+
+        return field != null && isExactField.test(field) ? field : null;
+    }
+
+    private static Collection<?> values(final QueryBuilder clause) {
+        if (clause instanceof MatchQueryBuilder)
+            return Collections.singleton(((MatchQueryBuilder) clause).value());
+
+        return ((TermsQueryBuilder) clause).values();
+    }
+
+    private static void fuseRanges(final List<QueryBuilder> clauses) {
+        for (int i = 0; i < clauses.size(); i++) {
+            RangeQueryBuilder range = singleBoundRange(clauses.get(i));
+            if (range == null)
+                continue;
+
+            for (int j = i + 1; j < clauses.size(); j++) {
+                RangeQueryBuilder other = singleBoundRange(clauses.get(j));
+                if (other == null || !range.fieldName().equals(other.fieldName()) || (range.from() == null) == (other.from() == null))
+                    continue;
+
+                RangeQueryBuilder lower = range.from() != null ? range : other;
+                RangeQueryBuilder upper = range.from() != null ? other : range;
+                clauses.set(i, rangeQuery(range.fieldName()).from(lower.from(), lower.includeLower()).to(upper.to(), upper.includeUpper()));
+                clauses.remove(j);
+                break;
+            }
+        }
+    }
+
+    private static RangeQueryBuilder singleBoundRange(final QueryBuilder clause) {
+        if (!(clause instanceof RangeQueryBuilder))
+            return null;
+
+        RangeQueryBuilder range = (RangeQueryBuilder) clause;
+        if ((range.from() == null) == (range.to() == null))
+            return null;
+
+        RangeQueryBuilder plain = rangeQuery(range.fieldName()).from(range.from(), range.includeLower()).to(range.to(), range.includeUpper());
+        return plain.equals(range) ? range : null;
+    }
+
+    private static void dedupe(final List<QueryBuilder> clauses) {
+        if (clauses.size() < 2)
+            return;
+
+        Set<QueryBuilder> unique = new LinkedHashSet<>(clauses);
+        if (unique.size() < clauses.size()) {
+            clauses.clear();
+            clauses.addAll(unique);
+        }
+    }
+
+    private static List<List<QueryBuilder>> clauses(final BoolQueryBuilder query) {
+        return Arrays.asList(query.must(), query.filter(), query.mustNot(), query.should());
+    }
+
+    private static boolean isCompound(final QueryBuilder clause) {
+        return clause instanceof BoolQueryBuilder || clause instanceof NestedQueryBuilder;
+    }
+
+    private static boolean isPlain(final BoolQueryBuilder query) {
+        return query.boost() == DEFAULT_BOOST && query.queryName() == null && query.minimumShouldMatch() == null && query.adjustPureNegative() && !query.disableCoord();
+    }
+
+    private static boolean isPlain(final MatchQueryBuilder match) {
+        return matchQuery(match.fieldName(), match.value()).equals(match);
+    }
+
+    private static boolean isPlain(final TermsQueryBuilder terms) {
+        return terms.termsLookup() == null && termsQuery(terms.fieldName(), terms.values()).equals(terms);
+    }
+}
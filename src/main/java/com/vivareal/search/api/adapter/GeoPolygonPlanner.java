@@ -0,0 +1,136 @@
+package com.vivareal.search.api.adapter;
+
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.index.query.QueryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Builds the <code>geo_polygon</code> query of a <code>POLYGON</code> filter, optionally:
+ *
+ * <ul>
+ *     <li>simplified with Douglas-Peucker, dropping the vertices closer than the tolerance (in meters) to the simplified
+ *     outline, so each document is tested against fewer edges</li>
+ *     <li>conjoined with the <code>geo_bounding_box</code> of the polygon, a cheap prefilter for the point-in-polygon test</li>
+ * </ul>
+ */
+final class GeoPolygonPlanner {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private GeoPolygonPlanner() {
+    }
+
+    static QueryBuilder plan(final String field, final List<GeoPoint> points, final int toleranceInMeters, final boolean boundingBox) {
+        List<GeoPoint> polygon = toleranceInMeters > 0 ? simplify(points, toleranceInMeters) : points;
+        QueryBuilder polygonQuery = geoPolygonQuery(field, polygon);
+        if (!boundingBox)
+            return polygonQuery;
+
+        double top = -90, bottom = 90, left = 180, right = -180;
+        for (GeoPoint point : polygon) {
+            top = max(top, point.lat());
+            bottom = min(bottom, point.lat());
+            left = min(left, point.lon());
+            right = max(right, point.lon());
+        }
+
+        // The bounding box of a polygon crossing the dateline isn't the min/max longitude
+        if (right - left > 180)
+            return polygonQuery;
+
+        return boolQuery().filter(geoBoundingBoxQuery(field).setCorners(top, left, bottom, right)).filter(polygonQuery);
+    }
+
+    /**
+     * Simplifies the ring splitting it on the first vertex and on the farthest one from it, so both halves are open lines
+     *
+     * @return the simplified ring or the original one when it would have less than 3 vertices
+     */
+    static List<GeoPoint> simplify(final List<GeoPoint> points, final int toleranceInMeters) {
+        int size = points.size();
+        if (size > 1 && points.get(0).equals(points.get(size - 1)))
+            size--;
+
+        if (size <= 3)
+            return points;
+
+        // Equirectangular projection in meters, good enough for the size of a search polygon
+        double scale = cos(toRadians(points.get(0).lat()));
+        double[] x = new double[size + 1], y = new double[size + 1];
+        for (int i = 0; i <= size; i++) {
+            GeoPoint point = points.get(i % size);
+            x[i] = point.lon() * scale * METERS_PER_DEGREE;
+            y[i] = point.lat() * METERS_PER_DEGREE;
+        }
+
+        int farthest = 1;
+        double farthestDistance = 0;
+        for (int i = 1; i < size; i++) {
+            double distance = hypot(x[i] - x[0], y[i] - y[0]);
+            if (distance > farthestDistance) {
+                farthestDistance = distance;
+                farthest = i;
+            }
+        }
+
+        boolean[] keep = new boolean[size + 1];
+        keep[0] = keep[farthest] = keep[size] = true;
+        simplify(x, y, 0, farthest, toleranceInMeters, keep);
+        simplify(x, y, farthest, size, toleranceInMeters, keep);
+
+        List<GeoPoint> simplified = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (keep[i])
+                simplified.add(points.get(i));
+        }
+
+        return simplified.size() < 3 ? points : simplified;
+    }
+
+    private static void simplify(final double[] x, final double[] y, final int first, final int last, final double tolerance, final boolean[] keep) {
+        int[] stack = new int[2 * (last - first + 1)];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+
+        while (top > 0) {
+            int end = stack[--top], begin = stack[--top];
+
+            int index = -1;
+            double maxDistance = tolerance;
+            for (int i = begin + 1; i < end; i++) {
+                double distance = distance(x, y, i, begin, end);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+
+            if (index != -1) {
+                keep[index] = true;
+                stack[top++] = begin;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = end;
+            }
+        }
+    }
+
+    /**
+     * @return the distance from the point <code>i</code> to the segment between <code>begin</code> and <code>end</code>
+     */
+    private static double distance(final double[] x, final double[] y, final int i, final int begin, final int end) {
+        double dx = x[end] - x[begin], dy = y[end] - y[begin];
+        double length = dx * dx + dy * dy;
+        if (length == 0)
+            return hypot(x[i] - x[begin], y[i] - y[begin]);
+
+        double t = max(0, min(1, ((x[i] - x[begin]) * dx + (y[i] - y[begin]) * dy) / length));
+        return hypot(x[i] - x[begin] - t * dx, y[i] - y[begin] - t * dy);
+    }
+}
@@ -0,0 +1,145 @@
+package com.vivareal.search.api.adapter;
+
+import org.elasticsearch.index.query.QueryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.Collections.reverse;
+import static org.elasticsearch.index.query.Operator.AND;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Chooses the cheapest query that matches a normalized <code>LIKE</code> pattern (wildcard syntax, where <code>\</code>
+ * escapes the next char):
+ *
+ * <ul>
+ *     <li>no wildcards: <code>term</code></li>
+ *     <li>only <code>*</code>: <code>exists</code></li>
+ *     <li>only trailing <code>*</code>: <code>prefix</code></li>
+ *     <li>leading wildcard: <code>match</code> on the ngram subfield for <code>*abc*</code> (when the literal length is
+ *     between the min and max gram, as it's searched as a single token), or the reversed pattern on the reverse subfield,
+ *     or a <code>wildcard</code> when the leading wildcards are allowed</li>
+ *     <li>otherwise: <code>wildcard</code></li>
+ * </ul>
+ */
+final class LikeQueryPlanner {
+
+    private static final int ANY_STRING = -1;
+    private static final int ANY_CHAR = -2;
+
+    private LikeQueryPlanner() {
+    }
+
+    /**
+     * @param reverseField subfield indexed with the reversed values or <code>null</code>
+     * @param ngramField subfield indexed with ngrams (and searched as a single token) or <code>null</code>
+     * @param minGram the shortest ngram of the ngram subfield
+     * @param maxGram the longest ngram of the ngram subfield
+     */
+    static QueryBuilder plan(final String field, final String pattern, final String reverseField, final String ngramField, final int minGram, final int maxGram,
+                             final boolean leadingWildcardAllowed) {
+        List<Integer> tokens = tokenize(pattern);
+        if (!isWildcard(tokens, 0))
+            return plan(field, tokens, pattern);
+
+        if (ngramField != null && isContains(tokens) && tokens.size() - 2 >= minGram && tokens.size() - 2 <= maxGram)
+            return matchQuery(ngramField, literal(tokens, 1, tokens.size() - 1)).operator(AND);
+
+        if (isAnyString(tokens, 0, tokens.size()))
+            return existsQuery(field);
+
+        List<Integer> reversed = new ArrayList<>(tokens);
+        reverse(reversed);
+        if (reverseField != null && !isWildcard(reversed, 0))
+            return plan(reverseField, reversed, pattern(reversed));
+
+        if (!leadingWildcardAllowed)
+            throw new IllegalArgumentException(format("The LIKE pattern [%s] starts with a wildcard, that is not allowed on field [%s]", pattern, field));
+
+        return wildcardQuery(field, pattern);
+    }
+
+    private static QueryBuilder plan(final String field, final List<Integer> tokens, final String pattern) {
+        int firstWildcard = 0;
+        while (firstWildcard < tokens.size() && !isWildcard(tokens, firstWildcard))
+            firstWildcard++;
+
+        if (firstWildcard == tokens.size())
+            return termQuery(field, literal(tokens, 0, tokens.size()));
+
+        if (isAnyString(tokens, firstWildcard, tokens.size()))
+            return prefixQuery(field, literal(tokens, 0, firstWildcard));
+
+        return wildcardQuery(field, pattern);
+    }
+
+    /**
+     * @return the chars of the pattern, with {@link #ANY_STRING} and {@link #ANY_CHAR} for the not escaped wildcards
+     */
+    private static List<Integer> tokenize(final String pattern) {
+        List<Integer> tokens = new ArrayList<>(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length())
+                tokens.add((int) pattern.charAt(++i));
+            else if (c == '*')
+                tokens.add(ANY_STRING);
+            else if (c == '?')
+                tokens.add(ANY_CHAR);
+            else
+                tokens.add((int) c);
+        }
+        return tokens;
+    }
+
+    private static String pattern(final List<Integer> tokens) {
+        StringBuilder pattern = new StringBuilder(tokens.size());
+        tokens.forEach(token -> {
+            if (token == ANY_STRING)
+                pattern.append('*');
+            else if (token == ANY_CHAR)
+                pattern.append('?');
+            else if (token == '*' || token == '?' || token == '\\')
+                pattern.append('\\').append((char) token.intValue());
+            else
+                pattern.append((char) token.intValue());
+        });
+        return pattern.toString();
+    }
+
+    private static String literal(final List<Integer> tokens, final int from, final int to) {
+        StringBuilder literal = new StringBuilder(to - from);
+        for (int i = from; i < to; i++)
+            literal.append((char) tokens.get(i).intValue());
+        return literal.toString();
+    }
+
+    private static boolean isWildcard(final List<Integer> tokens, final int index) {
+        return index < tokens.size() && tokens.get(index) < 0;
+    }
+
+    private static boolean isAnyString(final List<Integer> tokens, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (tokens.get(i) != ANY_STRING)
+                return false;
+        }
+        return from < to;
+    }
+
+    /**
+     * @return if the pattern is a literal between two <code>*</code>, e.g. <code>*abc*</code>
+     */
+    private static boolean isContains(final List<Integer> tokens) {
+        int last = tokens.size() - 1;
+        if (last < 2 || tokens.get(0) != ANY_STRING || tokens.get(last) != ANY_STRING)
+            return false;
+
+        for (int i = 1; i < last; i++) {
+            if (tokens.get(i) < 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -4,17 +4,32 @@ import com.vivareal.search.api.model.http.BaseApiRequest;
 import com.vivareal.search.api.model.http.FilterableApiRequest;
 import com.vivareal.search.api.model.http.SearchApiRequest;
 
+import java.util.Collection;
+
 /**
  * This interface is responsible to generate a queryBuilder to realize a search operation
  *
  * @param <Q1> Implementation of QueryAdapter expected as a result of search by id
  * @param <Q2> Implementation of QueryAdapter expected as a result of the generic query
+ * @param <Q3> Implementation of QueryAdapter expected as a result of search by ids
  */
-public interface QueryAdapter<Q1, Q2> {
+public interface QueryAdapter<Q1, Q2, Q3> {
 
     Q1 getById(BaseApiRequest request, String id);
 
+    Q3 getByIds(BaseApiRequest request, Collection<String> ids);
+
     Q2 query(FilterableApiRequest request);
 
     Q2 query(SearchApiRequest request);
+
+    /**
+     * @return the query of the search hits only, without the facets
+     */
+    Q2 queryHits(SearchApiRequest request);
+
+    /**
+     * @return the query of the search facets only, without the hits
+     */
+    Q2 queryFacets(SearchApiRequest request);
 }
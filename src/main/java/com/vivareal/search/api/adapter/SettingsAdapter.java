@@ -21,4 +21,6 @@ public interface SettingsAdapter<T, U> {
     String[] getFetchSourceIncludeFields(final Fetchable request);
 
     String[] getFetchSourceExcludeFields(final Fetchable request, String[] includeFields);
+
+    long mappingVersion(final String index);
 }
@@ -1,16 +1,21 @@
 package com.vivareal.search.api.adapter;
 
+import com.vivareal.search.api.cache.SortPlanCache;
 import com.vivareal.search.api.model.search.Sortable;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DEFAULT_SORT;
 import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
 import static com.vivareal.search.api.model.parser.SortParser.parse;
+import static java.util.Collections.unmodifiableList;
 import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
 import static org.elasticsearch.search.sort.SortOrder.DESC;
 import static org.elasticsearch.search.sort.SortOrder.valueOf;
@@ -20,25 +25,37 @@ public class SortQueryAdapter {
 
     private final SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter;
 
-    public SortQueryAdapter(@Qualifier("elasticsearchSettings") SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter) {
+    private final SortPlanCache sortPlanCache;
+
+    public SortQueryAdapter(@Qualifier("elasticsearchSettings") SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter,
+                            SortPlanCache sortPlanCache) {
         this.settingsAdapter = settingsAdapter;
+        this.sortPlanCache = sortPlanCache;
     }
 
     public void apply(SearchRequestBuilder searchRequestBuilder, final Sortable request) {
         if (request.getSort() != null && "".equals(request.getSort().trim()))
             return;
 
-        parse(ES_DEFAULT_SORT.getValue(request.getSort(), request.getIndex())).forEach(item -> {
+        String index = request.getIndex();
+        sortPlanCache.get(index, ES_DEFAULT_SORT.getValue(request.getSort(), index), settingsAdapter.mappingVersion(index), this::compile)
+            .forEach(searchRequestBuilder::addSort);
+    }
+
+    private List<SortBuilder<?>> compile(final String index, final String sort) {
+        List<SortBuilder<?>> sortBuilders = new ArrayList<>();
+        parse(sort).forEach(item -> {
             String fieldName = item.getField().getName();
 
             FieldSortBuilder fieldSortBuilder = fieldSort(fieldName).order(valueOf(item.getOrderOperator().name()));
             String parentField = fieldName.split("\\.")[0];
 
-            if (settingsAdapter.isTypeOf(request.getIndex(), parentField, FIELD_TYPE_NESTED))
+            if (settingsAdapter.isTypeOf(index, parentField, FIELD_TYPE_NESTED))
                 fieldSortBuilder.setNestedPath(parentField);
 
-            searchRequestBuilder.addSort(fieldSortBuilder);
+            sortBuilders.add(fieldSortBuilder);
         });
-        searchRequestBuilder.addSort(fieldSort("_uid").order(DESC));
+        sortBuilders.add(fieldSort("_uid").order(DESC));
+        return unmodifiableList(sortBuilders);
     }
 }
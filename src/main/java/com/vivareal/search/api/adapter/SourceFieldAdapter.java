@@ -1,31 +1,127 @@
 package com.vivareal.search.api.adapter;
 
+import com.google.common.collect.ImmutableSet;
+import com.vivareal.search.api.cache.SourceFieldsCache;
 import com.vivareal.search.api.model.search.Fetchable;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
+import java.util.Set;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DOCVALUE_PROJECTION;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DOCVALUE_PROJECTION_MAX_FIELDS;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.String.valueOf;
+import static org.apache.commons.lang3.StringUtils.contains;
+import static org.apache.commons.lang3.StringUtils.substringBeforeLast;
+import static org.elasticsearch.common.Strings.EMPTY_ARRAY;
 
 @Component
 public class SourceFieldAdapter {
 
+    /**
+     * The field types whose doc values are rendered as in the source
+     */
+    private static final Set<String> DOC_VALUE_TYPES = ImmutableSet.of("keyword", "long", "integer", "short", "byte", "double", "boolean");
+
     private final SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter;
 
+    private final SourceFieldsCache sourceFieldsCache;
+
     @Autowired
-    public SourceFieldAdapter(@Qualifier("elasticsearchSettings") SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter) {
+    public SourceFieldAdapter(@Qualifier("elasticsearchSettings") SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter,
+                              SourceFieldsCache sourceFieldsCache) {
         this.settingsAdapter = settingsAdapter;
+        this.sourceFieldsCache = sourceFieldsCache;
     }
 
+    /**
+     * Fetches the requested fields from doc values, without loading the source (<code>_source=false</code>), when
+     * they can be (see {@link #docValueFields(Fetchable)}), or else filters the source
+     */
     public void apply(SearchRequestBuilder searchRequestBuilder, final Fetchable request) {
-        String[] includeFields = settingsAdapter.getFetchSourceIncludeFields(request);
-        searchRequestBuilder.setFetchSource(includeFields, settingsAdapter.getFetchSourceExcludeFields(request, includeFields));
+        FetchSourceContext fetchSource = fetchSource(request, true);
+        if (fetchSource.fetchSource()) {
+            searchRequestBuilder.setFetchSource(fetchSource.includes(), fetchSource.excludes());
+        } else {
+            searchRequestBuilder.setFetchSource(false);
+            for (String field : fetchSource.includes())
+                searchRequestBuilder.addDocValueField(field);
+        }
     }
 
     public void apply(GetRequestBuilder getRequestBuilder, final Fetchable request) {
+        FetchSourceContext fetchSource = fetchSource(request);
+        getRequestBuilder.setFetchSource(fetchSource.includes(), fetchSource.excludes());
+    }
+
+    public FetchSourceContext fetchSource(final Fetchable request) {
+        return fetchSource(request, false);
+    }
+
+    /**
+     * The default source fields of the index are kept by the settings adapter, the requested ones are resolved once
+     * by {@link SourceFieldsCache}
+     *
+     * @param docValues if the fields may be fetched from doc values, returned as the includes of a context without
+     *                  source
+     */
+    private FetchSourceContext fetchSource(final Fetchable request, final boolean docValues) {
+        if (request.getIncludeFields() == null && request.getExcludeFields() == null)
+            return resolve(request);
+
+        return sourceFieldsCache.get(request, docValues, settingsAdapter.mappingVersion(request.getIndex()), docValues ? this::docValueFields : this::resolve);
+    }
+
+    private FetchSourceContext resolve(final Fetchable request) {
         String[] includeFields = settingsAdapter.getFetchSourceIncludeFields(request);
-        getRequestBuilder.setFetchSource(includeFields, settingsAdapter.getFetchSourceExcludeFields(request, includeFields));
+        return new FetchSourceContext(true, includeFields, settingsAdapter.getFetchSourceExcludeFields(request, includeFields));
+    }
+
+    /**
+     * @return the include fields to be fetched from doc values when <code>es.docvalue.projection</code> is enabled, there
+     * are up to <code>es.docvalue.projection.max.fields</code> include fields, no exclude fields, and every include field
+     * has doc values rendered as in the source (see {@link #hasDocValues(String, String)}). Otherwise, the source fields.
+     */
+    private FetchSourceContext docValueFields(final Fetchable request) {
+        FetchSourceContext fetchSource = resolve(request);
+        String index = request.getIndex();
+        Integer maxFields = ES_DOCVALUE_PROJECTION_MAX_FIELDS.getValue(index);
+        String[] includeFields = fetchSource.includes();
+
+        if (!parseBoolean(ES_DOCVALUE_PROJECTION.getValue(index)) || request.getExcludeFields() != null || includeFields.length == 0
+            || (maxFields != null && includeFields.length > maxFields))
+            return fetchSource;
+
+        for (String field : includeFields) {
+            if (!hasDocValues(index, field))
+                return fetchSource;
+        }
+        return new FetchSourceContext(false, includeFields, EMPTY_ARRAY);
+    }
+
+    /**
+     * @return if the field is mapped with one of the {@link #DOC_VALUE_TYPES} and doc values, and is not a multi field or
+     * inside a nested field, so its value has the same path in the source
+     */
+    private boolean hasDocValues(final String index, final String field) {
+        if (contains(field, '*') || !DOC_VALUE_TYPES.contains(settingsAdapter.getFieldType(index, field)))
+            return false;
+
+        Map<String, Object> mapping = settingsAdapter.settings().get(index);
+        if ("false".equals(valueOf(mapping.get(field + ".doc_values"))))
+            return false;
+
+        for (String parent = field; contains(parent, '.'); ) {
+            parent = substringBeforeLast(parent, ".");
+            if (!"_obj".equals(mapping.get(parent)))
+                return false;
+        }
+        return true;
     }
 }
@@ -0,0 +1,196 @@
+package com.vivareal.search.api.adapter;
+
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.model.query.*;
+import com.vivareal.search.api.model.search.Filterable;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.VIEWPORT_TILE_ZOOM;
+import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
+import static com.vivareal.search.api.model.query.LogicalOperator.AND;
+import static com.vivareal.search.api.model.query.RelationalOperator.VIEWPORT;
+import static java.lang.Math.*;
+import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.elasticsearch.index.query.QueryBuilders.geoBoundingBoxQuery;
+
+/**
+ * Map pans send <code>VIEWPORT</code> filters with arbitrary corners, so no two requests are equal. With a
+ * <code>viewport.tile.zoom</code> the viewports of the top level conjunction are searched by the slippy map tiles
+ * (z/x/y) covering them, the same for every viewport inside these tiles, so Elasticsearch caches the response
+ * (<code>request_cache</code>). The hits are then trimmed to the requested viewport, while <code>totalCount</code>
+ * and the facets count the covering tiles.
+ *
+ * The trimming happens after <code>from</code>/<code>size</code>, so a page may have fewer hits than <code>size</code>
+ * (even none) and the pages still follow the covering tiles: a client pages until <code>from</code> reaches
+ * <code>totalCount</code>, not until a short page. Pushing the exact viewport into the query would make every request
+ * unique again and lose the cached responses.
+ */
+@Component
+public class ViewportTileAdapter {
+
+    private static final double MAX_LATITUDE = toDegrees(atan(sinh(PI)));
+
+    private final SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter;
+
+    private final QueryFragmentCache queryFragmentCache;
+
+    public ViewportTileAdapter(@Qualifier("elasticsearchSettings") SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter,
+                               QueryFragmentCache queryFragmentCache) {
+        this.settingsAdapter = settingsAdapter;
+        this.queryFragmentCache = queryFragmentCache;
+    }
+
+    /**
+     * @return if the <code>VIEWPORT</code> filter on the position of the root fragment list is searched by tiles:
+     * there is a tile zoom and the filter is not negated, not nested and the root list has only <code>AND</code>s
+     */
+    boolean isTiled(final String index, final QueryFragmentList root, final int position) {
+        Integer zoom = VIEWPORT_TILE_ZOOM.getValue(index);
+        if (zoom == null || zoom <= 0)
+            return false;
+
+        QueryFragment fragment = root.get(position);
+        if (!(fragment instanceof QueryFragmentItem) || ((QueryFragmentItem) fragment).getFilter().getRelationalOperator() != VIEWPORT)
+            return false;
+
+        if (position > 0 && root.get(position - 1) instanceof QueryFragmentNot && ((QueryFragmentNot) root.get(position - 1)).isNot())
+            return false;
+
+        if (settingsAdapter.isTypeOf(index, ((QueryFragmentItem) fragment).getFilter().getField().firstName(), FIELD_TYPE_NESTED))
+            return false;
+
+        return root.stream().allMatch(item -> {
+            if (item instanceof QueryFragmentItem)
+                return ((QueryFragmentItem) item).getLogicalOperator() == null || ((QueryFragmentItem) item).getLogicalOperator() == AND;
+            return !(item instanceof QueryFragmentOperator) || ((QueryFragmentOperator) item).getOperator() == AND;
+        });
+    }
+
+    /**
+     * @return the <code>geo_bounding_box</code> of the tiles covering the viewport
+     */
+    QueryBuilder query(final String index, final String field, final GeoPoint topRight, final GeoPoint bottomLeft) {
+        int tiles = 1 << min((int) VIEWPORT_TILE_ZOOM.<Integer>getValue(index), 30);
+
+        // The tiles stop at the latitude limit of the Web Mercator projection, the first and the last rows cover the poles
+        double topY = tileY(topRight.lat(), tiles), bottomY = tileY(bottomLeft.lat(), tiles) + 1;
+        double top = topY == 0 ? 90 : tileLatitude(topY, tiles);
+        double bottom = bottomY == tiles ? -90 : tileLatitude(bottomY, tiles);
+        double left = tileLongitude(floor(tileX(bottomLeft.lon(), tiles)), tiles);
+        double right = tileLongitude(min(floor(tileX(topRight.lon(), tiles)) + 1, tiles), tiles);
+
+        return geoBoundingBoxQuery(field).setCorners(top, left, bottom, right);
+    }
+
+    /**
+     * Requests the tiled viewport fields as doc values, so the trimming doesn't depend on the fetched source
+     */
+    public void apply(SearchRequestBuilder searchRequestBuilder, final Filterable request) {
+        viewports(request).forEach(viewport -> searchRequestBuilder.addDocValueField(viewport.getField().getName()));
+    }
+
+    /**
+     * Caches the responses of the tiled requests, even the ones with hits (<code>size</code> &gt; 0)
+     */
+    public void applyRequestCache(SearchRequestBuilder searchRequestBuilder, final Filterable request) {
+        if (!viewports(request).isEmpty())
+            searchRequestBuilder.setRequestCache(true);
+    }
+
+    /**
+     * @return the response without the hits out of the requested viewports, keeping the total hits and the aggregations
+     * of the covering tiles (so the page may be shorter than the requested size)
+     */
+    public SearchResponse trim(final Filterable request, final SearchResponse response) {
+        Predicate<SearchHit> inViewports = hitFilter(request);
+        if (inViewports == null || response.getHits().getHits().length == 0)
+            return response;
+
+        SearchHit[] hits = stream(response.getHits().getHits()).filter(inViewports).toArray(SearchHit[]::new);
+        if (hits.length == response.getHits().getHits().length)
+            return response;
+
+        SearchHits searchHits = new SearchHits(hits, response.getHits().getTotalHits(), response.getHits().getMaxScore());
+        InternalSearchResponse sections = new InternalSearchResponse(searchHits, (InternalAggregations) response.getAggregations(), response.getSuggest(), null,
+            response.isTimedOut(), response.isTerminatedEarly(), response.getNumReducePhases());
+        return new SearchResponse(sections, response.getScrollId(), response.getTotalShards(), response.getSuccessfulShards(), response.getSkippedShards(),
+            response.getTookInMillis(), response.getShardFailures());
+    }
+
+    /**
+     * @return if a hit is inside the requested viewports, or <code>null</code> when the request has no tiled viewport
+     */
+    public Predicate<SearchHit> hitFilter(final Filterable request) {
+        List<Filter> viewports = viewports(request);
+        if (viewports.isEmpty())
+            return null;
+
+        return hit -> viewports.stream().allMatch(viewport -> contains(viewport, hit.getField(viewport.getField().getName())));
+    }
+
+    private List<Filter> viewports(final Filterable request) {
+        Integer zoom = VIEWPORT_TILE_ZOOM.getValue(request.getIndex());
+        if (zoom == null || zoom <= 0 || isEmpty(request.getFilter()))
+            return emptyList();
+
+        QueryFragment fragment = queryFragmentCache.parse(request.getIndex(), request.getFilter());
+        if (!(fragment instanceof QueryFragmentList))
+            return emptyList();
+
+        QueryFragmentList root = (QueryFragmentList) fragment;
+        List<Filter> viewports = new ArrayList<>(1);
+        for (int position = 0; position < root.size(); position++) {
+            if (isTiled(request.getIndex(), root, position))
+                viewports.add(((QueryFragmentItem) root.get(position)).getFilter());
+        }
+        return viewports;
+    }
+
+    private static boolean contains(final Filter viewport, final SearchHitField field) {
+        if (field == null)
+            return false;
+
+        Value value = viewport.getValue();
+        double top = value.<Number>value(0, 1).doubleValue(), right = value.<Number>value(0, 0).doubleValue();
+        double bottom = value.<Number>value(1, 1).doubleValue(), left = value.<Number>value(1, 0).doubleValue();
+
+        return field.getValues().stream().anyMatch(point -> {
+            double lat = ((GeoPoint) point).lat(), lon = ((GeoPoint) point).lon();
+            return lat <= top && lat >= bottom && (left <= right ? lon >= left && lon <= right : lon >= left || lon <= right);
+        });
+    }
+
+    private static double tileX(final double lon, final int tiles) {
+        return (lon + 180) / 360 * tiles;
+    }
+
+    private static double tileY(final double lat, final int tiles) {
+        double latitude = toRadians(max(-MAX_LATITUDE, min(MAX_LATITUDE, lat)));
+        return min(tiles - 1, max(0, floor((1 - log(tan(latitude) + 1 / cos(latitude)) / PI) / 2 * tiles)));
+    }
+
+    private static double tileLongitude(final double x, final int tiles) {
+        return x / tiles * 360 - 180;
+    }
+
+    private static double tileLatitude(final double y, final int tiles) {
+        return toDegrees(atan(sinh(PI * (1 - 2 * y / tiles))));
+    }
+}
@@ -0,0 +1,190 @@
+package com.vivareal.search.api.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.newrelic.api.agent.Trace;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the <code>_source</code> bytes (and the <code>_version</code>) of the documents fetched by id, by index, id and
+ * include/exclude fields. Each index has its own LRU cache bounded by <code>document.cache.size</code> documents and
+ * <code>document.cache.max.bytes</code> of source, so the cache is disabled for an index when any of them is missing or
+ * not positive.
+ *
+ * After <code>document.cache.ttl</code> a document is revalidated by a get without source: it is served again when the
+ * version didn't change, and fetched again (or discarded when not found) otherwise. The revalidations are counted apart
+ * from the hits (fresh documents) and the misses (documents not cached), as each one still gets from Elasticsearch.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class DocumentCache {
+
+    private final Map<String, SizedCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param request the get request, with the fetch source context of the include/exclude fields
+     * @param executor executes the request (its fetch source context is disabled while revalidating)
+     */
+    @Trace
+    public GetResponse get(final GetRequest request, final Supplier<GetResponse> executor) {
+        SizedCache sizedCache = cache(request.index());
+        if (sizedCache == null)
+            return executor.get();
+
+        List<Object> key = key(request);
+        Document document = sizedCache.cache.getIfPresent(key);
+        if (document == null) {
+            sizedCache.misses.incrementAndGet();
+        } else {
+            TimeValue ttl = DOCUMENT_CACHE_TTL.getValue(request.index());
+            if (ttl == null || System.nanoTime() - document.loadedAt < ttl.nanos()) {
+                sizedCache.hits.incrementAndGet();
+                return document.toResponse(request);
+            }
+
+            FetchSourceContext fetchSource = request.fetchSourceContext();
+            GetResponse current;
+            try {
+                request.fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE);
+                current = executor.get();
+            } finally {
+                request.fetchSourceContext(fetchSource);
+            }
+            sizedCache.revalidations.incrementAndGet();
+
+            if (!current.isExists()) {
+                sizedCache.cache.invalidate(key);
+                return current;
+            }
+            if (current.getVersion() == document.version) {
+                sizedCache.put(key, new Document(document.version, document.source));
+                return document.toResponse(request);
+            }
+        }
+
+        GetResponse response = executor.get();
+        if (response.isExists() && !response.isSourceEmpty())
+            sizedCache.put(key, new Document(response.getVersion(), BytesReference.toBytes(response.getSourceAsBytesRef())));
+        else
+            sizedCache.cache.invalidate(key);
+
+        return response;
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        caches.forEach((index, sizedCache) -> {
+            long hits = sizedCache.hits.get(), misses = sizedCache.misses.get(), revalidations = sizedCache.revalidations.get();
+            long requests = hits + misses + revalidations;
+
+            Map<String, Object> indexStats = new LinkedHashMap<>();
+            indexStats.put("size", sizedCache.cache.size());
+            indexStats.put("maxSize", sizedCache.maxSize);
+            indexStats.put("memorySizeInBytes", sizedCache.bytes.get());
+            indexStats.put("maxBytes", sizedCache.maxBytes);
+            indexStats.put("hitCount", hits);
+            indexStats.put("missCount", misses);
+            indexStats.put("evictionCount", sizedCache.cache.stats().evictionCount());
+            indexStats.put("revalidationCount", revalidations);
+            indexStats.put("hitRate", requests == 0 ? 1.0 : (double) hits / requests);
+            stats.put(index, indexStats);
+        });
+        return stats;
+    }
+
+    private static List<Object> key(final GetRequest request) {
+        FetchSourceContext fetchSource = request.fetchSourceContext();
+        if (fetchSource == null)
+            return asList(request.id(), emptyList(), emptyList());
+
+        return asList(request.id(), asList(fetchSource.includes()), asList(fetchSource.excludes()));
+    }
+
+    private SizedCache cache(final String index) {
+        Integer maxSize = DOCUMENT_CACHE_SIZE.getValue(index);
+        Long maxBytes = DOCUMENT_CACHE_MAX_BYTES.getValue(index);
+        if (maxSize == null || maxSize <= 0 || maxBytes == null || maxBytes <= 0)
+            return null;
+
+        SizedCache sizedCache = caches.get(index);
+        if (sizedCache == null || !sizedCache.hasBounds(maxSize, maxBytes))
+            sizedCache = caches.compute(index, (i, current) -> current != null && current.hasBounds(maxSize, maxBytes) ? current : new SizedCache(maxSize, maxBytes));
+
+        return sizedCache;
+    }
+
+    private static class Document {
+        private final long version;
+        private final byte[] source;
+        private final long loadedAt = System.nanoTime();
+
+        private Document(final long version, final byte[] source) {
+            this.version = version;
+            this.source = source;
+        }
+
+        private GetResponse toResponse(final GetRequest request) {
+            return new GetResponse(new GetResult(request.index(), request.type(), request.id(), version, true, new BytesArray(source), emptyMap()));
+        }
+    }
+
+    /**
+     * Each document weighs at least <code>maxBytes / maxSize</code>, so bounding the weight by <code>maxBytes</code>
+     * bounds both the number of documents and their source bytes
+     */
+    private static class SizedCache {
+        private final int maxSize;
+        private final long maxBytes;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong revalidations = new AtomicLong();
+        private final Cache<List<Object>, Document> cache;
+
+        private SizedCache(final int maxSize, final long maxBytes) {
+            this.maxSize = maxSize;
+            this.maxBytes = maxBytes;
+
+            long minWeight = max(1, maxBytes / maxSize);
+            this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((List<Object> key, Document document) -> (int) min(Integer.MAX_VALUE, max(minWeight, document.source.length)))
+                .removalListener((RemovalListener<List<Object>, Document>) removal -> bytes.addAndGet(-removal.getValue().source.length))
+                .recordStats()
+                .build();
+        }
+
+        private void put(final List<Object> key, final Document document) {
+            bytes.addAndGet(document.source.length);
+            cache.put(key, document);
+        }
+
+        private boolean hasBounds(final int maxSize, final long maxBytes) {
+            return this.maxSize == maxSize && this.maxBytes == maxBytes;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FACET_PLAN_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the facet aggregations compiled (with their shard size, execution hint and nested wrappers) by index, facets,
+ * facet size and mapping version.
+ *
+ * The index entries are discarded when the index mapping or any {@link RemoteProperties} value (e.g. the field
+ * cardinalities) changes. The cached builders are shared between requests, so they must never be changed.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class FacetPlanCache {
+
+    private final IndexCache<List<Object>, List<AggregationBuilder>> cache;
+
+    private final Map<String, List<Long>> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FacetPlanCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("facetPlan", FACET_PLAN_CACHE_SIZE);
+    }
+
+    @Trace
+    public List<AggregationBuilder> get(final String index, final Set<String> facets, final int facetSize, final long mappingVersion,
+                                        final BiFunction<Set<String>, Integer, List<AggregationBuilder>> compiler) {
+        List<Long> currentVersions = asList(mappingVersion, RemoteProperties.version());
+        if (!currentVersions.equals(versions.get(index))) {
+            versions.put(index, currentVersions);
+            cache.invalidate(index);
+        }
+        return cache.get(index, asList(facets, facetSize, currentVersions), key -> compiler.apply(facets, facetSize));
+    }
+}
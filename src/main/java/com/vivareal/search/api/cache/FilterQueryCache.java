@@ -0,0 +1,73 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_QUERY_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the compiled (and validated) filter queries by index, filter and mapping version.
+ *
+ * The index entries are discarded when the index mapping or any {@link RemoteProperties} value (e.g. the optimizer
+ * rules) changes. The cached builders are shared between requests, so their clauses must be copied into the request
+ * query and never changed.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class FilterQueryCache {
+
+    private final IndexCache<Key, BoolQueryBuilder> cache;
+
+    private final Map<String, List<Long>> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FilterQueryCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("filterQuery", FILTER_QUERY_CACHE_SIZE);
+    }
+
+    @Trace
+    public BoolQueryBuilder get(final String index, final String filter, final long mappingVersion, final BiFunction<String, String, BoolQueryBuilder> compiler) {
+        List<Long> currentVersions = asList(mappingVersion, RemoteProperties.version());
+        if (!currentVersions.equals(versions.get(index))) {
+            versions.put(index, currentVersions);
+            cache.invalidate(index);
+        }
+        return cache.get(index, new Key(filter, currentVersions), key -> compiler.apply(index, key.filter));
+    }
+
+    private static final class Key {
+        private final String filter;
+        private final List<Long> versions;
+
+        private Key(final String filter, final List<Long> versions) {
+            this.filter = filter;
+            this.versions = versions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return versions.equals(key.versions) && filter.equals(key.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, versions);
+        }
+    }
+}
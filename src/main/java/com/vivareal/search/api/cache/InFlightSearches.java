@@ -0,0 +1,94 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SEARCH_COALESCING;
+import static java.lang.Boolean.parseBoolean;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Coalesces the identical searches running at the same time (same index and parameters, with the filter normalized
+ * by its parsed form): the first one searches and the others share its response or its error, so they time out with
+ * it (<code>es.controller.search.timeout</code>). Enabled by <code>search.coalescing</code>.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class InFlightSearches {
+
+    private final QueryFragmentCache queryFragmentCache;
+
+    private final Map<List<Object>, CompletableFuture<Object>> searches = new ConcurrentHashMap<>();
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public InFlightSearches(QueryFragmentCache queryFragmentCache) {
+        this.queryFragmentCache = queryFragmentCache;
+    }
+
+    @Trace
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(final SearchApiRequest request, final Supplier<CompletableFuture<T>> search) {
+        if (!parseBoolean(SEARCH_COALESCING.getValue(request.getIndex())))
+            return search.get();
+
+        List<Object> key = asList(request.getIndex(), ResponseCache.key(request, queryFragmentCache));
+        CompletableFuture<Object> current = new CompletableFuture<>();
+        CompletableFuture<Object> running = searches.putIfAbsent(key, current);
+        Counters indexCounters = counters.computeIfAbsent(request.getIndex(), index -> new Counters());
+
+        if (running == null) {
+            indexCounters.searches.incrementAndGet();
+            CompletableFuture<T> response;
+            try {
+                response = search.get();
+            } catch (RuntimeException | Error e) {
+                searches.remove(key, current);
+                current.completeExceptionally(e);
+                throw e;
+            }
+            response.whenComplete((result, e) -> {
+                searches.remove(key, current);
+                if (e == null)
+                    current.complete(result);
+                else
+                    current.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            });
+            return response;
+        }
+
+        indexCounters.coalesced.incrementAndGet();
+        return running.thenApply(result -> (T) result);
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        counters.forEach((index, indexCounters) -> {
+            Map<String, Object> indexStats = new LinkedHashMap<>();
+            indexStats.put("searchCount", indexCounters.searches.get());
+            indexStats.put("coalescedCount", indexCounters.coalesced.get());
+            stats.put(index, indexStats);
+        });
+        return stats;
+    }
+
+    private static class Counters {
+        private final AtomicLong searches = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+    }
+}
@@ -0,0 +1,112 @@
+package com.vivareal.search.api.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Bounded and concurrent cache partitioned by index. Each index has its own LRU cache sized by a
+ * {@link RemoteProperties} value, so the cache is disabled for an index when this value is missing or not positive.
+ *
+ * @param <K> Cache key
+ * @param <V> Cache value
+ */
+public class IndexCache<K, V> {
+
+    private final String name;
+    private final RemoteProperties maxSizeProperty;
+
+    private final Map<String, SizedCache<K, V>> caches = new ConcurrentHashMap<>();
+
+    IndexCache(final String name, final RemoteProperties maxSizeProperty) {
+        this.name = name;
+        this.maxSizeProperty = maxSizeProperty;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(final String index, final K key, final Function<K, V> loader) {
+        Cache<K, V> cache = cache(index);
+        if (cache == null)
+            return loader.apply(key);
+
+        try {
+            return cache.get(key, () -> loader.apply(key));
+        } catch (UncheckedExecutionException | ExecutionError | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public V getIfPresent(final String index, final K key) {
+        Cache<K, V> cache = cache(index);
+        return cache == null ? null : cache.getIfPresent(key);
+    }
+
+    public void put(final String index, final K key, final V value) {
+        Cache<K, V> cache = cache(index);
+        if (cache != null)
+            cache.put(key, value);
+    }
+
+    public void invalidate(final String index) {
+        caches.remove(index);
+    }
+
+    public void invalidateAll() {
+        caches.clear();
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        caches.forEach((index, sizedCache) -> {
+            CacheStats cacheStats = sizedCache.cache.stats();
+
+            Map<String, Object> indexStats = new LinkedHashMap<>();
+            indexStats.put("size", sizedCache.cache.size());
+            indexStats.put("maxSize", sizedCache.maxSize);
+            indexStats.put("hitCount", cacheStats.hitCount());
+            indexStats.put("missCount", cacheStats.missCount());
+            indexStats.put("evictionCount", cacheStats.evictionCount());
+            indexStats.put("hitRate", cacheStats.hitRate());
+            stats.put(index, indexStats);
+        });
+        return stats;
+    }
+
+    private Cache<K, V> cache(final String index) {
+        Integer maxSize = maxSizeProperty.getValue(index);
+        if (maxSize == null || maxSize <= 0)
+            return null;
+
+        SizedCache<K, V> sizedCache = caches.get(index);
+        if (sizedCache == null || sizedCache.maxSize != maxSize)
+            sizedCache = caches.compute(index, (i, current) -> current != null && current.maxSize == maxSize ? current : new SizedCache<>(maxSize));
+
+        return sizedCache.cache;
+    }
+
+    private static class SizedCache<K, V> {
+        private final int maxSize;
+        private final Cache<K, V> cache;
+
+        private SizedCache(final int maxSize) {
+            this.maxSize = maxSize;
+            this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+        }
+    }
+}
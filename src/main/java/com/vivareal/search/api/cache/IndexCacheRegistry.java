@@ -0,0 +1,32 @@
+package com.vivareal.search.api.cache;
+
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+@Component
+@Scope(SCOPE_SINGLETON)
+public class IndexCacheRegistry {
+
+    private final Map<String, IndexCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    public <K, V> IndexCache<K, V> register(final String name, final RemoteProperties maxSizeProperty) {
+        IndexCache<K, V> cache = new IndexCache<>(name, maxSizeProperty);
+        if (caches.putIfAbsent(name, cache) != null)
+            throw new IllegalArgumentException("Cache [ " + name + " ] is already registered");
+
+        return cache;
+    }
+
+    public Map<String, Map<String, Map<String, Object>>> stats() {
+        Map<String, Map<String, Map<String, Object>>> stats = new TreeMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,61 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.vivareal.search.api.cache.SearchTemplateCache.Section.HITS;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DEEP_PAGE_CHECKPOINT_TTL;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.PAGE_CHECKPOINT_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps, by index and request shape (see {@link SearchTemplateCache}), the <code>search_after</code> sort values found at
+ * each offset, so the deep pages of a query start from the nearest checkpoint instead of making every shard collect all
+ * the previous hits.
+ *
+ * The documents change, so the checkpoints of a shape are discarded after <code>es.deep.page.checkpoint.ttl</code> (and
+ * when any {@link RemoteProperties} value changes).
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class PageCheckpointCache {
+
+    private final IndexCache<List<Object>, Checkpoints> cache;
+
+    @Autowired
+    public PageCheckpointCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("pageCheckpoint", PAGE_CHECKPOINT_CACHE_SIZE);
+    }
+
+    /**
+     * @return the checkpoints (sort values of the hit before each offset) of the request shape, to be read and filled
+     */
+    @Trace
+    public NavigableMap<Integer, Object[]> get(final SearchApiRequest request) {
+        String index = request.getIndex();
+        List<Object> key = asList(SearchTemplateCache.shape(request, HITS), RemoteProperties.version());
+
+        Checkpoints checkpoints = cache.get(index, key, k -> new Checkpoints());
+        TimeValue ttl = ES_DEEP_PAGE_CHECKPOINT_TTL.getValue(index);
+        if (ttl != null && System.nanoTime() - checkpoints.createdAt >= ttl.nanos()) {
+            checkpoints = new Checkpoints();
+            cache.put(index, key, checkpoints);
+        }
+        return checkpoints.offsets;
+    }
+
+    private static class Checkpoints {
+        private final long createdAt = System.nanoTime();
+        private final NavigableMap<Integer, Object[]> offsets = new ConcurrentSkipListMap<>();
+    }
+}
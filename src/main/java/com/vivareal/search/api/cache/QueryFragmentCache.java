@@ -0,0 +1,41 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.model.parser.QueryParser;
+import com.vivareal.search.api.model.parser.RecursiveDescentQueryParser;
+import com.vivareal.search.api.model.query.QueryFragment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Function;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_CACHE_SIZE;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_PARSER;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the parsed filter trees by index, avoiding to parse the same filter on every request
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class QueryFragmentCache {
+
+    static final String DESCENT_PARSER = "descent";
+
+    private final IndexCache<String, QueryFragment> cache;
+
+    @Autowired
+    public QueryFragmentCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("filter", FILTER_CACHE_SIZE);
+    }
+
+    @Trace
+    public QueryFragment parse(final String index, final String filter) {
+        return cache.get(index, filter, parser(index));
+    }
+
+    private static Function<String, QueryFragment> parser(final String index) {
+        return DESCENT_PARSER.equals(FILTER_PARSER.getValue(index)) ? RecursiveDescentQueryParser::parse : QueryParser::parse;
+    }
+}
@@ -0,0 +1,47 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.QS_PLAN_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the query string fields resolved (field names with their boosts, grouped by nested path) by index, fields
+ * and mapping version.
+ *
+ * The index entries are discarded as soon as a newer mapping version is seen. The cached plans are shared between
+ * requests, so they must never be changed.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class QueryStringPlanCache {
+
+    private final IndexCache<List<Object>, Map<String, Map<String, Float>>> cache;
+
+    private final Map<String, Long> mappingVersions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QueryStringPlanCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("queryStringPlan", QS_PLAN_CACHE_SIZE);
+    }
+
+    @Trace
+    public Map<String, Map<String, Float>> get(final String index, final Set<String> fields, final long mappingVersion, final BiFunction<String, Set<String>, Map<String, Map<String, Float>>> compiler) {
+        Long currentVersion = mappingVersions.get(index);
+        if (currentVersion == null || mappingVersion > currentVersion) {
+            mappingVersions.merge(index, mappingVersion, Math::max);
+            cache.invalidate(index);
+        }
+        return cache.get(index, asList(fields, mappingVersion), key -> compiler.apply(index, fields));
+    }
+}
@@ -0,0 +1,185 @@
+package com.vivareal.search.api.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the serialized search responses by index and request (with the filter normalized by its parsed form). Each
+ * index has its own LRU cache bounded by <code>response.cache.max.bytes</code>, so the cache is disabled for an index
+ * when it or <code>response.cache.ttl</code> is missing or not positive.
+ *
+ * A response is fresh for <code>response.cache.ttl</code> and then stale for <code>response.cache.stale</code>: a stale
+ * response is still served while a single search refreshes it, so the hot requests never go to Elasticsearch
+ * all at once when they expire.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class ResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final QueryFragmentCache queryFragmentCache;
+
+    private final Map<String, SizedCache> caches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ResponseCache(QueryFragmentCache queryFragmentCache) {
+        this.queryFragmentCache = queryFragmentCache;
+    }
+
+    public boolean isEnabled(final String index) {
+        return cache(index) != null;
+    }
+
+    /**
+     * @param loader searches and serializes the response, without blocking: the response not cached is kept when the
+     *               loader completes, and the stale one is refreshed by the loader while it is served
+     */
+    @Trace
+    public CompletableFuture<byte[]> getAsync(final SearchApiRequest request, final Supplier<CompletableFuture<byte[]>> loader) {
+        SizedCache sizedCache = cache(request.getIndex());
+        if (sizedCache == null)
+            return loader.get();
+
+        List<Object> key = key(request, queryFragmentCache);
+        Response response = sizedCache.cache.getIfPresent(key);
+        if (response == null) {
+            return loader.get().thenApply(body -> {
+                sizedCache.cache.put(key, new Response(body, sizedCache.ttl));
+                return body;
+            });
+        }
+
+        if (System.nanoTime() - response.freshUntil > 0 && response.refreshing.compareAndSet(false, true)) {
+            try {
+                loader.get().whenComplete((body, e) -> {
+                    if (e == null) {
+                        sizedCache.cache.put(key, new Response(body, sizedCache.ttl));
+                        sizedCache.refreshes.incrementAndGet();
+                    } else {
+                        LOG.warn("Error refreshing the cached response {}", key, e);
+                        response.refreshing.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                LOG.warn("Error refreshing the cached response {}", key, e);
+                response.refreshing.set(false);
+            }
+        }
+
+        return completedFuture(response.body);
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        caches.forEach((index, sizedCache) -> {
+            CacheStats cacheStats = sizedCache.cache.stats();
+
+            Map<String, Object> indexStats = new LinkedHashMap<>();
+            indexStats.put("size", sizedCache.cache.size());
+            indexStats.put("maxBytes", sizedCache.maxBytes);
+            indexStats.put("hitCount", cacheStats.hitCount());
+            indexStats.put("missCount", cacheStats.missCount());
+            indexStats.put("evictionCount", cacheStats.evictionCount());
+            indexStats.put("refreshCount", sizedCache.refreshes.get());
+            indexStats.put("hitRate", cacheStats.hitRate());
+            stats.put(index, indexStats);
+        });
+        return stats;
+    }
+
+    /**
+     * @return every request parameter but the index, with the filter normalized by its parsed form
+     */
+    static List<Object> key(final SearchApiRequest request, final QueryFragmentCache queryFragmentCache) {
+        return asList(
+            request.getQ(),
+            request.getMm(),
+            isEmpty(request.getFilter()) ? null : queryFragmentCache.parse(request.getIndex(), request.getFilter()).toString(),
+            request.getFields(),
+            request.getSort(),
+            request.getFacets(),
+            request.getFacetSize(),
+            request.getFrom(),
+            request.getSize(),
+            request.getCursorId(),
+            request.getIncludeFields(),
+            request.getExcludeFields()
+        );
+    }
+
+    private SizedCache cache(final String index) {
+        Long maxBytes = RESPONSE_CACHE_MAX_BYTES.getValue(index);
+        TimeValue ttl = RESPONSE_CACHE_TTL.getValue(index);
+        TimeValue stale = RESPONSE_CACHE_STALE.getValue(index);
+        if (maxBytes == null || maxBytes <= 0 || ttl == null || ttl.nanos() <= 0)
+            return null;
+
+        long ttlNanos = ttl.nanos(), staleNanos = stale == null ? 0 : Math.max(0, stale.nanos());
+        SizedCache sizedCache = caches.get(index);
+        if (sizedCache == null || !sizedCache.hasBounds(maxBytes, ttlNanos, staleNanos))
+            sizedCache = caches.compute(index, (i, current) -> current != null && current.hasBounds(maxBytes, ttlNanos, staleNanos) ? current : new SizedCache(maxBytes, ttlNanos, staleNanos));
+
+        return sizedCache;
+    }
+
+    private static class Response {
+        private final byte[] body;
+        private final long freshUntil;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Response(final byte[] body, final long ttl) {
+            this.body = body;
+            this.freshUntil = System.nanoTime() + ttl;
+        }
+    }
+
+    private static class SizedCache {
+        private final long maxBytes;
+        private final long ttl;
+        private final long stale;
+        private final AtomicLong refreshes = new AtomicLong();
+        private final Cache<List<Object>, Response> cache;
+
+        private SizedCache(final long maxBytes, final long ttl, final long stale) {
+            this.maxBytes = maxBytes;
+            this.ttl = ttl;
+            this.stale = stale;
+            this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((List<Object> key, Response response) -> response.body.length)
+                .expireAfterWrite(ttl + stale, NANOSECONDS)
+                .recordStats()
+                .build();
+        }
+
+        private boolean hasBounds(final long maxBytes, final long ttl, final long stale) {
+            return this.maxBytes == maxBytes && this.ttl == ttl && this.stale == stale;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SEARCH_TEMPLATE_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the search source built for each request shape (everything but the pagination and the cursor) by index.
+ * The hits and the facets may also be searched apart, each {@link Section} has templates of its own.
+ *
+ * The templates are keyed by the index mapping version and the {@link RemoteProperties} version as well, so a template
+ * built before a change is never served after it (the old ones are left to the cache eviction), and every call gets its own shallow copy of the template, so only <code>from</code>, <code>size</code>
+ * and <code>search_after</code> may be changed.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class SearchTemplateCache {
+
+    private final IndexCache<List<Object>, SearchSourceBuilder> cache;
+
+    @Autowired
+    public SearchTemplateCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("searchTemplate", SEARCH_TEMPLATE_CACHE_SIZE);
+    }
+
+    @Trace
+    public SearchSourceBuilder get(final String index, final SearchApiRequest request, final long mappingVersion, final Function<SearchApiRequest, SearchSourceBuilder> builder) {
+        return get(index, request, Section.HITS_AND_FACETS, mappingVersion, builder);
+    }
+
+    @Trace
+    public SearchSourceBuilder get(final String index, final SearchApiRequest request, final Section section, final long mappingVersion, final Function<SearchApiRequest, SearchSourceBuilder> builder) {
+        List<Object> key = asList(shape(request, section), mappingVersion, RemoteProperties.version());
+        return cache.get(index, key, k -> builder.apply(request)).copyWithNewSlice(null);
+    }
+
+    /**
+     * The parameters a section doesn't use (e.g. the sort of the facets) are left out, so more requests share its template
+     */
+    static List<Object> shape(final SearchApiRequest request, final Section section) {
+        final boolean hits = section != Section.FACETS, facets = section != Section.HITS;
+        return asList(
+            section,
+            request.getQ(),
+            request.getMm(),
+            request.getFilter(),
+            request.getFields(),
+            hits ? request.getSort() : null,
+            hits ? request.getIncludeFields() : null,
+            hits ? request.getExcludeFields() : null,
+            facets ? request.getFacets() : null,
+            facets ? request.getFacetSize() : null
+        );
+    }
+
+    /**
+     * The parts of the response a search template is built for
+     */
+    public enum Section {
+        HITS_AND_FACETS, HITS, FACETS
+    }
+}
@@ -0,0 +1,46 @@
+package com.vivareal.search.api.cache;
+
+import com.newrelic.api.agent.Trace;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SORT_PLAN_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the sort builders compiled (with their nested paths and tiebreaker) by index, sort and mapping version.
+ *
+ * The index entries are discarded as soon as a newer mapping version is seen. The cached builders are shared
+ * between requests, so they must never be changed.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class SortPlanCache {
+
+    private final IndexCache<List<Object>, List<SortBuilder<?>>> cache;
+
+    private final Map<String, Long> mappingVersions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SortPlanCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("sortPlan", SORT_PLAN_CACHE_SIZE);
+    }
+
+    @Trace
+    public List<SortBuilder<?>> get(final String index, final String sort, final long mappingVersion, final BiFunction<String, String, List<SortBuilder<?>>> compiler) {
+        Long currentVersion = mappingVersions.get(index);
+        if (currentVersion == null || mappingVersion > currentVersion) {
+            mappingVersions.merge(index, mappingVersion, Math::max);
+            cache.invalidate(index);
+        }
+        return cache.get(index, asList(sort, mappingVersion), key -> compiler.apply(index, sort));
+    }
+}
@@ -0,0 +1,56 @@
+package com.vivareal.search.api.cache;
+
+import com.google.common.collect.ImmutableSet;
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.configuration.environment.RemoteProperties;
+import com.vivareal.search.api.model.search.Fetchable;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SOURCE_FIELDS_CACHE_SIZE;
+import static java.util.Arrays.asList;
+import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_SINGLETON;
+
+/**
+ * Keeps the resolved (and validated) source include and exclude fields by index, requested
+ * <code>includeFields</code> / <code>excludeFields</code> and if they may be fetched from doc values (searches only).
+ *
+ * The index entries are discarded when the index mapping or any {@link RemoteProperties} value (e.g. the default
+ * source fields) changes. The cached arrays are shared between requests, so they must never be changed.
+ */
+@Component
+@Scope(SCOPE_SINGLETON)
+public class SourceFieldsCache {
+
+    private final IndexCache<List<Object>, FetchSourceContext> cache;
+
+    private final Map<String, List<Long>> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SourceFieldsCache(IndexCacheRegistry cacheRegistry) {
+        this.cache = cacheRegistry.register("sourceFields", SOURCE_FIELDS_CACHE_SIZE);
+    }
+
+    @Trace
+    public FetchSourceContext get(final Fetchable request, final boolean docValues, final long mappingVersion, final Function<Fetchable, FetchSourceContext> resolver) {
+        String index = request.getIndex();
+        List<Long> currentVersions = asList(mappingVersion, RemoteProperties.version());
+        if (!currentVersions.equals(versions.get(index))) {
+            versions.put(index, currentVersions);
+            cache.invalidate(index);
+        }
+        return cache.get(index, asList(copyOf(request.getIncludeFields()), copyOf(request.getExcludeFields()), docValues, currentVersions), key -> resolver.apply(request));
+    }
+
+    private static Set<String> copyOf(final Set<String> fields) {
+        return fields == null ? null : ImmutableSet.copyOf(fields);
+    }
+}
@@ -0,0 +1,20 @@
+package com.vivareal.search.api.configuration;
+
+/**
+ * The Hystrix command properties of the endpoints, shared by the <code>@HystrixCommand</code> annotations and the
+ * commands built by hand (e.g. the async search)
+ */
+public class HystrixConfig {
+
+    public static final String ISOLATION_STRATEGY = "SEMAPHORE";
+    public static final String MAX_CONCURRENT_REQUESTS = "64";
+    public static final String TIMEOUT_ENABLED = "false";
+
+    public static final String GET_SLEEP_WINDOW = "5000";
+    public static final String GET_REQUEST_VOLUME = "100";
+    public static final String GET_ERROR_PERCENTAGE = "90";
+
+    public static final String SEARCH_SLEEP_WINDOW = "10000";
+    public static final String SEARCH_REQUEST_VOLUME = "30";
+    public static final String SEARCH_ERROR_PERCENTAGE = "70";
+}
@@ -5,6 +5,7 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -30,20 +31,59 @@ public enum RemoteProperties {
     ES_DEFAULT_SORT("es.default.sort"),
     ES_MAPPING_META_FIELDS_ID("es.mapping.meta.fields._id"),
     ES_MAX_SIZE("es.max.size", AS_INTEGER),
+    ES_MGET_MAX_IDS("es.mget.max.ids", AS_INTEGER),
     ES_FACET_SIZE("es.facet.size", AS_INTEGER),
+    ES_FACET_CARDINALITY("es.facet.cardinality", AS_SET, NON_EMPTY_COLLECTION),
+    ES_FACET_MAP_CARDINALITY("es.facet.map.cardinality", AS_INTEGER),
+    ES_FACET_SPLIT("es.facet.split"),
+    ES_FACET_TIMEOUT_VALUE("es.facet.timeout.value", AS_LONG),
+    ES_FACET_PARTIAL_RESULTS("es.facet.partial.results"),
     ES_QUERY_TIMEOUT_VALUE("es.query.timeout.value", AS_LONG),
     ES_QUERY_TIMEOUT_UNIT("es.query.timeout.unit"),
     ES_CONTROLLER_SEARCH_TIMEOUT("es.controller.search.timeout", AS_TIME_VALUE_MILLIS),
     ES_CONTROLLER_STREAM_TIMEOUT("es.controller.stream.timeout", AS_TIME_VALUE_MILLIS),
     ES_STREAM_SIZE("es.stream.size", AS_INTEGER),
+    ES_MSEARCH_MAX_REQUESTS("es.msearch.max.requests", AS_INTEGER),
+    ES_DEEP_PAGE_FROM("es.deep.page.from", AS_INTEGER),
+    ES_DEEP_PAGE_CHECKPOINTS("es.deep.page.checkpoints"),
+    ES_DEEP_PAGE_CHECKPOINT_TTL("es.deep.page.checkpoint.ttl", AS_TIME_VALUE_MILLIS),
     ES_SCROLL_TIMEOUT("es.scroll.timeout", AS_INTEGER),
     SOURCE_INCLUDES("source.default.includes", AS_SET, NON_EMPTY_COLLECTION),
     SOURCE_EXCLUDES("source.default.excludes", AS_SET, NON_EMPTY_COLLECTION),
+    ES_DOCVALUE_PROJECTION("es.docvalue.projection"),
+    ES_DOCVALUE_PROJECTION_MAX_FIELDS("es.docvalue.projection.max.fields", AS_INTEGER),
+    FILTER_CACHE_SIZE("filter.cache.size", AS_INTEGER),
+    FILTER_PARSER("filter.parser"),
+    FILTER_OPTIMIZER("filter.optimizer", AS_SET, NON_EMPTY_COLLECTION),
+    FILTER_QUERY_CACHE_SIZE("filter.query.cache.size", AS_INTEGER),
+    LIKE_REVERSE_SUBFIELD("like.reverse.subfield"),
+    LIKE_NGRAM_SUBFIELD("like.ngram.subfield"),
+    LIKE_NGRAM_MIN_GRAM("like.ngram.min.gram", AS_INTEGER),
+    LIKE_NGRAM_MAX_GRAM("like.ngram.max.gram", AS_INTEGER),
+    LIKE_LEADING_WILDCARD("like.leading.wildcard"),
+    POLYGON_SIMPLIFY_TOLERANCE("polygon.simplify.tolerance", AS_INTEGER),
+    POLYGON_BOUNDING_BOX("polygon.bounding.box"),
+    VIEWPORT_TILE_ZOOM("viewport.tile.zoom", AS_INTEGER),
+    SEARCH_TEMPLATE_CACHE_SIZE("search.template.cache.size", AS_INTEGER),
+    SORT_PLAN_CACHE_SIZE("sort.plan.cache.size", AS_INTEGER),
+    QS_PLAN_CACHE_SIZE("querystring.plan.cache.size", AS_INTEGER),
+    FACET_PLAN_CACHE_SIZE("facet.plan.cache.size", AS_INTEGER),
+    SOURCE_FIELDS_CACHE_SIZE("source.fields.cache.size", AS_INTEGER),
+    DOCUMENT_CACHE_SIZE("document.cache.size", AS_INTEGER),
+    DOCUMENT_CACHE_MAX_BYTES("document.cache.max.bytes", AS_LONG),
+    DOCUMENT_CACHE_TTL("document.cache.ttl", AS_TIME_VALUE_MILLIS),
+    RESPONSE_CACHE_MAX_BYTES("response.cache.max.bytes", AS_LONG),
+    RESPONSE_CACHE_TTL("response.cache.ttl", AS_TIME_VALUE_MILLIS),
+    RESPONSE_CACHE_STALE("response.cache.stale", AS_TIME_VALUE_MILLIS),
+    SEARCH_COALESCING("search.coalescing"),
+    PAGE_CHECKPOINT_CACHE_SIZE("page.checkpoint.cache.size", AS_INTEGER),
     APP_PROPERTIES_INDEX("application.properties.index"),
     APP_PROPERTIES_TYPE("application.properties.type");
 
     public static final String DEFAULT_INDEX = "default";
 
+    private static final AtomicLong VERSION = new AtomicLong();
+
     private final String property;
     private final Function<String, ?> parser;
     private final Function<Object, Boolean> isRequestValueValid;
@@ -89,7 +129,16 @@ public enum RemoteProperties {
     }
 
     public void setValue(final String index, final String value) {
-        this.indexProperties.put(index, parser.apply(value));
+        Object parsedValue = parser.apply(value);
+        if (!Objects.equals(this.indexProperties.put(index, parsedValue), parsedValue))
+            VERSION.incrementAndGet();
+    }
+
+    /**
+     * @return a number increased every time any property value changes
+     */
+    public static long version() {
+        return VERSION.get();
     }
 
     static class FieldsParser {
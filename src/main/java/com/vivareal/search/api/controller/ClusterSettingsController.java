@@ -1,5 +1,6 @@
 package com.vivareal.search.api.controller;
 
+import com.vivareal.search.api.service.CacheService;
 import com.vivareal.search.api.service.ClusterSettingsService;
 import com.vivareal.search.api.service.SearchApiEnvService;
 import io.swagger.annotations.Api;
@@ -27,6 +28,9 @@ public class ClusterSettingsController {
     @Autowired
     private SearchApiEnvService service;
 
+    @Autowired
+    private CacheService cacheService;
+
     @RequestMapping(value = "/cluster/settings", method = GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ApiOperation(value = "Get all configs", notes = "Returns cluster configurations")
     @ApiResponse(code = 200, message = "Returns successfully all configs")
@@ -47,4 +51,11 @@ public class ClusterSettingsController {
     public Object getRemoteProperties() {
         return new ResponseEntity<>(service.getRemoteProperties(), OK);
     }
+
+    @RequestMapping(value = "/cache/stats", method = GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @ApiOperation(value = "Get cache statistics", notes = "Returns size, hit, miss and eviction counts of each cache (and of the Elasticsearch shard request cache) by index")
+    @ApiResponse(code = 200, message = "Returns successfully all cache statistics")
+    public Map<String, Map<String, Map<String, Object>>> getCacheStats() {
+        return cacheService.stats();
+    }
 }
@@ -1,10 +1,20 @@
 package com.vivareal.search.api.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixObservableCommand;
 import com.netflix.hystrix.contrib.javanica.annotation.DefaultProperties;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixProperty;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
 import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.cache.ResponseCache;
+import com.vivareal.search.api.configuration.HystrixConfig;
 import com.vivareal.search.api.controller.error.ExceptionHandler;
 import com.vivareal.search.api.model.http.BaseApiRequest;
 import com.vivareal.search.api.model.http.FilterableApiRequest;
@@ -16,29 +26,47 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.ResponseEntity.BodyBuilder;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import rx.Observable;
 import springfox.documentation.annotations.ApiIgnore;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
 import static com.netflix.hystrix.contrib.javanica.conf.HystrixPropertiesManager.*;
+import static com.vivareal.search.api.configuration.HystrixConfig.*;
 import static com.vivareal.search.api.configuration.ThreadPoolConfig.MAX_SIZE;
 import static com.vivareal.search.api.configuration.ThreadPoolConfig.MIN_SIZE;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.parseInt;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonMap;
+import static java.util.Optional.ofNullable;
 import static org.springframework.http.ResponseEntity.notFound;
 import static org.springframework.http.ResponseEntity.ok;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 @RestController
 @RequestMapping("/v2")
@@ -51,10 +79,23 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
 )
 public class SearchController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private static final BodyBuilder builderOK = ok();
 
     private static final ResponseEntity<Object> notFoundResponse = notFound().build();
 
+    private static final HystrixObservableCommand.Setter SEARCH_COMMAND = HystrixObservableCommand.Setter
+        .withGroupKey(HystrixCommandGroupKey.Factory.asKey(SearchController.class.getSimpleName()))
+        .andCommandKey(HystrixCommandKey.Factory.asKey("search"))
+        .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+            .withExecutionIsolationStrategy(ExecutionIsolationStrategy.valueOf(ISOLATION_STRATEGY))
+            .withExecutionIsolationSemaphoreMaxConcurrentRequests(parseInt(MAX_CONCURRENT_REQUESTS))
+            .withExecutionTimeoutEnabled(parseBoolean(TIMEOUT_ENABLED))
+            .withCircuitBreakerSleepWindowInMilliseconds(parseInt(SEARCH_SLEEP_WINDOW))
+            .withCircuitBreakerRequestVolumeThreshold(parseInt(SEARCH_REQUEST_VOLUME))
+            .withCircuitBreakerErrorThresholdPercentage(parseInt(SEARCH_ERROR_PERCENTAGE)));
+
     @Autowired
     private SearchService searchService;
 
@@ -64,6 +105,12 @@ public class SearchController {
     @Autowired
     private ExceptionHandler exceptionHandler;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ResponseCache responseCache;
+
     @RequestMapping(value = {"/{index}/{id:[0-9]+}"}, method = GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ApiOperation(value = "Search by index with id", notes = "Returns index by identifier")
     @ApiResponses(value = {
@@ -74,12 +121,12 @@ public class SearchController {
     })
     @HystrixCommand(
         commandProperties = {
-            @HystrixProperty(name = EXECUTION_ISOLATION_STRATEGY, value = "SEMAPHORE"),
-            @HystrixProperty(name = EXECUTION_ISOLATION_SEMAPHORE_MAX_CONCURRENT_REQUESTS, value = "64"),
-            @HystrixProperty(name = EXECUTION_TIMEOUT_ENABLED, value = "false"),
-            @HystrixProperty(name = CIRCUIT_BREAKER_SLEEP_WINDOW_IN_MILLISECONDS, value = "5000"),
-            @HystrixProperty(name = CIRCUIT_BREAKER_REQUEST_VOLUME_THRESHOLD, value = "100"),
-            @HystrixProperty(name = CIRCUIT_BREAKER_ERROR_THRESHOLD_PERCENTAGE, value = "90")
+            @HystrixProperty(name = EXECUTION_ISOLATION_STRATEGY, value = ISOLATION_STRATEGY),
+            @HystrixProperty(name = EXECUTION_ISOLATION_SEMAPHORE_MAX_CONCURRENT_REQUESTS, value = MAX_CONCURRENT_REQUESTS),
+            @HystrixProperty(name = EXECUTION_TIMEOUT_ENABLED, value = TIMEOUT_ENABLED),
+            @HystrixProperty(name = CIRCUIT_BREAKER_SLEEP_WINDOW_IN_MILLISECONDS, value = GET_SLEEP_WINDOW),
+            @HystrixProperty(name = CIRCUIT_BREAKER_REQUEST_VOLUME_THRESHOLD, value = GET_REQUEST_VOLUME),
+            @HystrixProperty(name = CIRCUIT_BREAKER_ERROR_THRESHOLD_PERCENTAGE, value = GET_ERROR_PERCENTAGE)
         },
         threadPoolProperties = {
             @HystrixProperty(name = CORE_SIZE, value = MIN_SIZE),
@@ -96,6 +143,40 @@ public class SearchController {
         return builderOK.body(new String(response.getSourceAsBytes()));
     }
 
+    @RequestMapping(value = {"/{index}/_mget"}, method = {GET, POST}, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @ApiOperation(value = "Search by index with ids", notes = "Returns the documents found by their identifiers (ids parameter or {\"ids\": [...]} body), in order")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Successfully get by ids"),
+        @ApiResponse(code = 400, message = "Bad parameters request"),
+        @ApiResponse(code = 500, message = "Internal Server Error")
+    })
+    @HystrixCommand(
+        commandProperties = {
+            @HystrixProperty(name = EXECUTION_ISOLATION_STRATEGY, value = ISOLATION_STRATEGY),
+            @HystrixProperty(name = EXECUTION_ISOLATION_SEMAPHORE_MAX_CONCURRENT_REQUESTS, value = MAX_CONCURRENT_REQUESTS),
+            @HystrixProperty(name = EXECUTION_TIMEOUT_ENABLED, value = TIMEOUT_ENABLED),
+            @HystrixProperty(name = CIRCUIT_BREAKER_SLEEP_WINDOW_IN_MILLISECONDS, value = GET_SLEEP_WINDOW),
+            @HystrixProperty(name = CIRCUIT_BREAKER_REQUEST_VOLUME_THRESHOLD, value = GET_REQUEST_VOLUME),
+            @HystrixProperty(name = CIRCUIT_BREAKER_ERROR_THRESHOLD_PERCENTAGE, value = GET_ERROR_PERCENTAGE)
+        },
+        threadPoolProperties = {
+            @HystrixProperty(name = CORE_SIZE, value = MIN_SIZE),
+            @HystrixProperty(name = MAXIMUM_SIZE, value = MAX_SIZE)
+        }
+    )
+    @Trace(dispatcher=true)
+    public ResponseEntity<Object> ids(BaseApiRequest request, @RequestParam(required = false) List<String> ids, @RequestBody(required = false) Map<String, List<String>> body) throws InterruptedException, ExecutionException, TimeoutException {
+        List<GetResponse> documents = searchService.getByIds(request, ofNullable(ids).orElseGet(() -> ofNullable(body).map(b -> b.get("ids")).orElse(emptyList())));
+
+        StringBuilder response = new StringBuilder("{\"totalCount\":").append(documents.size()).append(",\"result\":{\"").append(request.getIndex()).append("\":[");
+        for (int i = 0; i < documents.size(); i++) {
+            if (i > 0)
+                response.append(',');
+            response.append(documents.get(i).getSourceAsString());
+        }
+        return builderOK.body(response.append("]}}").toString());
+    }
+
     @RequestMapping(value = "/{index}", method = GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ApiOperation(value = "Search documents", notes = "Returns query-based documents")
     @ApiResponses(value = {
@@ -103,14 +184,83 @@ public class SearchController {
         @ApiResponse(code = 400, message = "Bad parameters request"),
         @ApiResponse(code = 500, message = "Internal Server Error")
     })
+    @Trace(dispatcher=true)
+    public DeferredResult<ResponseEntity<Object>> search(SearchApiRequest request, HttpServletRequest httpServletRequest) {
+        DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>();
+        new SearchCommand(request, httpServletRequest).toObservable().subscribe(result::setResult,
+            e -> result.setErrorResult(e instanceof HystrixBadRequestException && e.getCause() != null ? e.getCause() : e));
+        return result;
+    }
+
+    /**
+     * The search Hystrix command (with the {@link HystrixConfig} properties of the search endpoints), completed by the
+     * response of {@link SearchService#searchAsync(SearchApiRequest)}, so the request thread is released while
+     * Elasticsearch searches (even to load or refresh the responses of {@link ResponseCache}).
+     */
+    private class SearchCommand extends HystrixObservableCommand<ResponseEntity<Object>> {
+
+        private final SearchApiRequest request;
+
+        private final HttpServletRequest httpServletRequest;
+
+        private SearchCommand(final SearchApiRequest request, final HttpServletRequest httpServletRequest) {
+            super(SEARCH_COMMAND);
+            this.request = request;
+            this.httpServletRequest = httpServletRequest;
+        }
+
+        @Override
+        protected Observable<ResponseEntity<Object>> construct() {
+            return Observable.unsafeCreate(subscriber -> response().whenComplete((response, e) -> {
+                if (e == null) {
+                    subscriber.onNext(response);
+                    subscriber.onCompleted();
+                    return;
+                }
+
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                subscriber.onError(cause instanceof IllegalArgumentException ? new HystrixBadRequestException(cause.getMessage(), cause) : cause);
+            }));
+        }
+
+        private CompletableFuture<ResponseEntity<Object>> response() {
+            if (!responseCache.isEnabled(request.getIndex()))
+                return searchService.searchAsync(request).thenApply(response -> builderOK.body(new SearchResponseEnvelope<>(request.getIndex(), response, request.getSort())));
+
+            return responseCache.getAsync(request, () -> searchService.searchAsync(request).thenApply(response -> serialize(new SearchResponseEnvelope<>(request.getIndex(), response, request.getSort()))))
+                .thenApply(body -> builderOK.<Object>body(body));
+        }
+
+        @Override
+        protected Observable<ResponseEntity<Object>> resumeWithFallback() {
+            ResponseEntity<Map<String, Object>> error = exceptionHandler.error(getExecutionException(), httpServletRequest);
+            return Observable.just(new ResponseEntity<>(error.getBody(), error.getStatusCode()));
+        }
+    }
+
+    private byte[] serialize(final SearchResponseEnvelope<SearchResponse> envelope) {
+        try {
+            return objectMapper.writeValueAsBytes(envelope);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error serializing the search response", e);
+        }
+    }
+
+    @RequestMapping(value = "/_msearch", method = POST, consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON}, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @ApiOperation(value = "Multi search documents", notes = "Returns the documents of each search (a JSON array or one JSON per line), in order")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Successfully get documents (or the error) of each search"),
+        @ApiResponse(code = 400, message = "Bad parameters request"),
+        @ApiResponse(code = 500, message = "Internal Server Error")
+    })
     @HystrixCommand(
         commandProperties = {
-            @HystrixProperty(name = EXECUTION_ISOLATION_STRATEGY, value = "SEMAPHORE"),
-            @HystrixProperty(name = EXECUTION_ISOLATION_SEMAPHORE_MAX_CONCURRENT_REQUESTS, value = "64"),
-            @HystrixProperty(name = EXECUTION_TIMEOUT_ENABLED, value = "false"),
-            @HystrixProperty(name = CIRCUIT_BREAKER_SLEEP_WINDOW_IN_MILLISECONDS, value = "10000"),
-            @HystrixProperty(name = CIRCUIT_BREAKER_REQUEST_VOLUME_THRESHOLD, value = "30"),
-            @HystrixProperty(name = CIRCUIT_BREAKER_ERROR_THRESHOLD_PERCENTAGE, value = "70")
+            @HystrixProperty(name = EXECUTION_ISOLATION_STRATEGY, value = ISOLATION_STRATEGY),
+            @HystrixProperty(name = EXECUTION_ISOLATION_SEMAPHORE_MAX_CONCURRENT_REQUESTS, value = MAX_CONCURRENT_REQUESTS),
+            @HystrixProperty(name = EXECUTION_TIMEOUT_ENABLED, value = TIMEOUT_ENABLED),
+            @HystrixProperty(name = CIRCUIT_BREAKER_SLEEP_WINDOW_IN_MILLISECONDS, value = SEARCH_SLEEP_WINDOW),
+            @HystrixProperty(name = CIRCUIT_BREAKER_REQUEST_VOLUME_THRESHOLD, value = SEARCH_REQUEST_VOLUME),
+            @HystrixProperty(name = CIRCUIT_BREAKER_ERROR_THRESHOLD_PERCENTAGE, value = SEARCH_ERROR_PERCENTAGE)
         },
         threadPoolProperties = {
             @HystrixProperty(name = CORE_SIZE, value = MIN_SIZE),
@@ -118,8 +268,35 @@ public class SearchController {
         }
     )
     @Trace(dispatcher=true)
-    public ResponseEntity<Object> search(SearchApiRequest request) {
-        return builderOK.body(new SearchResponseEnvelope<>(request.getIndex(), searchService.search(request)));
+    public ResponseEntity<Object> multiSearch(@RequestBody String body) {
+        List<SearchApiRequest> requests = readSearchRequests(body);
+        List<Object> results = searchService.multiSearch(requests);
+
+        List<Object> responses = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Object result = results.get(i);
+            responses.add(result instanceof SearchResponse ? new SearchResponseEnvelope<>(requests.get(i).getIndex(), (SearchResponse) result, requests.get(i).getSort()) : exceptionHandler.itemError((Throwable) result));
+        }
+        return builderOK.body(singletonMap("responses", responses));
+    }
+
+    /**
+     * @return the search requests of a JSON array or of one JSON object per line (NDJSON)
+     */
+    private List<SearchApiRequest> readSearchRequests(final String body) {
+        try {
+            if (body.trim().startsWith("["))
+                return objectMapper.readValue(body, objectMapper.getTypeFactory().constructCollectionType(List.class, SearchApiRequest.class));
+
+            List<SearchApiRequest> requests = new ArrayList<>();
+            for (String line : body.split("\\r?\\n")) {
+                if (!line.trim().isEmpty())
+                    requests.add(objectMapper.readValue(line, SearchApiRequest.class));
+            }
+            return requests;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid multi search body: " + e.getMessage(), e);
+        }
     }
 
     public ResponseEntity<Object> fallback(Throwable e) {
@@ -141,7 +318,7 @@ public class SearchController {
     @ApiIgnore
     @Trace(dispatcher=true)
     public StreamingResponseBody stream(FilterableApiRequest request, HttpServletResponse httpServletResponse) {
-        httpServletResponse.setContentType("application/x-ndjson;charset=UTF-8");
+        httpServletResponse.setContentType(NDJSON + ";charset=UTF-8");
         return out -> searchService.stream(request, out);
     }
 }
@@ -11,17 +11,18 @@ import org.springframework.boot.autoconfigure.web.servlet.error.ErrorAttributes;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.annotation.RequestScope;
 import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.handler.DispatcherServletWebRequest;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeoutException;
 
 import static java.lang.String.format;
 import static java.util.Objects.nonNull;
+import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.joining;
 import static org.apache.commons.lang3.StringUtils.join;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCause;
@@ -29,7 +30,10 @@ import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMess
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.web.context.request.RequestContextHolder.currentRequestAttributes;
 
-@RequestScope
+/**
+ * A singleton, so the errors of the async searches can be handled on the Elasticsearch listener and timeout threads,
+ * which have no request bound: these pass the request explicitly.
+ */
 @Component
 public class ExceptionHandler {
 
@@ -66,6 +70,23 @@ public class ExceptionHandler {
         return new ResponseEntity<>(errorBody, httpStatus);
     }
 
+    /**
+     * @return the error of an item of a batch request (e.g. multi search), that doesn't fail the whole batch
+     */
+    public Map<String, Object> itemError(Throwable e) {
+        HttpStatus httpStatus = ofNullable(getStatusCode(e)).orElse(INTERNAL_SERVER_ERROR);
+
+        Map<String, Object> errorBody = new LinkedHashMap<>();
+        errorBody.put("status", httpStatus.value());
+        errorBody.put("error", httpStatus.getReasonPhrase());
+        errorBody.put("message", getRootCauseMessage(e));
+
+        if (httpStatus.is5xxServerError())
+            LOG.error("Error on batch item - RootCauseMessage: [{}]{}", getRootCauseMessage(e), ofNullable(additionalMessage(e)).orElse(""), e);
+
+        return errorBody;
+    }
+
     private void logErrorMsg2Appenders(Throwable e, HttpServletRequest request, Map<String, Object> errorBody, Optional<String> rootCauseMessage) {
         StringBuilder builder = new StringBuilder("Path: [" + errorBody.getOrDefault("path", "None") + "]");
         builder.append(" - Request Parameters: [" + getParametersFromRequest(request) + "]");
@@ -88,11 +109,9 @@ public class ExceptionHandler {
     }
 
     private HttpStatus getStatusCode(Throwable e, HttpServletRequest request) {
-        if(e instanceof IllegalArgumentException || getRootCause(e) instanceof IllegalArgumentException || e instanceof InvalidPropertyException || e instanceof ParserException)
-            return BAD_REQUEST;
-
-        if (e instanceof QueryTimeoutException || getRootCause(e) instanceof TimeoutException)
-            return GATEWAY_TIMEOUT;
+        HttpStatus httpStatus = getStatusCode(e);
+        if (httpStatus != null)
+            return httpStatus;
 
         Integer statusCode = (Integer) request.getAttribute("javax.servlet.error.status_code");
         if (statusCode != null) {
@@ -106,6 +125,16 @@ public class ExceptionHandler {
         return INTERNAL_SERVER_ERROR;
     }
 
+    private HttpStatus getStatusCode(Throwable e) {
+        if(e instanceof IllegalArgumentException || getRootCause(e) instanceof IllegalArgumentException || e instanceof InvalidPropertyException || e instanceof ParserException)
+            return BAD_REQUEST;
+
+        if (e instanceof QueryTimeoutException || getRootCause(e) instanceof TimeoutException)
+            return GATEWAY_TIMEOUT;
+
+        return null;
+    }
+
     private String getParametersFromRequest(final HttpServletRequest request) {
         return request.getParameterMap().entrySet().stream().map(e -> format("%s=%s", e.getKey(), join(e.getValue()))).collect(joining("&"));
     }
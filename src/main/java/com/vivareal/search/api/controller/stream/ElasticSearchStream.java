@@ -1,11 +1,12 @@
 package com.vivareal.search.api.controller.stream;
 
 import com.vivareal.search.api.adapter.QueryAdapter;
+import com.vivareal.search.api.adapter.ViewportTileAdapter;
 import com.vivareal.search.api.model.SearchApiIterator;
 import com.vivareal.search.api.model.http.FilterableApiRequest;
+import com.vivareal.search.api.serializer.HitSource;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.SearchHit;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,9 +14,13 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Predicate;
 
 import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
 import static java.lang.Integer.MAX_VALUE;
+import static com.google.common.collect.Iterators.transform;
 import static java.lang.Math.min;
 
 @Component
@@ -26,7 +31,10 @@ public class ElasticSearchStream {
 
     @Autowired
     @Qualifier("ElasticsearchQuery")
-    private QueryAdapter<?, SearchRequestBuilder> queryAdapter;
+    private QueryAdapter<?, SearchRequestBuilder, ?> queryAdapter;
+
+    @Autowired
+    private ViewportTileAdapter viewportTileAdapter;
 
     public void stream(FilterableApiRequest request, OutputStream stream) {
         String index = request.getIndex();
@@ -52,7 +60,12 @@ public class ElasticSearchStream {
         }
 
         TimeValue streamTimeout = ES_CONTROLLER_STREAM_TIMEOUT.getValue(index);
-        ResponseStream.iterate(stream, new SearchApiIterator<>(client, requestBuilder.get(),
-                        scroll -> scroll.setScroll(keepAlive).get(streamTimeout), count), (SearchHit sh) -> BytesReference.toBytes(sh.getSourceRef()));
+        Iterator<SearchHit[]> hits = new SearchApiIterator<>(client, requestBuilder.get(), scroll -> scroll.setScroll(keepAlive).get(streamTimeout), count);
+
+        Predicate<SearchHit> inViewports = viewportTileAdapter.hitFilter(request);
+        if (inViewports != null)
+            hits = transform(hits, page -> Arrays.stream(page).filter(inViewports).toArray(SearchHit[]::new));
+
+        ResponseStream.iterate(stream, hits, HitSource::source);
     }
 }
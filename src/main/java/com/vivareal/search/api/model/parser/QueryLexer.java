@@ -0,0 +1,301 @@
+package com.vivareal.search.api.model.parser;
+
+import org.jparsec.error.Location;
+import org.jparsec.error.ParseErrorDetails;
+import org.jparsec.error.ParserException;
+
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Single pass scanner used by {@link RecursiveDescentQueryParser}.
+ *
+ * It keeps the farthest position where a token could not be matched, the same way jparsec does,
+ * so the errors are reported at the same line/column of the {@link QueryParser}.
+ */
+final class QueryLexer {
+
+    private static final String EOF = "EOF";
+
+    private final String source;
+    private final int length;
+
+    private int position;
+    private int errorPosition;
+
+    QueryLexer(final String source) {
+        this.source = source;
+        this.length = source.length();
+    }
+
+    int position() {
+        return position;
+    }
+
+    void reset(final int position) {
+        this.position = position;
+    }
+
+    boolean isEof() {
+        return position >= length;
+    }
+
+    boolean isWhitespace() {
+        return position < length && Character.isWhitespace(source.charAt(position));
+    }
+
+    String substring(final int begin, final int end) {
+        return source.substring(begin, end);
+    }
+
+    /**
+     * Same as <code>Integer.valueOf(substring(begin, end))</code> for the digits between <code>begin</code> and <code>end</code>,
+     * without the substring while it can't overflow
+     */
+    int parseInt(final int begin, final int end) {
+        if (end - begin > 9)
+            return Integer.parseInt(substring(begin, end));
+
+        int value = 0;
+        for (int i = begin; i < end; i++)
+            value = value * 10 + (source.charAt(i) - '0');
+        return value;
+    }
+
+    char charAt(final int index) {
+        return source.charAt(index);
+    }
+
+    boolean skipWhitespaces() {
+        int begin = position;
+        while (position < length && Character.isWhitespace(source.charAt(position)))
+            position++;
+
+        raise();
+        return position > begin;
+    }
+
+    boolean isChar(final char c) {
+        if (position < length && source.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        raise();
+        return false;
+    }
+
+    boolean string(final String string) {
+        if (source.startsWith(string, position)) {
+            position += string.length();
+            return true;
+        }
+        raise();
+        return false;
+    }
+
+    boolean stringIgnoreCase(final String string) {
+        int size = string.length();
+        if (length - position >= size) {
+            int i = 0;
+            while (i < size && Character.toLowerCase(string.charAt(i)) == Character.toLowerCase(source.charAt(position + i)))
+                i++;
+
+            if (i == size) {
+                position += size;
+                return true;
+            }
+        }
+        raise();
+        return false;
+    }
+
+    /**
+     * Same as {@link #string(String)} but without tracking errors, like a jparsec <code>succeeds()</code>
+     */
+    boolean skipString(final String string) {
+        if (source.startsWith(string, position)) {
+            position += string.length();
+            return true;
+        }
+        return false;
+    }
+
+    String operator(final String[] operators) {
+        for (String operator : operators) {
+            if (source.startsWith(operator, position)) {
+                position += operator.length();
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    String identifier() {
+        if (position >= length || !isAlpha(source.charAt(position))) {
+            raise();
+            return null;
+        }
+
+        int begin = position++;
+        while (position < length && (isAlpha(source.charAt(position)) || isDigit(source.charAt(position))))
+            position++;
+
+        return source.substring(begin, position);
+    }
+
+    /**
+     * @return the end of the digits starting at <code>from</code> or <code>-1</code> if there is no digits
+     */
+    int integerEnd(final int from) {
+        int end = from;
+        while (end < length && isDigit(source.charAt(end)))
+            end++;
+
+        return end > from ? end : -1;
+    }
+
+    /**
+     * @return the end of the decimal (<code>1</code>, <code>1.</code>, <code>1.5</code> or <code>.5</code>) starting at <code>from</code> or <code>-1</code>
+     */
+    int decimalEnd(final int from) {
+        int end = integerEnd(from);
+        if (end >= 0) {
+            if (end < length && source.charAt(end) == '.') {
+                end++;
+                while (end < length && isDigit(source.charAt(end)))
+                    end++;
+            }
+            return end;
+        }
+
+        if (from < length && source.charAt(from) == '.')
+            return integerEnd(from + 1);
+
+        return -1;
+    }
+
+    void skipSingleQuotedContent() {
+        while (position < length) {
+            if (source.charAt(position) != '\'')
+                position++;
+            else if (position + 1 < length && source.charAt(position + 1) == '\'')
+                position += 2;
+            else
+                break;
+        }
+    }
+
+    void skipDoubleQuotedContent() {
+        while (position < length) {
+            char c = source.charAt(position);
+            if (c == '\\' && position + 1 < length && !isLineTerminator(source.charAt(position + 1)))
+                position += 2;
+            else if (c != '"' && c != '\\')
+                position++;
+            else
+                break;
+        }
+    }
+
+    void raise() {
+        if (position > errorPosition)
+            errorPosition = position;
+    }
+
+    /**
+     * The logical operators are parsed from their own tokens, so their errors replace the current one (as jparsec does)
+     */
+    void overwriteError(final int position) {
+        this.errorPosition = position;
+    }
+
+    ParserException error() {
+        return new ParserException(new UnexpectedError(errorPosition, encountered(errorPosition)), location(errorPosition));
+    }
+
+    ParserException error(final RuntimeException cause) {
+        ParserException error = new ParserException(new FailureError(position, cause.getMessage()), location(position));
+        error.initCause(cause);
+        return error;
+    }
+
+    private String encountered(final int index) {
+        return index < length ? String.valueOf(source.charAt(index)) : EOF;
+    }
+
+    private Location location(final int index) {
+        int line = 1;
+        int lineBegin = 0;
+        for (int i = 0; i < index && i < length; i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+                lineBegin = i + 1;
+            }
+        }
+        return new Location(line, index - lineBegin + 1);
+    }
+
+    private static boolean isAlpha(final char c) {
+        return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static class UnexpectedError implements ParseErrorDetails {
+
+        private final int index;
+        private final String encountered;
+
+        private UnexpectedError(final int index, final String encountered) {
+            this.index = index;
+            this.encountered = encountered;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String getEncountered() {
+            return encountered;
+        }
+
+        @Override
+        public List<String> getExpected() {
+            return emptyList();
+        }
+
+        @Override
+        public String getUnexpected() {
+            return encountered;
+        }
+
+        @Override
+        public String getFailureMessage() {
+            return null;
+        }
+    }
+
+    private static class FailureError extends UnexpectedError {
+
+        private final String message;
+
+        private FailureError(final int index, final String message) {
+            super(index, null);
+            this.message = message;
+        }
+
+        @Override
+        public String getFailureMessage() {
+            return message;
+        }
+    }
+}
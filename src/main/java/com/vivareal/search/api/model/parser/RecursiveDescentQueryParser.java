@@ -0,0 +1,451 @@
+package com.vivareal.search.api.model.parser;
+
+import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.model.query.*;
+import org.jparsec.error.ParserException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.vivareal.search.api.model.parser.ValueParser.GeoPoint.Type;
+import static com.vivareal.search.api.model.query.RelationalOperator.*;
+
+/**
+ * Hand-written version of the {@link QueryParser} grammar: it scans the query once with a {@link QueryLexer}
+ * and builds the same {@link QueryFragment} model, without the combinators allocations and backtracking.
+ *
+ * The grammar is the same of the jparsec parsers (including its quirks) and the errors are reported at
+ * the same positions, so both parsers can be switched by the <code>filter.parser</code> property.
+ */
+public final class RecursiveDescentQueryParser {
+
+    private static final String[] LOGICAL_OPERATORS = LogicalOperator.getOperators();
+
+    private static final RelationalOperator[] NORMAL_OPERATORS = {DIFFERENT, EQUAL, GREATER_EQUAL, GREATER, IN, LESS_EQUAL, LESS};
+
+    private static final String[][] RELATIONAL_OPERATORS_ALIASES = new String[RelationalOperator.values().length][];
+
+    static {
+        for (RelationalOperator operator : RelationalOperator.values())
+            RELATIONAL_OPERATORS_ALIASES[operator.ordinal()] = operator.getAlias().toArray(new String[0]);
+    }
+
+    private final QueryLexer lexer;
+
+    private RecursiveDescentQueryParser(final String query) {
+        this.lexer = new QueryLexer(query);
+    }
+
+    @Trace
+    public static QueryFragment parse(final String query) {
+        return new RecursiveDescentQueryParser(query).parse();
+    }
+
+    private QueryFragment parse() {
+        try {
+            QueryFragment query = query();
+            if (!lexer.isEof()) {
+                lexer.raise();
+                throw lexer.error();
+            }
+            return query;
+        } catch (ParserException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw lexer.error(e);
+        }
+    }
+
+    private QueryFragment query() {
+        List<QueryFragment> fragments = new ArrayList<>();
+        while (true) {
+            int begin = lexer.position();
+            QueryFragment fragment = fragment();
+            if (lexer.position() == begin)
+                break;
+
+            fragments.add(fragment);
+        }
+        return new QueryFragmentList(fragments);
+    }
+
+    private QueryFragment fragment() {
+        int begin = lexer.position();
+        if (lexer.isChar('(')) {
+            QueryFragment query = query();
+            if (lexer.isChar(')'))
+                return query;
+        }
+
+        lexer.reset(begin);
+        QueryFragment item = item();
+        if (item != null)
+            return item;
+
+        lexer.reset(begin);
+        LogicalOperator logicalOperator = logicalOperator();
+        if (logicalOperator != null)
+            return new QueryFragmentOperator(logicalOperator);
+
+        lexer.reset(begin);
+        return not();
+    }
+
+    private QueryFragment item() {
+        int begin = lexer.position();
+        LogicalOperator logicalOperator = logicalOperator();
+        if (logicalOperator == null)
+            lexer.reset(begin);
+
+        Filter filter = filter();
+        if (filter == null)
+            return null;
+
+        return new QueryFragmentItem(Optional.ofNullable(logicalOperator), filter);
+    }
+
+    /**
+     * Only one logical operator is accepted between the whitespaces, e.g. <code>AND OR</code> is an error at <code>OR</code>
+     */
+    private LogicalOperator logicalOperator() {
+        lexer.skipWhitespaces();
+        String operator = lexer.operator(LOGICAL_OPERATORS);
+        if (operator == null) {
+            lexer.overwriteError(lexer.position());
+            return null;
+        }
+
+        lexer.skipWhitespaces();
+        int next = lexer.position();
+        if (lexer.operator(LOGICAL_OPERATORS) != null) {
+            lexer.overwriteError(next);
+            return null;
+        }
+
+        lexer.raise();
+        return LogicalOperator.get(operator);
+    }
+
+    private QueryFragment not() {
+        List<Boolean> nots = null;
+        while (true) {
+            int begin = lexer.position();
+            lexer.skipWhitespaces();
+            boolean not = lexer.skipString("NOT");
+            lexer.skipWhitespaces();
+            if (lexer.position() == begin)
+                break;
+
+            if (nots == null)
+                nots = new ArrayList<>(1);
+            nots.add(not);
+        }
+        return nots == null ? null : new QueryFragmentNot(nots);
+    }
+
+    private Filter filter() {
+        int begin = lexer.position();
+        Field field = field();
+        if (field == null)
+            return null;
+
+        int afterField = lexer.position();
+        Value value;
+
+        if (relationalOperator(RANGE) && (value = range()) != null)
+            return new Filter(field, RANGE, value);
+
+        lexer.reset(afterField);
+        if (relationalOperator(VIEWPORT) && (value = geoPoint(Type.VIEWPORT)) != null)
+            return new Filter(field, VIEWPORT, value);
+
+        lexer.reset(afterField);
+        if (relationalOperator(POLYGON) && (value = geoPoint(Type.POLYGON)) != null)
+            return new Filter(field, POLYGON, value);
+
+        lexer.reset(afterField);
+        if (relationalOperator(LIKE) && (value = like()) != null)
+            return new Filter(field, LIKE, value);
+
+        lexer.reset(afterField);
+        RelationalOperator operator = relationalOperator(NORMAL_OPERATORS);
+        if (operator != null && (value = value()) != null)
+            return new Filter(field, operator, value);
+
+        lexer.reset(begin);
+        return null;
+    }
+
+    private Field field() {
+        String name = lexer.identifier();
+        if (name == null)
+            return null;
+
+        List<String> names = new ArrayList<>(2);
+        names.add(name);
+        while (true) {
+            int beforeDot = lexer.position();
+            if (!lexer.isChar('.'))
+                break;
+
+            name = lexer.identifier();
+            if (name == null) {
+                lexer.reset(beforeDot);
+                break;
+            }
+            names.add(name);
+        }
+        return new Field(names);
+    }
+
+    private RelationalOperator relationalOperator(final RelationalOperator[] operators) {
+        for (RelationalOperator operator : operators) {
+            if (relationalOperator(operator))
+                return operator;
+        }
+        return null;
+    }
+
+    private boolean relationalOperator(final RelationalOperator operator) {
+        int begin = lexer.position();
+        lexer.skipWhitespaces();
+        for (String alias : RELATIONAL_OPERATORS_ALIASES[operator.ordinal()]) {
+            if (lexer.string(alias)) {
+                lexer.skipWhitespaces();
+                return true;
+            }
+        }
+        lexer.reset(begin);
+        return false;
+    }
+
+    private Value value() {
+        int begin = lexer.position();
+        Value value = valueIn();
+        if (value != null)
+            return value;
+
+        lexer.reset(begin);
+        return singleValue();
+    }
+
+    private Value valueIn() {
+        if (!lexer.isChar('['))
+            return null;
+
+        int afterBracket = lexer.position();
+        ValueArray.Builder values = new ValueArray.Builder();
+
+        if (!singleValue(values)) {
+            lexer.reset(afterBracket);
+        } else {
+            while (true) {
+                int beforeComma = lexer.position();
+                if (!lexer.isChar(','))
+                    break;
+
+                boolean whitespace = lexer.isWhitespace();
+                if (!singleValue(values)) {
+                    // Once a value consumed whitespaces the whole list is discarded
+                    if (whitespace) {
+                        values = new ValueArray.Builder();
+                        lexer.reset(afterBracket);
+                    } else {
+                        lexer.reset(beforeComma);
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (!lexer.isChar(']'))
+            return null;
+
+        return new Value((Object) values.build());
+    }
+
+    private Value singleValue() {
+        ValueArray.Builder value = new ValueArray.Builder();
+        return singleValue(value) ? value.get(0) : null;
+    }
+
+    /**
+     * The numbers and strings are added to the list without a {@link Value} by element
+     */
+    private boolean singleValue(final ValueArray.Builder values) {
+        lexer.skipWhitespaces();
+        int begin = lexer.position();
+
+        Value value = booleanValue();
+        if (value == null) {
+            lexer.reset(begin);
+            value = nullValue();
+        }
+
+        if (value != null) {
+            values.add(value);
+        } else {
+            lexer.reset(begin);
+            if (!number(values)) {
+                lexer.reset(begin);
+                if (!string(values))
+                    return false;
+            }
+        }
+
+        lexer.skipWhitespaces();
+        return true;
+    }
+
+    private Value booleanValue() {
+        if (lexer.stringIgnoreCase("FALSE"))
+            return new Value(false);
+
+        if (lexer.stringIgnoreCase("TRUE"))
+            return new Value(true);
+
+        return null;
+    }
+
+    private Value nullValue() {
+        return lexer.stringIgnoreCase("NULL") ? Value.NULL_VALUE : null;
+    }
+
+    private boolean number(final ValueArray.Builder values) {
+        int begin = lexer.position();
+
+        int integerEnd = lexer.integerEnd(begin);
+        if (integerEnd >= 0) {
+            lexer.reset(integerEnd);
+            int integer = lexer.parseInt(begin, integerEnd);
+
+            int decimalEnd = lexer.decimalEnd(begin);
+            if (decimalEnd > integerEnd) {
+                lexer.reset(decimalEnd);
+                values.add(Double.parseDouble(lexer.substring(begin, decimalEnd)));
+            } else {
+                values.add(integer);
+            }
+            return true;
+        }
+        lexer.raise();
+
+        int decimalEnd = lexer.decimalEnd(begin);
+        if (decimalEnd >= 0) {
+            lexer.reset(decimalEnd);
+            values.add(Double.parseDouble(lexer.substring(begin, decimalEnd)));
+            return true;
+        }
+
+        if (!lexer.string("-"))
+            return false;
+
+        int negativeBegin = lexer.position();
+        decimalEnd = lexer.decimalEnd(negativeBegin);
+        if (decimalEnd < 0) {
+            lexer.raise();
+            return false;
+        }
+
+        lexer.reset(decimalEnd);
+        values.add(-Double.parseDouble(lexer.substring(negativeBegin, decimalEnd)));
+        return true;
+    }
+
+    private Value string() {
+        ValueArray.Builder value = new ValueArray.Builder();
+        return string(value) ? value.get(0) : null;
+    }
+
+    private boolean string(final ValueArray.Builder values) {
+        int begin = lexer.position();
+        if (lexer.isChar('\'')) {
+            lexer.skipSingleQuotedContent();
+            if (lexer.isChar('\'')) {
+                values.add(unquote(begin, lexer.position()));
+                return true;
+            }
+        }
+
+        lexer.reset(begin);
+        if (lexer.isChar('"')) {
+            lexer.skipDoubleQuotedContent();
+            if (lexer.isChar('"')) {
+                values.add(unquote(begin, lexer.position()));
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * All the quotes are removed from the quoted string, not only the delimiters
+     */
+    private String unquote(final int begin, final int end) {
+        int quotes = 0;
+        for (int i = begin + 1; i < end - 1; i++) {
+            char c = lexer.charAt(i);
+            if (c == '\'' || c == '"')
+                quotes++;
+        }
+
+        if (quotes == 0)
+            return lexer.substring(begin + 1, end - 1).trim();
+
+        StringBuilder unquoted = new StringBuilder(end - begin - quotes);
+        for (int i = begin + 1; i < end - 1; i++) {
+            char c = lexer.charAt(i);
+            if (c != '\'' && c != '"')
+                unquoted.append(c);
+        }
+        return unquoted.toString().trim();
+    }
+
+    private Value like() {
+        Value value = string();
+        return value == null ? null : new LikeValue(value);
+    }
+
+    private Value range() {
+        Value value = valueIn();
+        return value == null ? null : new RangeValue(value);
+    }
+
+    private Value geoPoint(final Type type) {
+        if (!lexer.isChar('['))
+            return null;
+
+        Value value = value();
+        if (value == null)
+            return null;
+
+        List<Value> points = new ArrayList<>();
+        points.add(value);
+        while (true) {
+            int beforeComma = lexer.position();
+            boolean whitespace = lexer.skipWhitespaces();
+            if (!lexer.isChar(',')) {
+                if (whitespace)
+                    return null;
+
+                lexer.reset(beforeComma);
+                break;
+            }
+            lexer.skipWhitespaces();
+
+            value = value();
+            if (value == null) {
+                lexer.reset(beforeComma);
+                break;
+            }
+            points.add(value);
+        }
+
+        if (!lexer.isChar(']'))
+            return null;
+
+        return new GeoPointValue(points, type);
+    }
+}
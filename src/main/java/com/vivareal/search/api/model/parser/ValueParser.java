@@ -5,8 +5,11 @@ import com.vivareal.search.api.model.query.GeoPointValue;
 import com.vivareal.search.api.model.query.LikeValue;
 import com.vivareal.search.api.model.query.RangeValue;
 import com.vivareal.search.api.model.query.Value;
+import com.vivareal.search.api.model.query.ValueArray;
 import org.jparsec.Parser;
 
+import java.util.List;
+
 import static java.lang.String.valueOf;
 import static org.jparsec.Parsers.*;
 import static org.jparsec.Scanners.*;
@@ -26,7 +29,7 @@ public class ValueParser {
     private static final Parser<Value> VALUE_IN =
         between(isChar('['), VALUE.sepBy(isChar(',')), isChar(']'))
             .label("[]")
-            .map(Value::new);
+            .map(ValueParser::valueIn);
 
     private static final Parser<Value> VALUE_PARSER = or(VALUE_IN, VALUE);
 
@@ -34,6 +37,12 @@ public class ValueParser {
         return VALUE_PARSER;
     }
 
+    private static Value valueIn(final List<Value> values) {
+        ValueArray.Builder builder = new ValueArray.Builder();
+        values.forEach(builder::add);
+        return new Value((Object) builder.build());
+    }
+
     static class Like {
         private static final Parser<Value> VALUE_LIKE = STRING.label("like").map(LikeValue::new);
 
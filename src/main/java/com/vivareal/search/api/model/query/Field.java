@@ -10,7 +10,7 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 
 public class Field {
 
-    private boolean not;
+    private final boolean not;
     private final List<String> names;
 
     public Field(final List<String> names) {
@@ -33,12 +33,12 @@ public class GeoPointValue extends Value {
     }
 
     private void checkCoordinates(final List<Value> points, final ValueParser.GeoPoint.Type type) {
-        points.parallelStream().forEach(point -> {
+        for (Value point : points) {
             if (point == null || point.contents() == null || point.contents().size() != 2)
                 throw new IllegalArgumentException(format("Each geo_point of search by %s should be compose by pair of coordinates (lat/lon)", type.name()));
 
-            checkLatitude(point.value(1));
-            checkLongitude(point.value(0));
-        });
+            checkLatitude(point.<Number>value(1).doubleValue());
+            checkLongitude(point.<Number>value(0).doubleValue());
+        }
     }
 }
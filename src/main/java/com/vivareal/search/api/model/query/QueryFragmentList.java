@@ -7,6 +7,7 @@ import java.util.AbstractList;
 import java.util.List;
 
 import static java.lang.String.format;
+import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.joining;
 
 public class QueryFragmentList extends AbstractList<QueryFragment> implements QueryFragment {
@@ -31,7 +32,7 @@ public class QueryFragmentList extends AbstractList<QueryFragment> implements Qu
             throw new IllegalArgumentException("The first item cannot have a logical operator prefix");
 
         // If there isn't a single nested QueryFragmentList
-        return queryFragments;
+        return unmodifiableList(queryFragments);
     }
 
     private boolean hasOnlyAnInternalQueryFragmentList(List<QueryFragment> queryFragments) {
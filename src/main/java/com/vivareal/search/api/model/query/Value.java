@@ -103,4 +103,11 @@ public class Value {
     public List<Object> contents() {
         return Collections.unmodifiableList(contents);
     }
+
+    /**
+     * @return the primitive array of a list of integers, decimals or strings, or <code>null</code> for any other value
+     */
+    public ValueArray array() {
+        return contents instanceof ValueArray ? (ValueArray) contents : null;
+    }
 }
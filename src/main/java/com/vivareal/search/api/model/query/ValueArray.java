@@ -0,0 +1,222 @@
+package com.vivareal.search.api.model.query;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of values (e.g. of an <code>IN</code> filter) backed by a primitive array when all of them are integers,
+ * decimals or strings, so long lists don't keep a boxed {@link Value} by element.
+ *
+ * The elements are only wrapped in a {@link Value} when they are read, so it is equal to the list of {@link Value}.
+ */
+public abstract class ValueArray extends AbstractList<Object> implements RandomAccess {
+
+    private ValueArray() {
+    }
+
+    @Override
+    public Object get(final int index) {
+        return new Value(element(index));
+    }
+
+    abstract Object element(final int index);
+
+    /**
+     * @return the values as strings, e.g. for the <code>ids</code> query
+     */
+    public abstract String[] toStrings();
+
+    public static final class Integers extends ValueArray {
+        private final int[] values;
+
+        private Integers(final int[] values) {
+            this.values = values;
+        }
+
+        public int[] values() {
+            return values;
+        }
+
+        @Override
+        Object element(final int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public String[] toStrings() {
+            String[] strings = new String[values.length];
+            for (int i = 0; i < values.length; i++)
+                strings[i] = Integer.toString(values[i]);
+            return strings;
+        }
+    }
+
+    public static final class Decimals extends ValueArray {
+        private final double[] values;
+
+        private Decimals(final double[] values) {
+            this.values = values;
+        }
+
+        public double[] values() {
+            return values;
+        }
+
+        @Override
+        Object element(final int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public String[] toStrings() {
+            String[] strings = new String[values.length];
+            for (int i = 0; i < values.length; i++)
+                strings[i] = Double.toString(values[i]);
+            return strings;
+        }
+    }
+
+    public static final class Strings extends ValueArray {
+        private final String[] values;
+
+        private Strings(final String[] values) {
+            this.values = values;
+        }
+
+        public String[] values() {
+            return values;
+        }
+
+        @Override
+        Object element(final int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public String[] toStrings() {
+            return values;
+        }
+    }
+
+    /**
+     * Fills the primitive array of the first value type (growing it by doubling) and switches to a list of {@link Value}
+     * when another type is added
+     */
+    public static final class Builder {
+
+        private int size;
+        private int[] integers;
+        private double[] decimals;
+        private String[] strings;
+        private List<Object> values;
+
+        public Builder add(final int value) {
+            if (values == null && (integers != null || size == 0)) {
+                if (integers == null)
+                    integers = new int[1];
+                if (size == integers.length)
+                    integers = Arrays.copyOf(integers, size << 1);
+                integers[size++] = value;
+                return this;
+            }
+            return addValue(new Value(value));
+        }
+
+        public Builder add(final double value) {
+            if (values == null && (decimals != null || size == 0)) {
+                if (decimals == null)
+                    decimals = new double[1];
+                if (size == decimals.length)
+                    decimals = Arrays.copyOf(decimals, size << 1);
+                decimals[size++] = value;
+                return this;
+            }
+            return addValue(new Value(value));
+        }
+
+        public Builder add(final String value) {
+            if (values == null && (strings != null || size == 0)) {
+                if (strings == null)
+                    strings = new String[1];
+                if (size == strings.length)
+                    strings = Arrays.copyOf(strings, size << 1);
+                strings[size++] = value;
+                return this;
+            }
+            return addValue(new Value(value));
+        }
+
+        public Builder add(final Value value) {
+            if (value.getClass() == Value.class && value.size() == 1) {
+                Object content = value.contents.get(0);
+                if (content instanceof Integer)
+                    return add((int) (Integer) content);
+                if (content instanceof Double)
+                    return add((double) (Double) content);
+                if (content instanceof String)
+                    return add((String) content);
+            }
+            return addValue(value);
+        }
+
+        public int size() {
+            return values != null ? values.size() : size;
+        }
+
+        public Value get(final int index) {
+            if (values != null)
+                return (Value) values.get(index);
+
+            return new Value(integers != null ? integers[index] : decimals != null ? (Object) decimals[index] : strings[index]);
+        }
+
+        public List<Object> build() {
+            if (values != null)
+                return values;
+
+            if (integers != null && size > 0)
+                return new Integers(Arrays.copyOf(integers, size));
+
+            if (decimals != null && size > 0)
+                return new Decimals(Arrays.copyOf(decimals, size));
+
+            if (strings != null && size > 0)
+                return new Strings(Arrays.copyOf(strings, size));
+
+            return new ArrayList<>(0);
+        }
+
+        private Builder addValue(final Value value) {
+            if (values == null) {
+                List<Object> boxed = new ArrayList<>(size + 1);
+                for (int i = 0; i < size; i++)
+                    boxed.add(get(i));
+
+                values = boxed;
+                integers = null;
+                decimals = null;
+                strings = null;
+            }
+            values.add(value);
+            return this;
+        }
+    }
+}
@@ -6,13 +6,22 @@ public class SearchResponseEnvelope<T> {
 
     private final String indexName;
     private final T searchResponse;
+    private final String sort;
 
     public SearchResponseEnvelope(String indexName, T searchResponse) {
+        this(indexName, searchResponse, null);
+    }
+
+    /**
+     * @param sort the requested sort, the cursor is created for (<code>null</code> for the index default sort)
+     */
+    public SearchResponseEnvelope(String indexName, T searchResponse, String sort) {
         notNull(indexName, "The object indexName must not be null");
         notNull(searchResponse, "The object searchResponse must not be null");
 
         this.indexName = indexName;
         this.searchResponse = searchResponse;
+        this.sort = sort;
     }
 
     public String getIndexName() {
@@ -22,4 +31,8 @@ public class SearchResponseEnvelope<T> {
     public T getSearchResponse() {
         return searchResponse;
     }
+
+    public String getSort() {
+        return sort;
+    }
 }
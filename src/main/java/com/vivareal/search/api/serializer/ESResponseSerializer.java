@@ -16,10 +16,9 @@ import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import java.io.IOException;
 import java.util.List;
 
-import static com.vivareal.search.api.adapter.SearchAfterQueryAdapter.SORT_SEPARATOR;
-import static java.util.stream.Collectors.joining;
-import static java.util.stream.Stream.of;
-import static org.elasticsearch.common.bytes.BytesReference.toBytes;
+import static com.vivareal.search.api.adapter.CursorCodec.encode;
+import static com.vivareal.search.api.adapter.CursorCodec.fingerprint;
+import static com.vivareal.search.api.serializer.HitSource.source;
 
 public class ESResponseSerializer extends StdSerializer<SearchResponseEnvelope<SearchResponse>> {
 
@@ -45,7 +44,7 @@ public class ESResponseSerializer extends StdSerializer<SearchResponseEnvelope<S
         jgen.writeNumberField("totalCount", searchResponse.getHits().getTotalHits());
 
         SearchHit[] hits = searchResponse.getHits().getHits();
-        writeCursorId(hits, jgen);
+        writeCursorId(hits, value, jgen);
 
         jgen.writeObjectFieldStart("result");
         jgen.writeArrayFieldStart(value.getIndexName());
@@ -58,7 +57,7 @@ public class ESResponseSerializer extends StdSerializer<SearchResponseEnvelope<S
     }
 
     private String hitAsString(SearchHit h) {
-        byte[] bytes = toBytes(h.getSourceRef());
+        byte[] bytes = source(h);
         return new String(bytes, 0, bytes.length);
     }
 
@@ -102,11 +101,11 @@ public class ESResponseSerializer extends StdSerializer<SearchResponseEnvelope<S
         }
     }
 
-    private void writeCursorId(final SearchHit[] hits, JsonGenerator jgen) throws IOException {
+    private void writeCursorId(final SearchHit[] hits, final SearchResponseEnvelope<SearchResponse> value, JsonGenerator jgen) throws IOException {
         if (hits.length > 0) {
             Object[] sortValues = hits[hits.length - 1].getSortValues();
             if (!ArrayUtils.isEmpty(sortValues))
-                jgen.writeStringField("cursorId", of(sortValues).map(value -> String.valueOf(value).replaceAll("_", "%5f")).collect(joining(SORT_SEPARATOR)));
+                jgen.writeStringField("cursorId", encode(fingerprint(value.getIndexName(), value.getSort()), sortValues));
         }
     }
 }
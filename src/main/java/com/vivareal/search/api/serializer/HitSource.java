@@ -0,0 +1,54 @@
+package com.vivareal.search.api.serializer;
+
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.elasticsearch.common.bytes.BytesReference.toBytes;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Renders the source of a hit. The hits searched without source (doc values projection, see
+ * <code>es.docvalue.projection</code>) are rendered from their doc value fields with the source paths, a single value
+ * as a scalar. The geo point doc values are only requested to trim the tiled viewports, so they are never rendered.
+ */
+public final class HitSource {
+
+    private HitSource() {
+    }
+
+    public static byte[] source(final SearchHit hit) {
+        if (hit.getSourceRef() != null)
+            return toBytes(hit.getSourceRef());
+
+        Map<String, Object> source = new LinkedHashMap<>();
+        new TreeMap<>(hit.getFields()).values().forEach(field -> put(source, field));
+
+        try {
+            return toBytes(jsonBuilder().map(source).bytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(final Map<String, Object> source, final SearchHitField field) {
+        List<Object> values = field.getValues();
+        if (values.isEmpty() || values.get(0) instanceof GeoPoint)
+            return;
+
+        String[] path = field.getName().split("\\.");
+        Map<String, Object> object = source;
+        for (int i = 0; i < path.length - 1; i++)
+            object = (Map<String, Object>) object.computeIfAbsent(path[i], name -> new LinkedHashMap<>());
+
+        object.put(path[path.length - 1], values.size() == 1 ? values.get(0) : values);
+    }
+}
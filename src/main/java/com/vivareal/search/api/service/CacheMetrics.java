@@ -0,0 +1,74 @@
+package com.vivareal.search.api.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+
+/**
+ * Publishes the statistics of the application caches ({@link CacheService#localStats()}) as actuator metrics named
+ * <code>search.cache.*</code> and tagged by cache and index: the counts (hits, misses, evictions, revalidations...) as
+ * counters and the other values (size, bytes, hit rate) as gauges. The statistics are read every
+ * {@link #REFRESH_MILLIS}, registering the meters of the caches and indexes seen for the first time.
+ */
+@Component
+public class CacheMetrics {
+
+    static final long REFRESH_MILLIS = 10000;
+
+    private static final String COUNT = "Count";
+
+    private final MeterRegistry registry;
+
+    private final CacheService cacheService;
+
+    private final Set<List<String>> meters = ConcurrentHashMap.newKeySet();
+
+    private volatile Map<String, Map<String, Map<String, Object>>> stats = emptyMap();
+
+    @Autowired
+    public CacheMetrics(MeterRegistry registry, CacheService cacheService) {
+        this.registry = registry;
+        this.cacheService = cacheService;
+    }
+
+    @Scheduled(fixedDelay = REFRESH_MILLIS)
+    public void refresh() {
+        stats = cacheService.localStats();
+        stats.forEach((cache, indexes) -> indexes.forEach((index, values) -> values.forEach((stat, value) -> {
+            if (value instanceof Number && meters.add(asList(cache, index, stat)))
+                register(cache, index, stat);
+        })));
+    }
+
+    private void register(final String cache, final String index, final String stat) {
+        Tags tags = Tags.of("cache", cache, "index", index);
+        if (stat.endsWith(COUNT))
+            FunctionCounter.builder(name(stat.substring(0, stat.length() - COUNT.length())), this, metrics -> metrics.value(cache, index, stat)).tags(tags).register(registry);
+        else
+            Gauge.builder(name(stat), this, metrics -> metrics.value(cache, index, stat)).tags(tags).register(registry);
+    }
+
+    private double value(final String cache, final String index, final String stat) {
+        Object value = stats.getOrDefault(cache, emptyMap()).getOrDefault(index, emptyMap()).get(stat);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * @return the metric name of a statistic, e.g. <code>search.cache.memory.size.in.bytes</code> for <code>memorySizeInBytes</code>
+     */
+    static String name(final String stat) {
+        return "search.cache." + stat.replaceAll("([a-z0-9])([A-Z])", "$1.$2").toLowerCase();
+    }
+}
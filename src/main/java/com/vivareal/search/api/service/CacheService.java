@@ -0,0 +1,70 @@
+package com.vivareal.search.api.service;
+
+import com.vivareal.search.api.adapter.ESClient;
+import com.vivareal.search.api.cache.DocumentCache;
+import com.vivareal.search.api.cache.InFlightSearches;
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.ResponseCache;
+import org.elasticsearch.index.cache.request.RequestCacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Component
+public class CacheService {
+
+    @Autowired
+    private IndexCacheRegistry cacheRegistry;
+
+    @Autowired
+    private DocumentCache documentCache;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private InFlightSearches inFlightSearches;
+
+    @Autowired
+    private ESClient esClient;
+
+    public Map<String, Map<String, Map<String, Object>>> stats() {
+        Map<String, Map<String, Map<String, Object>>> stats = localStats();
+        stats.put("shardRequest", requestCacheStats());
+        return stats;
+    }
+
+    /**
+     * @return the statistics of the caches of this application by cache and index, without the Elasticsearch ones
+     */
+    public Map<String, Map<String, Map<String, Object>>> localStats() {
+        Map<String, Map<String, Map<String, Object>>> stats = cacheRegistry.stats();
+        stats.put("document", documentCache.stats());
+        stats.put("response", responseCache.stats());
+        stats.put("inFlightSearch", inFlightSearches.stats());
+        return stats;
+    }
+
+    /**
+     * @return the Elasticsearch shard request cache statistics (used by the facets only requests) by index
+     */
+    private Map<String, Map<String, Object>> requestCacheStats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        esClient.getRequestCacheStats().getIndices().forEach((index, indexStats) -> {
+            RequestCacheStats cacheStats = indexStats.getTotal().getRequestCache();
+            long requests = cacheStats.getHitCount() + cacheStats.getMissCount();
+
+            Map<String, Object> indexCacheStats = new LinkedHashMap<>();
+            indexCacheStats.put("memorySizeInBytes", cacheStats.getMemorySizeInBytes());
+            indexCacheStats.put("hitCount", cacheStats.getHitCount());
+            indexCacheStats.put("missCount", cacheStats.getMissCount());
+            indexCacheStats.put("evictionCount", cacheStats.getEvictions());
+            indexCacheStats.put("hitRate", requests == 0 ? 1.0 : (double) cacheStats.getHitCount() / requests);
+            stats.put(index, indexCacheStats);
+        });
+        return stats;
+    }
+}
@@ -1,7 +1,13 @@
 package com.vivareal.search.api.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.newrelic.api.agent.Trace;
+import com.vivareal.search.api.adapter.ESClient;
 import com.vivareal.search.api.adapter.QueryAdapter;
+import com.vivareal.search.api.adapter.ViewportTileAdapter;
+import com.vivareal.search.api.cache.DocumentCache;
+import com.vivareal.search.api.cache.InFlightSearches;
+import com.vivareal.search.api.cache.PageCheckpointCache;
 import com.vivareal.search.api.controller.stream.ElasticSearchStream;
 import com.vivareal.search.api.exception.QueryPhaseExecutionException;
 import com.vivareal.search.api.exception.QueryTimeoutException;
@@ -9,37 +15,97 @@ import com.vivareal.search.api.model.http.BaseApiRequest;
 import com.vivareal.search.api.model.http.FilterableApiRequest;
 import com.vivareal.search.api.model.http.SearchApiRequest;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.io.OutputStream;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
-import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_CONTROLLER_SEARCH_TIMEOUT;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.util.Arrays.copyOfRange;
+import static java.util.Collections.nCopies;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.Optional.ofNullable;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCause;
+import static org.springframework.util.CollectionUtils.isEmpty;
 
 @Component
 public class SearchService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SearchService.class);
+
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("search-timeout-%d").setDaemon(true).build());
+
+    static {
+        TIMEOUTS.setRemoveOnCancelPolicy(true);
+    }
+
     @Autowired
     @Qualifier("ElasticsearchQuery")
-    private QueryAdapter<GetRequestBuilder, SearchRequestBuilder> queryAdapter;
+    private QueryAdapter<GetRequestBuilder, SearchRequestBuilder, MultiGetRequestBuilder> queryAdapter;
 
     @Autowired
     private ElasticSearchStream elasticSearch;
 
+    @Autowired
+    private ViewportTileAdapter viewportTileAdapter;
+
+    @Autowired
+    private ESClient esClient;
+
+    @Autowired
+    private DocumentCache documentCache;
+
+    @Autowired
+    private InFlightSearches inFlightSearches;
+
+    @Autowired
+    private PageCheckpointCache pageCheckpointCache;
+
     @Trace
     public GetResponse getById(BaseApiRequest request, String id) throws InterruptedException, ExecutionException, TimeoutException {
         try {
-            return this.queryAdapter.getById(request, id).get((TimeValue) ES_CONTROLLER_SEARCH_TIMEOUT.getValue(request.getIndex()));
+            GetRequestBuilder requestBuilder = this.queryAdapter.getById(request, id);
+            return documentCache.get(requestBuilder.request(), () -> requestBuilder.get((TimeValue) ES_CONTROLLER_SEARCH_TIMEOUT.getValue(request.getIndex())));
         } catch (Exception e) {
             if (getRootCause(e) instanceof IllegalArgumentException)
                 throw new IllegalArgumentException(e);
@@ -49,27 +115,306 @@ public class SearchService {
         }
     }
 
+    /**
+     * @return the documents found, in the order of the ids
+     */
     @Trace
-    public SearchResponse search(SearchApiRequest request) {
-        SearchRequestBuilder searchRequestBuilder = null;
-
+    public List<GetResponse> getByIds(BaseApiRequest request, Collection<String> ids) throws InterruptedException, ExecutionException, TimeoutException {
         try {
-            searchRequestBuilder = this.queryAdapter.query(request);
-            SearchResponse searchResponse = searchRequestBuilder.get((TimeValue) ES_CONTROLLER_SEARCH_TIMEOUT.getValue(request.getIndex()));
-
-            if (searchResponse.isTimedOut())
-                throw new QueryTimeoutException(searchRequestBuilder.toString());
+            MultiGetResponse response = this.queryAdapter.getByIds(request, ids).get((TimeValue) ES_CONTROLLER_SEARCH_TIMEOUT.getValue(request.getIndex()));
 
-            return searchResponse;
+            List<GetResponse> documents = new ArrayList<>(response.getResponses().length);
+            for (MultiGetItemResponse item : response) {
+                if (item.isFailed())
+                    throw new QueryPhaseExecutionException(item.getFailure().getFailure());
+                if (item.getResponse().isExists())
+                    documents.add(item.getResponse());
+            }
+            return documents;
         } catch (Exception e) {
             if (getRootCause(e) instanceof IllegalArgumentException)
                 throw new IllegalArgumentException(e);
             if (e instanceof ElasticsearchException)
-                throw new QueryPhaseExecutionException(ofNullable(searchRequestBuilder).map(SearchRequestBuilder::toString).orElse("{}"), e);
+                throw new QueryPhaseExecutionException(e);
             throw e;
         }
     }
 
+    /**
+     * @return if the page is from <code>es.deep.page.from</code> on and may be served by the page checkpoints
+     * (<code>es.deep.page.checkpoints</code>): it has hits, no cursor and a sort, needed by <code>search_after</code>
+     */
+    private boolean isDeepPage(SearchApiRequest request) {
+        String index = request.getIndex();
+        Integer deepPageFrom = ES_DEEP_PAGE_FROM.getValue(index);
+        return deepPageFrom != null && deepPageFrom > 0 && request.getFrom() >= deepPageFrom && request.getSize() != 0 && request.getCursorId() == null
+            && parseBoolean(ES_DEEP_PAGE_CHECKPOINTS.getValue(index)) && isNotBlank(ES_DEFAULT_SORT.getValue(request.getSort(), index));
+    }
+
+    /**
+     * Serves a deep page by <code>search_after</code> from the nearest page checkpoint (one every
+     * <code>es.deep.page.from</code> hits, see {@link PageCheckpointCache}), walking without source from the last known
+     * checkpoint when needed. So the shards collect less than <code>es.deep.page.from + size</code> hits for the page,
+     * instead of <code>from + size</code>, and the hits before the page are skipped here. Each search of the walk is
+     * sent when the previous one responds.
+     */
+    private CompletableFuture<SearchResponse> searchDeepPageAsync(SearchApiRequest request) {
+        String index = request.getIndex();
+        TimeValue timeout = ES_CONTROLLER_SEARCH_TIMEOUT.getValue(index);
+        request.setPaginationValues(ES_DEFAULT_SIZE.getValue(index), ES_MAX_SIZE.getValue(index));
+
+        final int from = request.getFrom(), step = ES_DEEP_PAGE_FROM.getValue(index), checkpoint = from / step * step;
+        NavigableMap<Integer, Object[]> checkpoints = pageCheckpointCache.get(request);
+        Map.Entry<Integer, Object[]> nearest = checkpoints.floorEntry(checkpoint);
+
+        return walk(request, checkpoints, nearest == null ? new SimpleImmutableEntry<>(0, null) : nearest, checkpoint, step, timeout).thenCompose(position -> {
+            int offset = position.getKey();
+            SearchRequestBuilder searchRequestBuilder;
+            try {
+                searchRequestBuilder = fromStart(request, () -> this.queryAdapter.query(request)).setSize(offset < checkpoint ? 0 : from - offset + request.getSize());
+            } catch (RuntimeException e) {
+                return failedFuture(searchError(e, null));
+            }
+            if (position.getValue() != null)
+                searchRequestBuilder.searchAfter(position.getValue());
+
+            return withSearchErrors(execute(searchRequestBuilder, timeout)
+                .thenApply(response -> viewportTileAdapter.trim(request, skipHits(checkTimeout(response, searchRequestBuilder), from - offset))), searchRequestBuilder);
+        });
+    }
+
+    /**
+     * @return the position (offset and <code>search_after</code>) of the checkpoint, or of the last one when there are
+     * less hits, searching (and keeping) the checkpoints after the given position
+     */
+    private CompletableFuture<Map.Entry<Integer, Object[]>> walk(SearchApiRequest request, NavigableMap<Integer, Object[]> checkpoints, Map.Entry<Integer, Object[]> position,
+                                                                int checkpoint, int step, TimeValue timeout) {
+        if (position.getKey() >= checkpoint)
+            return completedFuture(position);
+
+        SearchRequestBuilder searchRequestBuilder;
+        try {
+            searchRequestBuilder = fromStart(request, () -> this.queryAdapter.queryHits(request)).setSize(step).setFetchSource(false);
+        } catch (RuntimeException e) {
+            return failedFuture(searchError(e, null));
+        }
+        if (position.getValue() != null)
+            searchRequestBuilder.searchAfter(position.getValue());
+
+        return withSearchErrors(execute(searchRequestBuilder, timeout).thenApply(response -> checkTimeout(response, searchRequestBuilder)), searchRequestBuilder)
+            .thenCompose(response -> {
+                SearchHit[] hits = response.getHits().getHits();
+                if (hits.length < step)
+                    return completedFuture(position);
+
+                Map.Entry<Integer, Object[]> next = new SimpleImmutableEntry<>(position.getKey() + step, hits[hits.length - 1].getSortValues());
+                checkpoints.put(next.getKey(), next.getValue());
+                return walk(request, checkpoints, next, checkpoint, step, timeout);
+            });
+    }
+
+    /**
+     * Builds the request from its first hit, as <code>search_after</code> doesn't accept <code>from</code>
+     */
+    private static SearchRequestBuilder fromStart(SearchApiRequest request, Supplier<SearchRequestBuilder> builder) {
+        int from = request.getFrom();
+        request.setFrom(0);
+        try {
+            return builder.get();
+        } finally {
+            request.setFrom(from);
+        }
+    }
+
+    private static SearchResponse checkTimeout(SearchResponse searchResponse, SearchRequestBuilder searchRequestBuilder) {
+        if (searchResponse.isTimedOut())
+            throw new QueryTimeoutException(searchRequestBuilder.toString());
+        return searchResponse;
+    }
+
+    private static SearchResponse skipHits(SearchResponse response, int skip) {
+        SearchHit[] hits = response.getHits().getHits();
+        if (skip <= 0 || hits.length == 0)
+            return response;
+
+        SearchHits searchHits = new SearchHits(copyOfRange(hits, min(skip, hits.length), hits.length), response.getHits().getTotalHits(), response.getHits().getMaxScore());
+        InternalSearchResponse sections = new InternalSearchResponse(searchHits, (InternalAggregations) response.getAggregations(), response.getSuggest(), null,
+            response.isTimedOut(), response.isTerminatedEarly(), response.getNumReducePhases());
+        return new SearchResponse(sections, response.getScrollId(), response.getTotalShards(), response.getSuccessfulShards(), response.getSkippedShards(),
+            response.getTookInMillis(), response.getShardFailures());
+    }
+
+    /**
+     * Merges the hits and the facets searched as two requests of a multi search, so the facets are cached apart from the
+     * pagination (see {@link QueryAdapter#queryFacets(SearchApiRequest)}). With <code>es.facet.partial.results</code> the
+     * hits are returned without the facets when these fail or time out.
+     */
+    private SearchResponse hitsAndFacets(SearchApiRequest request, MultiSearchResponse.Item[] responses, SearchRequestBuilder hitsRequestBuilder, SearchRequestBuilder facetsRequestBuilder) {
+        SearchResponse hits = checkResponse(responses[0], hitsRequestBuilder);
+        SearchResponse facets;
+        try {
+            facets = checkResponse(responses[1], facetsRequestBuilder);
+        } catch (QueryPhaseExecutionException e) {
+            if (!parseBoolean(ES_FACET_PARTIAL_RESULTS.getValue(request.getIndex())))
+                throw e;
+
+            LOG.warn("Returning hits without facets of request: {}", request, e);
+            facets = null;
+        }
+
+        return viewportTileAdapter.trim(request, merge(hits, facets));
+    }
+
+    /**
+     * Searches without blocking the caller thread: the search is sent with an {@link ActionListener} and the response
+     * is completed on the Elasticsearch client thread (or with the <code>es.controller.search.timeout</code> error).
+     * The identical searches running at the same time share a single Elasticsearch search (see {@link InFlightSearches}).
+     */
+    @Trace
+    public CompletableFuture<SearchResponse> searchAsync(SearchApiRequest request) {
+        return inFlightSearches.executeAsync(request, () -> searchOnceAsync(request));
+    }
+
+    private CompletableFuture<SearchResponse> searchOnceAsync(SearchApiRequest request) {
+        if (isDeepPage(request))
+            return searchDeepPageAsync(request);
+
+        TimeValue timeout = ES_CONTROLLER_SEARCH_TIMEOUT.getValue(request.getIndex());
+        SearchRequestBuilder searchRequestBuilder = null;
+
+        try {
+            if (request.getSize() != 0 && !isEmpty(request.getFacets()) && parseBoolean(ES_FACET_SPLIT.getValue(request.getIndex()))) {
+                final SearchRequestBuilder hitsRequestBuilder = searchRequestBuilder = this.queryAdapter.queryHits(request);
+                final SearchRequestBuilder facetsRequestBuilder = this.queryAdapter.queryFacets(request);
+                return withSearchErrors(execute(esClient.prepareMultiSearch().add(hitsRequestBuilder).add(facetsRequestBuilder), timeout)
+                    .thenApply(response -> hitsAndFacets(request, response.getResponses(), hitsRequestBuilder, facetsRequestBuilder)), hitsRequestBuilder);
+            }
+
+            final SearchRequestBuilder queryRequestBuilder = searchRequestBuilder = this.queryAdapter.query(request);
+            return withSearchErrors(execute(queryRequestBuilder, timeout)
+                .thenApply(response -> viewportTileAdapter.trim(request, checkTimeout(response, queryRequestBuilder))), queryRequestBuilder);
+        } catch (Exception e) {
+            return failedFuture(searchError(e, searchRequestBuilder));
+        }
+    }
+
+    /**
+     * Sends the request and fails the response with the error of a blocking <code>get(timeout)</code> when it doesn't
+     * respond in time
+     */
+    private static <Response extends ActionResponse> CompletableFuture<Response> execute(ActionRequestBuilder<?, Response, ?> requestBuilder, TimeValue timeout) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        if (timeout != null) {
+            ScheduledFuture<?> timer = TIMEOUTS.schedule(() -> response.completeExceptionally(new ElasticsearchTimeoutException("Timeout waiting for task.")), timeout.millis(), MILLISECONDS);
+            response.whenComplete((r, e) -> timer.cancel(false));
+        }
+        requestBuilder.execute(ActionListener.wrap(response::complete, response::completeExceptionally));
+        return response;
+    }
+
+    private static <T> CompletableFuture<T> withSearchErrors(CompletableFuture<T> response, SearchRequestBuilder searchRequestBuilder) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        response.whenComplete((r, e) -> {
+            if (e == null)
+                result.complete(r);
+            else
+                result.completeExceptionally(searchError(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e, searchRequestBuilder));
+        });
+        return result;
+    }
+
+    /**
+     * @return the search error for the failure, as a bad request when caused by an invalid argument
+     */
+    private static Throwable searchError(Throwable e, SearchRequestBuilder searchRequestBuilder) {
+        if (getRootCause(e) instanceof IllegalArgumentException)
+            return new IllegalArgumentException(e);
+        if (e instanceof ElasticsearchException)
+            return new QueryPhaseExecutionException(ofNullable(searchRequestBuilder).map(SearchRequestBuilder::toString).orElse("{}"), e);
+        return e;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Builds every request and searches them in a single multi search.
+     *
+     * @return the response of each request (in the same order) or the exception that failed it, so one bad request
+     * doesn't fail the others
+     */
+    @Trace
+    public List<Object> multiSearch(List<SearchApiRequest> requests) {
+        Integer maxRequests = ES_MSEARCH_MAX_REQUESTS.getValue(DEFAULT_INDEX);
+        if (requests.isEmpty() || (maxRequests != null && requests.size() > maxRequests))
+            throw new IllegalArgumentException(maxRequests == null ? "The multi search must have at least 1 request" : format("The multi search must have from 1 to %d requests", maxRequests));
+
+        List<Object> responses = new ArrayList<>(nCopies(requests.size(), null));
+        List<Integer> positions = new ArrayList<>(requests.size());
+        List<SearchRequestBuilder> searchRequestBuilders = new ArrayList<>(requests.size());
+        MultiSearchRequestBuilder multiSearchRequestBuilder = esClient.prepareMultiSearch();
+        TimeValue timeout = null;
+
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                SearchRequestBuilder searchRequestBuilder = this.queryAdapter.query(requests.get(i));
+                multiSearchRequestBuilder.add(searchRequestBuilder);
+                searchRequestBuilders.add(searchRequestBuilder);
+                positions.add(i);
+
+                TimeValue requestTimeout = ES_CONTROLLER_SEARCH_TIMEOUT.getValue(requests.get(i).getIndex());
+                if (timeout == null || requestTimeout.compareTo(timeout) > 0)
+                    timeout = requestTimeout;
+            } catch (Exception e) {
+                responses.set(i, getRootCause(e) instanceof IllegalArgumentException ? new IllegalArgumentException(e) : e);
+            }
+        }
+
+        if (positions.isEmpty())
+            return responses;
+
+        try {
+            MultiSearchResponse.Item[] items = multiSearchRequestBuilder.get(timeout).getResponses();
+            for (int i = 0; i < items.length; i++) {
+                int position = positions.get(i);
+                try {
+                    responses.set(position, viewportTileAdapter.trim(requests.get(position), checkResponse(items[i], searchRequestBuilders.get(i))));
+                } catch (RuntimeException e) {
+                    responses.set(position, e);
+                }
+            }
+            return responses;
+        } catch (ElasticsearchException e) {
+            throw new QueryPhaseExecutionException(e);
+        }
+    }
+
+    private static SearchResponse checkResponse(final MultiSearchResponse.Item item, final SearchRequestBuilder searchRequestBuilder) {
+        if (item.isFailure()) {
+            if (getRootCause(item.getFailure()) instanceof IllegalArgumentException)
+                throw new IllegalArgumentException(item.getFailure());
+            throw new QueryPhaseExecutionException(searchRequestBuilder.toString(), item.getFailure());
+        }
+
+        if (item.getResponse().isTimedOut())
+            throw new QueryTimeoutException(searchRequestBuilder.toString());
+
+        return item.getResponse();
+    }
+
+    /**
+     * @return the hits response with the facets (aggregations) of the facets response, if any
+     */
+    private static SearchResponse merge(final SearchResponse hits, final SearchResponse facets) {
+        InternalSearchResponse sections = new InternalSearchResponse(hits.getHits(), facets == null ? null : (InternalAggregations) facets.getAggregations(),
+            hits.getSuggest(), null, hits.isTimedOut(), hits.isTerminatedEarly(), hits.getNumReducePhases());
+        return new SearchResponse(sections, hits.getScrollId(), hits.getTotalShards(), hits.getSuccessfulShards(), hits.getSkippedShards(),
+            facets == null ? hits.getTookInMillis() : max(hits.getTookInMillis(), facets.getTookInMillis()), hits.getShardFailures());
+    }
+
     public void stream(FilterableApiRequest request, OutputStream stream) {
         elasticSearch.stream(request, stream);
     }
@@ -5,6 +5,7 @@ import org.springframework.context.annotation.ComponentScan;
 
 @SpringBootConfiguration
 @ComponentScan(basePackages = {"com.vivareal.search.api.adapter",
+        "com.vivareal.search.api.cache",
         "com.vivareal.search.api.controller",
         "com.vivareal.search.api.service"})
 public class SearchApiTest {
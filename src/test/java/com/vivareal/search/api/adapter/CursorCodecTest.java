@@ -0,0 +1,59 @@
+package com.vivareal.search.api.adapter;
+
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static com.vivareal.search.api.adapter.CursorCodec.decode;
+import static com.vivareal.search.api.adapter.CursorCodec.encode;
+import static com.vivareal.search.api.adapter.CursorCodec.fingerprint;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DEFAULT_SORT;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static org.junit.Assert.*;
+
+public class CursorCodecTest {
+
+    @Test
+    public void shouldDecodeTheTypedSortValues() {
+        Object[] sortValues = {Long.MIN_VALUE, 42, -0.5, 1.5f, "a_b%5f#ç", true, null};
+        String cursorId = encode(7, sortValues);
+
+        assertTrue(cursorId.matches("[A-Za-z0-9_-]+"));
+        assertArrayEquals(new Object[]{Long.MIN_VALUE, 42L, -0.5, 1.5, "a_b%5f#ç", true, null}, decode(7, cursorId));
+    }
+
+    @Test
+    public void shouldFingerprintTheDefaultSortWhenNotRequested() {
+        ES_DEFAULT_SORT.setValue(INDEX_NAME, "id ASC");
+
+        assertEquals(fingerprint(INDEX_NAME, "id ASC"), fingerprint(INDEX_NAME, null));
+        assertNotEquals(fingerprint(INDEX_NAME, "id ASC"), fingerprint(INDEX_NAME, "id DESC"));
+    }
+
+    @Test
+    public void shouldRejectInvalidCursors() {
+        String cursorId = encode(7, new Object[]{1L, "a"});
+        byte[] bytes = Base64.getUrlDecoder().decode(cursorId);
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[0] = CursorCodec.VERSION + 1;
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        for (String invalid : new String[]{"", "5_testdata#5", cursorId + "AA", Base64.getUrlEncoder().encodeToString(otherVersion), Base64.getUrlEncoder().encodeToString(truncated)}) {
+            try {
+                decode(7, invalid);
+                fail("Cursor should be rejected: " + invalid);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("Invalid cursorId"));
+            }
+        }
+
+        try {
+            decode(8, cursorId);
+            fail("Cursor of another sort should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid cursorId: it was created for another sort", e.getMessage());
+        }
+    }
+}
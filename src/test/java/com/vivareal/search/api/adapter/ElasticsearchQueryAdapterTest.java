@@ -1,16 +1,26 @@
 package com.vivareal.search.api.adapter;
 
 import com.google.common.collect.Sets;
+import com.vivareal.search.api.cache.FacetPlanCache;
+import com.vivareal.search.api.cache.FilterQueryCache;
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.cache.QueryStringPlanCache;
+import com.vivareal.search.api.cache.SearchTemplateCache;
+import com.vivareal.search.api.cache.SourceFieldsCache;
 import com.vivareal.search.api.model.http.BaseApiRequest;
 import com.vivareal.search.api.model.http.SearchApiRequest;
 import com.vivareal.search.api.model.mapping.MappingType;
 import org.assertj.core.util.Lists;
 import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.junit.After;
@@ -26,16 +36,25 @@ import static com.google.common.collect.Sets.newHashSet;
 import static com.vivareal.search.api.adapter.ElasticsearchSettingsAdapter.SHARDS;
 import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
 import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.create;
 import static com.vivareal.search.api.model.mapping.MappingType.*;
 import static com.vivareal.search.api.model.query.LogicalOperator.AND;
 import static com.vivareal.search.api.model.query.RelationalOperator.*;
 import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 import static java.util.stream.Stream.concat;
 import static java.util.stream.Stream.of;
 import static org.elasticsearch.index.query.Operator.OR;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -45,7 +64,7 @@ import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
 
-    private QueryAdapter<GetRequestBuilder, SearchRequestBuilder> queryAdapter;
+    private QueryAdapter<GetRequestBuilder, SearchRequestBuilder, MultiGetRequestBuilder> queryAdapter;
 
     @Mock
     private ElasticsearchSettingsAdapter settingsAdapter;
@@ -68,16 +87,20 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         ES_QUERY_TIMEOUT_UNIT.setValue(INDEX_NAME, "MILLISECONDS");
         ES_DEFAULT_SIZE.setValue(INDEX_NAME, "20");
         ES_MAX_SIZE.setValue(INDEX_NAME, "200");
+        ES_MGET_MAX_IDS.setValue(INDEX_NAME, "500");
+        ES_DEEP_PAGE_FROM.setValue(INDEX_NAME, "1000");
+        ES_DEEP_PAGE_CHECKPOINTS.setValue(INDEX_NAME, "true");
         ES_FACET_SIZE.setValue(INDEX_NAME, "20");
         ES_MAPPING_META_FIELDS_ID.setValue(INDEX_NAME, "id");
 
         ESClient esClient = new ESClient(transportClient);
-        SourceFieldAdapter sourceFieldAdapter = new SourceFieldAdapter(settingsAdapter);
+        SourceFieldAdapter sourceFieldAdapter = new SourceFieldAdapter(settingsAdapter, new SourceFieldsCache(new IndexCacheRegistry()));
+        QueryFragmentCache queryFragmentCache = new QueryFragmentCache(new IndexCacheRegistry());
 
         when(settingsAdapter.getFetchSourceIncludeFields(any())).thenCallRealMethod();
         when(settingsAdapter.getFetchSourceExcludeFields(any(), any())).thenCallRealMethod();
 
-        this.queryAdapter = new ElasticsearchQueryAdapter(esClient, settingsAdapter, sourceFieldAdapter, searchAfterQueryAdapter, sortQueryAdapter);
+        this.queryAdapter = new ElasticsearchQueryAdapter(esClient, settingsAdapter, sourceFieldAdapter, searchAfterQueryAdapter, sortQueryAdapter, queryFragmentCache, new FilterQueryCache(new IndexCacheRegistry()), new SearchTemplateCache(new IndexCacheRegistry()), new ViewportTileAdapter(settingsAdapter, queryFragmentCache), new QueryStringPlanCache(new IndexCacheRegistry()), new FacetPlanCache(new IndexCacheRegistry()));
 
         Map<String, String[]> defaultSourceFields = new HashMap<>();
         defaultSourceFields.put(INDEX_NAME, new String[0]);
@@ -153,6 +176,83 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         );
     }
 
+    @Test
+    public void shouldReturnMultiGetRequestBuilderByIds() {
+        List<String> ids = asList("3", "1", "2");
+
+        newArrayList(basicRequest, filterableRequest, fullRequest).parallelStream().forEach(
+            request -> {
+                BaseApiRequest searchApiRequest = request.build();
+                MultiGetRequest multiGetRequest = queryAdapter.getByIds(searchApiRequest, ids).request();
+
+                assertFalse(multiGetRequest.realtime());
+                assertEquals(ids, multiGetRequest.getItems().stream().map(MultiGetRequest.Item::id).collect(toList()));
+                multiGetRequest.getItems().forEach(item -> {
+                    assertEquals(searchApiRequest.getIndex(), item.index());
+                    assertEquals(searchApiRequest.getIndex(), item.type());
+                });
+            }
+        );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMultiGetWithoutIds() {
+        queryAdapter.getByIds(basicRequest.build(), emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMultiGetWithMoreIdsThanTheMax() {
+        ES_MGET_MAX_IDS.setValue(INDEX_NAME, "2");
+        queryAdapter.getByIds(basicRequest.build(), asList("1", "2", "3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSortedDeepPageWithoutCursorWhenCheckpointsAreDisabled() {
+        ES_DEEP_PAGE_CHECKPOINTS.setValue(INDEX_NAME, "false");
+        queryAdapter.query(create().index(INDEX_NAME).sort("id ASC").from(1000).size(10).build());
+    }
+
+    @Test
+    public void shouldKeepFromAndSizeForSortedDeepPageWhenDeepPagesAreDisabled() {
+        ES_DEEP_PAGE_FROM.setValue(INDEX_NAME, "0");
+        ES_DEEP_PAGE_CHECKPOINTS.setValue(INDEX_NAME, "false");
+        SearchSourceBuilder source = queryAdapter.query(create().index(INDEX_NAME).sort("id ASC").from(1000).size(10).build()).request().source();
+
+        assertEquals(1000, source.from());
+        assertEquals(10, source.size());
+    }
+
+    @Test
+    public void shouldKeepFromAndSizeForUnsortedDeepPage() {
+        ES_DEEP_PAGE_CHECKPOINTS.setValue(INDEX_NAME, "false");
+        SearchSourceBuilder source = queryAdapter.query(create().index(INDEX_NAME).sort("").from(1000).size(10).build()).request().source();
+
+        assertEquals(1000, source.from());
+        assertEquals(10, source.size());
+    }
+
+    @Test
+    public void shouldKeepFromAndSizeForSortedDeepPageNotServedByCheckpoints() {
+        ES_DEEP_PAGE_CHECKPOINTS.setValue(INDEX_NAME, "true");
+        SearchSourceBuilder source = queryAdapter.query(create().index(INDEX_NAME).sort("id ASC").from(1000).size(10).build()).request().source();
+
+        assertEquals(1000, source.from());
+        assertEquals(10, source.size());
+    }
+
+    @Test
+    public void shouldAcceptPageBelowTheDeepPageFrom() {
+        SearchSourceBuilder source = queryAdapter.query(fullRequest.from(990).size(10).build()).request().source();
+
+        assertEquals(990, source.from());
+        assertEquals(10, source.size());
+    }
+
+    @Test
+    public void shouldNotRejectDeepFacetsSection() {
+        assertEquals(0, queryAdapter.queryFacets(fullRequest.from(1000).facetSize(10).build()).request().source().size());
+    }
+
     @Test
     public void shouldApplyTimeoutOnQueryBody() {
         SearchApiRequest request = fullRequest.build();
@@ -171,6 +271,75 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         assertEquals(request.getSize(), source.size());
     }
 
+    @Test
+    public void shouldReuseSearchTemplateKeepingRequestPagination() {
+        SEARCH_TEMPLATE_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        try {
+            SearchSourceBuilder first = queryAdapter.query(fullRequest.filter("a:1").from(0).size(10).build()).request().source();
+            SearchSourceBuilder second = queryAdapter.query(fullRequest.filter("a:1").from(20).size(5).build()).request().source();
+
+            assertSame(first.query(), second.query());
+            assertEquals(0, first.from());
+            assertEquals(10, first.size());
+            assertEquals(20, second.from());
+            assertEquals(5, second.size());
+        } finally {
+            SEARCH_TEMPLATE_CACHE_SIZE.setValue(INDEX_NAME, "0");
+        }
+    }
+
+    @Test
+    public void shouldOptimizeFilterQueryWithConfiguredRules() {
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "a", FIELD_TYPE_KEYWORD)).thenReturn(true);
+        FILTER_OPTIMIZER.setValue(INDEX_NAME, "flatten,terms,dedupe");
+        try {
+            BoolQueryBuilder query = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("(a:1 OR a:2 OR a:3) AND ((b:1)) AND b:1").build()).request().source().query();
+
+            assertEquals(2, query.filter().size());
+            assertEquals(termsQuery("a", asList(1, 2, 3)), query.filter().get(0));
+            assertEquals(matchQuery("b", 1), query.filter().get(1));
+        } finally {
+            FILTER_OPTIMIZER.setValue(INDEX_NAME, "");
+        }
+    }
+
+    @Test
+    public void shouldKeepTheFilterClausesOfThePreFilteredQuery() {
+        FilterQueryCache filterQueryCache = mock(FilterQueryCache.class);
+        when(filterQueryCache.get(anyString(), anyString(), anyLong(), any())).thenReturn(boolQuery().filter(termsQuery("a", asList(1, 2))).must(matchQuery("b", 1)));
+        setField(queryAdapter, "filterQueryCache", filterQueryCache);
+
+        BoolQueryBuilder query = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("a:1 OR a:2 AND b:1").build()).request().source().query();
+
+        assertEquals(2, query.filter().size());
+        assertEquals(termsQuery("a", asList(1, 2)), query.filter().get(0));
+        assertEquals(matchQuery("b", 1), query.filter().get(1));
+    }
+
+    @Test
+    public void shouldKeepOnlyScoringFilterClausesOnMustWhenThereIsQueryString() {
+        BoolQueryBuilder withoutQ = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("a:1 AND b > 2").build()).request().source().query();
+        assertTrue(withoutQ.must().isEmpty());
+        assertThat(withoutQ.filter().get(0), instanceOf(MatchQueryBuilder.class));
+        assertThat(withoutQ.filter().get(1), instanceOf(RangeQueryBuilder.class));
+
+        BoolQueryBuilder withQ = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("a:1 AND b > 2").q("text").build()).request().source().query();
+        assertThat(withQ.should().get(0), instanceOf(QueryStringQueryBuilder.class));
+        assertEquals(1, withQ.must().size());
+        assertThat(withQ.must().get(0), instanceOf(MatchQueryBuilder.class));
+        assertEquals(1, withQ.filter().size());
+        assertThat(withQ.filter().get(0), instanceOf(RangeQueryBuilder.class));
+    }
+
+    @Test
+    public void shouldKeepGroupsMixingAndWithOrOnMust() {
+        BoolQueryBuilder query = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("a:1 AND (b:1 OR c:1 AND d:1)").build()).request().source().query();
+
+        assertEquals(1, query.filter().size());
+        assertEquals(1, query.must().size());
+        assertThat(query.must().get(0), instanceOf(BoolQueryBuilder.class));
+    }
+
     @Test
     public void shouldReturnSearchRequestBuilderWithSimpleNestedObject() {
         final String field = "nested.field";
@@ -182,7 +351,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             request -> {
                 SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, EQUAL.name())).build());
 
-                NestedQueryBuilder nestedQueryBuilder = (NestedQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                NestedQueryBuilder nestedQueryBuilder = (NestedQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
                 assertNotNull(nestedQueryBuilder);
                 assertTrue(nestedQueryBuilder.toString().contains("\"path\" : \"" + field.split("\\.")[0] + "\""));
 
@@ -222,7 +391,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, op)).build());
-                    MatchQueryBuilder must = (MatchQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    MatchQueryBuilder must = (MatchQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertNotNull(must);
                     assertEquals(field, must.fieldName());
@@ -255,7 +424,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter("(x1:1 OR y1:1) AND (x1:2 OR y2:2)").build());
-                    List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must();
+                    List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter();
 
                     assertNotNull(must);
                     assertEquals(2, must.size());
@@ -296,7 +465,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, op)).build());
-                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertEquals(field, range.fieldName());
                     assertEquals(value, range.from());
@@ -317,7 +486,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, op)).build());
-                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertEquals(field, range.fieldName());
                     assertEquals(value, range.from());
@@ -338,7 +507,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, op)).build());
-                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertEquals(field, range.fieldName());
                     assertEquals(value, range.to());
@@ -359,7 +528,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, op)).build());
-                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    RangeQueryBuilder range = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertEquals(field, range.fieldName());
                     assertEquals(value, range.to());
@@ -388,7 +557,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("%s %s [[%s,%s],[%s,%s]]", field, op, northEastLon, northEastLat, southWestLon, southWestLat)).build());
-                    GeoBoundingBoxQueryBuilder geoBoundingBoxQueryBuilder = (GeoBoundingBoxQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    GeoBoundingBoxQueryBuilder geoBoundingBoxQueryBuilder = (GeoBoundingBoxQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     int delta = 0;
                     assertNotNull(geoBoundingBoxQueryBuilder);
@@ -402,6 +571,46 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         );
     }
 
+    @Test
+    public void shouldSearchViewportByCoveringTilesWhenConfigured() {
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "field.location", MappingType.FIELD_TYPE_GEOPOINT)).thenReturn(true);
+        VIEWPORT_TILE_ZOOM.setValue(INDEX_NAME, "1");
+        try {
+            SearchRequestBuilder tiled = queryAdapter.query(fullRequest.filter("field.location VIEWPORT [[20.0,20.0],[10.0,10.0]] AND a:1").build());
+            GeoBoundingBoxQueryBuilder tiles = (GeoBoundingBoxQueryBuilder) ((BoolQueryBuilder) tiled.request().source().query()).filter().get(0);
+
+            assertEquals(new GeoPoint(90, 0), tiles.topLeft());
+            assertEquals(new GeoPoint(0, 180), tiles.bottomRight());
+            assertTrue(tiled.request().requestCache());
+            assertEquals(singletonList("field.location"), tiled.request().source().docValueFields());
+
+            SearchRequestBuilder exact = queryAdapter.query(fullRequest.filter("field.location VIEWPORT [[20.0,20.0],[10.0,10.0]] OR a:1").build());
+            GeoBoundingBoxQueryBuilder viewport = (GeoBoundingBoxQueryBuilder) ((BoolQueryBuilder) exact.request().source().query()).should().get(0);
+
+            assertEquals(new GeoPoint(20, 10), viewport.topLeft());
+            assertNull(exact.request().requestCache());
+        } finally {
+            VIEWPORT_TILE_ZOOM.setValue(INDEX_NAME, "0");
+        }
+    }
+
+    @Test
+    public void shouldSimplifyPolygonAndConjoinBoundingBoxWhenConfigured() {
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "field.location", MappingType.FIELD_TYPE_GEOPOINT)).thenReturn(true);
+        POLYGON_SIMPLIFY_TOLERANCE.setValue(INDEX_NAME, "10");
+        POLYGON_BOUNDING_BOX.setValue(INDEX_NAME, "true");
+        try {
+            BoolQueryBuilder query = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("field.location POLYGON [[1,1],[1.5,1.0000001],[2,1],[2,2],[1,2]]").build()).request().source().query();
+            BoolQueryBuilder polygonQuery = (BoolQueryBuilder) query.filter().get(0);
+
+            assertThat(polygonQuery.filter().get(0), instanceOf(GeoBoundingBoxQueryBuilder.class));
+            assertEquals(5, ((GeoPolygonQueryBuilder) polygonQuery.filter().get(1)).points().size());
+        } finally {
+            POLYGON_SIMPLIFY_TOLERANCE.setValue(INDEX_NAME, "0");
+            POLYGON_BOUNDING_BOX.setValue(INDEX_NAME, "false");
+        }
+    }
+
     @Test
     public void shouldReturnSearchRequestBuilderByPolygon() {
 
@@ -413,7 +622,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(query).build());
-                    GeoPolygonQueryBuilder polygon = (GeoPolygonQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    GeoPolygonQueryBuilder polygon = (GeoPolygonQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertNotNull(polygon);
                     assertFalse(polygon.ignoreUnmapped());
@@ -445,7 +654,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(format(field, value, op)).build());
-                    WildcardQueryBuilder wildcardQueryBuilder = (WildcardQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    WildcardQueryBuilder wildcardQueryBuilder = (WildcardQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertNotNull(wildcardQueryBuilder);
                     assertEquals(field, wildcardQueryBuilder.fieldName());
@@ -455,6 +664,31 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         );
     }
 
+    @Test
+    public void shouldSearchLeadingWildcardLikeOnReverseSubfield() {
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "field1", FIELD_TYPE_KEYWORD)).thenReturn(true);
+        when(settingsAdapter.checkFieldName(INDEX_NAME, "field1.reverse", false)).thenReturn(true);
+        LIKE_REVERSE_SUBFIELD.setValue(INDEX_NAME, "reverse");
+        try {
+            BoolQueryBuilder query = (BoolQueryBuilder) queryAdapter.query(fullRequest.filter("field1 LIKE '%abc'").build()).request().source().query();
+
+            assertEquals(prefixQuery("field1.reverse", "cba"), query.filter().get(0));
+        } finally {
+            LIKE_REVERSE_SUBFIELD.setValue(INDEX_NAME, "");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectLeadingWildcardLikeWhenConfigured() {
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "field1", FIELD_TYPE_KEYWORD)).thenReturn(true);
+        LIKE_LEADING_WILDCARD.setValue(INDEX_NAME, "reject");
+        try {
+            queryAdapter.query(fullRequest.filter("field1 LIKE '%abc'").build());
+        } finally {
+            LIKE_LEADING_WILDCARD.setValue(INDEX_NAME, "allow");
+        }
+    }
+
     @Test
     public void shouldReturnSearchRequestBuilderWithSingleFilterWithRange() {
         final String field = "field";
@@ -464,7 +698,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("%s %s [%d,%d]", field, op, from, to)).build());
-                    RangeQueryBuilder rangeQueryBuilder = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    RangeQueryBuilder rangeQueryBuilder = (RangeQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertNotNull(rangeQueryBuilder);
                     assertEquals(field, rangeQueryBuilder.fieldName());
@@ -508,7 +742,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("%s %s %s", field, op, Arrays.toString(values))).build());
-                    TermsQueryBuilder terms = (TermsQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    TermsQueryBuilder terms = (TermsQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertEquals(field, terms.fieldName());
                     assertTrue(asList(stream(values).map(value -> {
@@ -534,7 +768,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             op -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("%s %s %s", field, op, Arrays.toString(values.toArray()))).build());
-                    IdsQueryBuilder idsQueryBuilder = (IdsQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must().get(0);
+                    IdsQueryBuilder idsQueryBuilder = (IdsQueryBuilder) ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter().get(0);
 
                     assertEquals("ids", idsQueryBuilder.getName());
                     assertEquals(values.stream().map(value -> value.toString().replaceAll("\"", "")).collect(toSet()), idsQueryBuilder.ids());
@@ -554,7 +788,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
             request -> {
                 SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("%s:\"%s\" AND %s:%s", fieldName1, fieldValue1, fieldName2, fieldValue2)).build());
-                List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must();
+                List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter();
 
                 assertNotNull(must);
                 assertTrue(must.size() == 2);
@@ -617,7 +851,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             nullValue -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("NOT %s:%s", fieldName, nullValue)).build());
-                    List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must();
+                    List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter();
 
                     ExistsQueryBuilder existsQueryBuilder = (ExistsQueryBuilder) must.get(0);
                     assertNotNull(existsQueryBuilder);
@@ -636,7 +870,7 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
             nullValue -> newArrayList(filterableRequest, fullRequest).parallelStream().forEach(
                 request -> {
                     SearchRequestBuilder searchRequestBuilder = queryAdapter.query(request.filter(String.format("%s<>%s", fieldName, nullValue)).build());
-                    List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).must();
+                    List<QueryBuilder> must = ((BoolQueryBuilder) searchRequestBuilder.request().source().query()).filter();
 
                     ExistsQueryBuilder existsQueryBuilder = (ExistsQueryBuilder) must.get(0);
                     assertNotNull(existsQueryBuilder);
@@ -697,10 +931,102 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         assertTrue(aggregations.size() == 5);
 
         assertTrue(searchRequestBuilder.toString().contains("\"size\" : 10"));
-        assertTrue(searchRequestBuilder.toString().contains("\"shard_size\" : 8"));
+        assertTrue(searchRequestBuilder.toString().contains("\"shard_size\" : 25"));
         assertTrue(facets.stream().map(s -> s.split("\\.")[0]).collect(toSet()).containsAll(aggregations.stream().map(AggregationBuilder::getName).collect(toSet())));
     }
 
+    @Test
+    public void shouldCompileFacetsWithShardSizeAndExecutionHintByCardinality() {
+        ES_FACET_CARDINALITY.setValue(INDEX_NAME, "field1:5,field2:100000");
+        ES_FACET_MAP_CARDINALITY.setValue(INDEX_NAME, "50000");
+        FACET_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        try {
+            SearchRequestBuilder first = queryAdapter.query(fullRequest.facets(newHashSet("field1", "field2", "field3")).facetSize(10).build());
+            SearchRequestBuilder second = queryAdapter.query(fullRequest.facets(newHashSet("field1", "field2", "field3")).facetSize(10).filter("a:1").build());
+
+            Map<String, TermsAggregationBuilder> aggregations = first.request().source().aggregations().getAggregatorFactories().stream()
+                .collect(toMap(AggregationBuilder::getName, TermsAggregationBuilder.class::cast));
+            String source = first.request().source().toString().replaceAll("\\s", "");
+
+            assertTrue(source.contains("\"field1\":{\"terms\":{\"field\":\"field1\",\"size\":10,\"shard_size\":10,"));
+            assertEquals("global_ordinals", aggregations.get("field1").executionHint());
+            assertTrue(source.contains("\"field2\":{\"terms\":{\"field\":\"field2\",\"size\":10,\"shard_size\":25,"));
+            assertEquals("map", aggregations.get("field2").executionHint());
+            assertTrue(source.contains("\"field3\":{\"terms\":{\"field\":\"field3\",\"size\":10,\"shard_size\":25,"));
+            assertNull(aggregations.get("field3").executionHint());
+
+            assertEquals(first.request().source().aggregations().getAggregatorFactories(), second.request().source().aggregations().getAggregatorFactories());
+            verify(settingsAdapter, times(1)).settingsByKey(INDEX_NAME, SHARDS);
+        } finally {
+            ES_FACET_CARDINALITY.setValue(INDEX_NAME, "");
+            ES_FACET_MAP_CARDINALITY.setValue(INDEX_NAME, "0");
+            FACET_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "0");
+        }
+    }
+
+    @Test
+    public void shouldIgnoreInvalidFacetCardinalityEntries() {
+        ES_FACET_CARDINALITY.setValue(INDEX_NAME, "field1,field2:many,field3:5");
+        try {
+            SearchRequestBuilder searchRequestBuilder = queryAdapter.query(fullRequest.facets(newHashSet("field1", "field2", "field3")).facetSize(10).build());
+
+            Map<String, TermsAggregationBuilder> aggregations = searchRequestBuilder.request().source().aggregations().getAggregatorFactories().stream()
+                .collect(toMap(AggregationBuilder::getName, TermsAggregationBuilder.class::cast));
+
+            assertNull(aggregations.get("field1").executionHint());
+            assertNull(aggregations.get("field2").executionHint());
+            assertEquals("global_ordinals", aggregations.get("field3").executionHint());
+        } finally {
+            ES_FACET_CARDINALITY.setValue(INDEX_NAME, "");
+        }
+    }
+
+    @Test
+    public void shouldBuildFacetsOnlyRequestThroughTheRequestCache() {
+        SearchRequestBuilder first = queryAdapter.query(fullRequest.filter("a:1").facets(Sets.newLinkedHashSet(asList("field1", "field2"))).facetSize(10).from(10).size(0).build());
+        SearchRequestBuilder second = queryAdapter.query(fullRequest.filter("a:1").facets(Sets.newLinkedHashSet(asList("field2", "field1"))).facetSize(10).from(0).size(0).build());
+
+        SearchSourceBuilder source = first.request().source();
+        assertTrue(first.request().requestCache());
+        assertEquals(0, source.from());
+        assertEquals(0, source.size());
+        assertNull(source.fetchSource());
+        assertNull(source.sorts());
+        assertEquals(2, source.aggregations().getAggregatorFactories().size());
+        verify(sortQueryAdapter, never()).apply(any(), any());
+        verify(searchAfterQueryAdapter, never()).apply(any(), any());
+
+        assertEquals(source.toString(), second.request().source().toString());
+    }
+
+    @Test
+    public void shouldSplitHitsAndFacetsSharingTheFacetsAcrossPages() {
+        SEARCH_TEMPLATE_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        ES_FACET_TIMEOUT_VALUE.setValue(INDEX_NAME, "500");
+        try {
+            SearchRequestBuilder hits = queryAdapter.queryHits(fullRequest.filter("a:1").facets(newHashSet("field1")).facetSize(10).from(20).size(10).build());
+            SearchRequestBuilder firstPageFacets = queryAdapter.queryFacets(fullRequest.filter("a:1").facets(newHashSet("field1")).facetSize(10).from(0).size(10).build());
+            SearchRequestBuilder secondPageFacets = queryAdapter.queryFacets(fullRequest.filter("a:1").facets(newHashSet("field1")).facetSize(10).from(20).size(10).cursorId("1_a").build());
+
+            assertNull(hits.request().source().aggregations());
+            assertEquals(20, hits.request().source().from());
+            assertEquals(10, hits.request().source().size());
+            assertEquals(new TimeValue(100, TimeUnit.MILLISECONDS), hits.request().source().timeout());
+
+            SearchSourceBuilder facets = secondPageFacets.request().source();
+            assertTrue(secondPageFacets.request().requestCache());
+            assertEquals(0, facets.from());
+            assertEquals(0, facets.size());
+            assertEquals(1, facets.aggregations().getAggregatorFactories().size());
+            assertEquals(new TimeValue(500, TimeUnit.MILLISECONDS), facets.timeout());
+            assertSame(firstPageFacets.request().source().query(), facets.query());
+            verify(searchAfterQueryAdapter, times(1)).apply(any(), any());
+        } finally {
+            SEARCH_TEMPLATE_CACHE_SIZE.setValue(INDEX_NAME, "0");
+            ES_FACET_TIMEOUT_VALUE.setValue(INDEX_NAME, "0");
+        }
+    }
+
     @Test
     public void shouldReturnSearchRequestBuilderWithSpecifiedFieldSources() {
         Set<String> includeFields = newHashSet("field1", "field2", "field3");
@@ -771,6 +1097,36 @@ public class ElasticsearchQueryAdapterTest extends SearchTransportClientMock {
         );
     }
 
+    @Test
+    public void shouldCompileQueryStringFieldsOnceByIndexAndMappingVersion() {
+        Set<String> fields = newHashSet("cached.field:2", "other");
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "cached", FIELD_TYPE_NESTED)).thenReturn(true);
+        when(settingsAdapter.isTypeOf(INDEX_NAME, "other", FIELD_TYPE_STRING)).thenReturn(true);
+        when(settingsAdapter.mappingVersion(INDEX_NAME)).thenReturn(1L);
+        QS_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        try {
+            BoolQueryBuilder first = (BoolQueryBuilder) queryAdapter.query(filterableRequest.q("first").fields(fields).build()).request().source().query();
+            BoolQueryBuilder second = (BoolQueryBuilder) queryAdapter.query(filterableRequest.q("second").fields(fields).build()).request().source().query();
+
+            verify(settingsAdapter, times(1)).isTypeOf(INDEX_NAME, "cached", FIELD_TYPE_NESTED);
+            assertEquals(2, second.should().size());
+
+            QueryStringQueryBuilder nested = (QueryStringQueryBuilder) ((NestedQueryBuilder) second.should().stream().filter(NestedQueryBuilder.class::isInstance).findFirst().get()).query();
+            assertEquals("second", nested.queryString());
+            assertEquals(singletonMap("cached.field", 2.0f), nested.fields());
+
+            QueryStringQueryBuilder notNested = (QueryStringQueryBuilder) second.should().stream().filter(QueryStringQueryBuilder.class::isInstance).findFirst().get();
+            assertEquals(singletonMap("other.raw", 1.0f), notNested.fields());
+            assertEquals(first.should().size(), second.should().size());
+
+            when(settingsAdapter.mappingVersion(INDEX_NAME)).thenReturn(2L);
+            queryAdapter.query(filterableRequest.q("third").fields(fields).build());
+            verify(settingsAdapter, times(2)).isTypeOf(INDEX_NAME, "cached", FIELD_TYPE_NESTED);
+        } finally {
+            QS_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "0");
+        }
+    }
+
     @Test
     public void shouldReturnSearchRequestBuilderByQueryStringWithValidMinimalShouldMatch() {
         String q = "Lorem Ipsum is simply dummy text of the printing and typesetting";
@@ -0,0 +1,247 @@
+package com.vivareal.search.api.adapter;
+
+import org.elasticsearch.index.query.*;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static com.vivareal.search.api.adapter.FilterQueryOptimizer.*;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.*;
+
+public class FilterQueryOptimizerTest {
+
+    private static final Set<String> SAFE_RULES = newHashSet(FLATTEN, TERMS, DEDUPE);
+    private static final Set<String> ALL_RULES = newHashSet(FLATTEN, TERMS, DEDUPE, RANGES);
+
+    private static final String[] FIELDS = {"a", "b", "c"};
+    private static final Predicate<String> EXACT_FIELDS = field -> !"c".equals(field);
+
+    @Test
+    public void shouldFlattenSingleClauseGroups() {
+        BoolQueryBuilder query = boolQuery().must(boolQuery().must(boolQuery().should(matchQuery("a", 1))));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(boolQuery().must(matchQuery("a", 1)), query);
+    }
+
+    @Test
+    public void shouldMoveAndGroupsToParent() {
+        BoolQueryBuilder query = boolQuery().must(matchQuery("a", 1)).must(boolQuery().must(matchQuery("b", 2)).mustNot(matchQuery("c", 3))).should(matchQuery("c", 4));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(boolQuery().must(matchQuery("a", 1)).must(matchQuery("b", 2)).mustNot(matchQuery("c", 3)).should(matchQuery("c", 4)), query);
+    }
+
+    @Test
+    public void shouldNotMoveTheOnlyRequiredGroupWhenThereAreShouldClauses() {
+        BoolQueryBuilder query = boolQuery().must(boolQuery().mustNot(matchQuery("a", 1))).should(matchQuery("b", 2)).should(matchQuery("c", 3));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(1, query.must().size());
+        assertTrue(query.mustNot().isEmpty());
+    }
+
+    @Test
+    public void shouldMergeEqualitiesOfTheSameFieldIntoTerms() {
+        BoolQueryBuilder query = boolQuery().should(matchQuery("a", 1)).should(matchQuery("b", 1)).should(matchQuery("a", 2)).should(termsQuery("a", (Object) 3, 1));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(boolQuery().should(termsQuery("a", asList(1, 2, 3))).should(matchQuery("b", 1)), query);
+    }
+
+    @Test
+    public void shouldNotMergeEqualitiesOfNotExactFields() {
+        BoolQueryBuilder query = boolQuery().should(matchQuery("c", "x")).should(matchQuery("c", "y"));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(2, query.should().size());
+    }
+
+    @Test
+    public void shouldFuseComplementaryRanges() {
+        BoolQueryBuilder query = boolQuery().must(rangeQuery("a").from(10).includeLower(true)).must(matchQuery("b", 1)).must(rangeQuery("a").to(100).includeUpper(false));
+
+        FilterQueryOptimizer.optimize(query, ALL_RULES, EXACT_FIELDS);
+
+        assertEquals(boolQuery().must(rangeQuery("a").from(10, true).to(100, false)).must(matchQuery("b", 1)), query);
+    }
+
+    @Test
+    public void shouldNotFuseRangesWithoutRangesRule() {
+        BoolQueryBuilder query = boolQuery().must(rangeQuery("a").from(10)).must(rangeQuery("a").to(100));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(2, query.must().size());
+    }
+
+    @Test
+    public void shouldRemoveDuplicatedClauses() {
+        BoolQueryBuilder query = boolQuery().must(matchQuery("c", "x")).must(matchQuery("c", "x")).mustNot(existsQuery("a")).mustNot(existsQuery("a"));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertEquals(boolQuery().must(matchQuery("c", "x")).mustNot(existsQuery("a")), query);
+    }
+
+    @Test
+    public void shouldOptimizeNestedQueries() {
+        BoolQueryBuilder nested = boolQuery().should(matchQuery("a", 1)).should(matchQuery("a", 2));
+        BoolQueryBuilder query = boolQuery().must(nestedQuery("a", nested, org.apache.lucene.search.join.ScoreMode.None));
+
+        FilterQueryOptimizer.optimize(query, SAFE_RULES, EXACT_FIELDS);
+
+        assertThat(nested.should().get(0), instanceOf(TermsQueryBuilder.class));
+    }
+
+    @Test
+    public void shouldNotChangeQueryWithoutRules() {
+        BoolQueryBuilder query = boolQuery().must(boolQuery().must(matchQuery("a", 1)));
+
+        FilterQueryOptimizer.optimize(query, null, EXACT_FIELDS);
+        FilterQueryOptimizer.optimize(query, Collections.emptySet(), EXACT_FIELDS);
+
+        assertEquals(boolQuery().must(boolQuery().must(matchQuery("a", 1))), query);
+    }
+
+    @Test
+    public void sameDocumentsForRandomQueriesWithMultiValuedFields() {
+        assertSameDocuments(SAFE_RULES, 4);
+    }
+
+    @Test
+    public void sameDocumentsForRandomQueriesWithSingleValuedFields() {
+        assertSameDocuments(ALL_RULES, 1);
+    }
+
+    private static void assertSameDocuments(Set<String> rules, int maxValuesByField) {
+        Random random = new Random(1618L);
+        List<Map<String, List<Integer>>> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            documents.add(document(random, maxValuesByField));
+
+        for (int i = 0; i < 1000; i++) {
+            long seed = random.nextLong();
+            BoolQueryBuilder original = bool(new Random(seed), 0);
+            BoolQueryBuilder optimized = FilterQueryOptimizer.optimize(bool(new Random(seed), 0), rules, EXACT_FIELDS);
+
+            for (Map<String, List<Integer>> document : documents) {
+                String message = format(original) + " -> " + format(optimized) + " on " + document;
+                assertEquals(message, matches(original, document, false), matches(optimized, document, false));
+                assertEquals(message, matches(original, document, true), matches(optimized, document, true));
+            }
+        }
+    }
+
+    private static Map<String, List<Integer>> document(Random random, int maxValuesByField) {
+        Map<String, List<Integer>> document = new HashMap<>();
+        for (String field : FIELDS) {
+            List<Integer> values = new ArrayList<>();
+            int size = random.nextInt(maxValuesByField + 1);
+            for (int i = 0; i < size; i++)
+                values.add(random.nextInt(5));
+            document.put(field, values);
+        }
+        return document;
+    }
+
+    private static BoolQueryBuilder bool(Random random, int depth) {
+        BoolQueryBuilder bool = boolQuery();
+        for (List<QueryBuilder> clauses : asList(bool.must(), bool.filter(), bool.mustNot(), bool.should())) {
+            int size = random.nextInt(depth == 0 ? 4 : 3);
+            List<Long> seeds = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                long seed = random.nextInt(4) == 0 && !seeds.isEmpty() ? seeds.get(random.nextInt(seeds.size())) : random.nextLong();
+                seeds.add(seed);
+                clauses.add(clause(new Random(seed), depth + 1));
+            }
+        }
+        return bool;
+    }
+
+    private static QueryBuilder clause(Random random, int depth) {
+        String field = FIELDS[random.nextInt(FIELDS.length)];
+        switch (random.nextInt(depth < 3 ? 7 : 5)) {
+            case 0:
+            case 1:
+                return matchQuery(field, random.nextInt(5));
+            case 2:
+                return termsQuery(field, asList(random.nextInt(5), random.nextInt(5)));
+            case 3:
+                RangeQueryBuilder range = rangeQuery(field);
+                if (random.nextBoolean())
+                    range.from(random.nextInt(5), random.nextBoolean());
+                if (random.nextBoolean())
+                    range.to(random.nextInt(5), random.nextBoolean());
+                return range;
+            case 4:
+                return existsQuery(field);
+            default:
+                return bool(random, depth);
+        }
+    }
+
+    private static String format(QueryBuilder query) {
+        if (query instanceof MatchQueryBuilder)
+            return ((MatchQueryBuilder) query).fieldName() + "=" + ((MatchQueryBuilder) query).value();
+
+        if (query instanceof TermsQueryBuilder)
+            return ((TermsQueryBuilder) query).fieldName() + "=" + ((TermsQueryBuilder) query).values();
+
+        if (query instanceof ExistsQueryBuilder)
+            return "exists(" + ((ExistsQueryBuilder) query).fieldName() + ")";
+
+        if (query instanceof RangeQueryBuilder) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            return range.fieldName() + (range.includeLower() ? "[" : "(") + range.from() + "," + range.to() + (range.includeUpper() ? "]" : ")");
+        }
+
+        BoolQueryBuilder bool = (BoolQueryBuilder) query;
+        return "{must" + bool.must().stream().map(FilterQueryOptimizerTest::format).collect(toList())
+            + " filter" + bool.filter().stream().map(FilterQueryOptimizerTest::format).collect(toList())
+            + " not" + bool.mustNot().stream().map(FilterQueryOptimizerTest::format).collect(toList())
+            + " should" + bool.should().stream().map(FilterQueryOptimizerTest::format).collect(toList()) + "}";
+    }
+
+    /**
+     * Elasticsearch 5 bool semantics: in the filter context (and without required clauses) one should clause is required
+     */
+    private static boolean matches(QueryBuilder query, Map<String, List<Integer>> document, boolean filterContext) {
+        if (query instanceof MatchQueryBuilder)
+            return document.get(((MatchQueryBuilder) query).fieldName()).contains(((MatchQueryBuilder) query).value());
+
+        if (query instanceof TermsQueryBuilder)
+            return ((TermsQueryBuilder) query).values().stream().map(value -> ((Number) value).intValue()).anyMatch(document.get(((TermsQueryBuilder) query).fieldName())::contains);
+
+        if (query instanceof ExistsQueryBuilder)
+            return !document.get(((ExistsQueryBuilder) query).fieldName()).isEmpty();
+
+        if (query instanceof RangeQueryBuilder) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            return document.get(range.fieldName()).stream().anyMatch(value ->
+                (range.from() == null || (range.includeLower() ? value >= (Integer) range.from() : value > (Integer) range.from())) &&
+                (range.to() == null || (range.includeUpper() ? value <= (Integer) range.to() : value < (Integer) range.to()))
+            );
+        }
+
+        BoolQueryBuilder bool = (BoolQueryBuilder) query;
+        boolean required = !bool.must().isEmpty() || !bool.filter().isEmpty();
+        boolean shouldRequired = !bool.should().isEmpty() && (filterContext || !required);
+
+        return bool.must().stream().allMatch(clause -> matches(clause, document, filterContext))
+            && bool.filter().stream().allMatch(clause -> matches(clause, document, true))
+            && bool.mustNot().stream().noneMatch(clause -> matches(clause, document, true))
+            && (!shouldRequired || bool.should().stream().anyMatch(clause -> matches(clause, document, filterContext)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.vivareal.search.api.adapter;
+
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.GeoBoundingBoxQueryBuilder;
+import org.elasticsearch.index.query.GeoPolygonQueryBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.*;
+
+public class GeoPolygonPlannerTest {
+
+    private static final String FIELD = "address.geoLocation";
+
+    private static final List<GeoPoint> SQUARE = asList(new GeoPoint(-23.50, -46.70), new GeoPoint(-23.50, -46.60), new GeoPoint(-23.60, -46.60), new GeoPoint(-23.60, -46.70));
+
+    @Test
+    public void keepPolygonWithoutTolerance() {
+        GeoPolygonQueryBuilder query = (GeoPolygonQueryBuilder) GeoPolygonPlanner.plan(FIELD, circle(500, 0), 0, false);
+
+        assertEquals(501, query.points().size());
+    }
+
+    @Test
+    public void dropVerticesCloserThanToleranceToTheOutline() {
+        List<GeoPoint> square = new ArrayList<>();
+        for (int i = 0; i < SQUARE.size(); i++) {
+            GeoPoint from = SQUARE.get(i), to = SQUARE.get((i + 1) % SQUARE.size());
+            for (int step = 0; step < 10; step++)
+                square.add(new GeoPoint(from.lat() + (to.lat() - from.lat()) * step / 10, from.lon() + (to.lon() - from.lon()) * step / 10));
+        }
+        square.add(square.get(0));
+
+        assertEquals(SQUARE, GeoPolygonPlanner.simplify(square, 1));
+    }
+
+    @Test
+    public void simplifiedPolygonStaysWithinTolerance() {
+        List<GeoPoint> circle = circle(1000, 0.0001);
+        List<GeoPoint> simplified = GeoPolygonPlanner.simplify(circle, 50);
+
+        assertTrue(simplified.size() < 100);
+        assertTrue(circle.containsAll(simplified));
+        circle.forEach(point -> assertTrue(point.toString(), distanceToOutline(point, simplified) <= 50));
+    }
+
+    @Test
+    public void keepPolygonThatWouldBeDegenerated() {
+        List<GeoPoint> triangle = asList(new GeoPoint(0, 0), new GeoPoint(0, 0.0001), new GeoPoint(0.0001, 0));
+
+        assertSame(triangle, GeoPolygonPlanner.simplify(triangle, 1000));
+    }
+
+    @Test
+    public void conjoinBoundingBoxOfThePolygon() {
+        BoolQueryBuilder query = (BoolQueryBuilder) GeoPolygonPlanner.plan(FIELD, SQUARE, 0, true);
+
+        GeoBoundingBoxQueryBuilder boundingBox = (GeoBoundingBoxQueryBuilder) query.filter().get(0);
+        assertEquals(new GeoPoint(-23.50, -46.70), boundingBox.topLeft());
+        assertEquals(new GeoPoint(-23.60, -46.60), boundingBox.bottomRight());
+        assertThat(query.filter().get(1), instanceOf(GeoPolygonQueryBuilder.class));
+    }
+
+    @Test
+    public void skipBoundingBoxCrossingTheDateline() {
+        List<GeoPoint> polygon = asList(new GeoPoint(10, 170), new GeoPoint(10, -170), new GeoPoint(-10, -170), new GeoPoint(-10, 170));
+
+        assertThat(GeoPolygonPlanner.plan(FIELD, polygon, 0, true), instanceOf(GeoPolygonQueryBuilder.class));
+    }
+
+    private static double distanceToOutline(final GeoPoint point, final List<GeoPoint> polygon) {
+        double scale = cos(toRadians(polygon.get(0).lat())) * 111_320;
+        double distance = Double.MAX_VALUE;
+        for (int i = 0; i < polygon.size(); i++) {
+            GeoPoint from = polygon.get(i), to = polygon.get((i + 1) % polygon.size());
+            double dx = (to.lon() - from.lon()) * scale, dy = (to.lat() - from.lat()) * 111_320;
+            double px = (point.lon() - from.lon()) * scale, py = (point.lat() - from.lat()) * 111_320;
+            double t = max(0, min(1, (px * dx + py * dy) / (dx * dx + dy * dy)));
+            distance = min(distance, hypot(px - t * dx, py - t * dy));
+        }
+        return distance;
+    }
+
+    /**
+     * @return a neighbourhood sized ring (~2km) with radial noise
+     */
+    private static List<GeoPoint> circle(final int vertices, final double noise) {
+        List<GeoPoint> circle = new ArrayList<>();
+        for (int i = 0; i < vertices; i++) {
+            double radius = 0.02 + noise * sin(i * 7.0);
+            circle.add(new GeoPoint(-23.55 + radius * sin(2 * PI * i / vertices), -46.63 + radius * cos(2 * PI * i / vertices)));
+        }
+        return circle;
+    }
+}
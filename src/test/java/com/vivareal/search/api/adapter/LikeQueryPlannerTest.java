@@ -0,0 +1,80 @@
+package com.vivareal.search.api.adapter;
+
+import org.junit.Test;
+
+import static org.elasticsearch.index.query.Operator.AND;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.junit.Assert.assertEquals;
+
+public class LikeQueryPlannerTest {
+
+    private static final String FIELD = "field";
+    private static final String REVERSE = "field.reverse";
+    private static final String NGRAM = "field.ngram";
+    private static final int MIN_GRAM = 2;
+    private static final int MAX_GRAM = 5;
+
+    @Test
+    public void termWithoutWildcards() {
+        assertEquals(termQuery(FIELD, "abc"), LikeQueryPlanner.plan(FIELD, "abc", null, null, MIN_GRAM, MAX_GRAM, true));
+        assertEquals(termQuery(FIELD, "a*b?c\\"), LikeQueryPlanner.plan(FIELD, "a\\*b\\?c\\", null, null, MIN_GRAM, MAX_GRAM, true));
+    }
+
+    @Test
+    public void prefixWithOnlyTrailingWildcards() {
+        assertEquals(prefixQuery(FIELD, "abc"), LikeQueryPlanner.plan(FIELD, "abc*", null, null, MIN_GRAM, MAX_GRAM, true));
+        assertEquals(prefixQuery(FIELD, "ab*"), LikeQueryPlanner.plan(FIELD, "ab\\**", null, null, MIN_GRAM, MAX_GRAM, true));
+        assertEquals(prefixQuery(FIELD, "abc"), LikeQueryPlanner.plan(FIELD, "abc**", null, null, MIN_GRAM, MAX_GRAM, true));
+    }
+
+    @Test
+    public void wildcardWithInnerWildcards() {
+        assertEquals(wildcardQuery(FIELD, "a*c"), LikeQueryPlanner.plan(FIELD, "a*c", REVERSE, NGRAM, MIN_GRAM, MAX_GRAM, false));
+        assertEquals(wildcardQuery(FIELD, "abc?"), LikeQueryPlanner.plan(FIELD, "abc?", REVERSE, NGRAM, MIN_GRAM, MAX_GRAM, false));
+    }
+
+    @Test
+    public void existsWithOnlyAnyString() {
+        assertEquals(existsQuery(FIELD), LikeQueryPlanner.plan(FIELD, "**", null, null, MIN_GRAM, MAX_GRAM, false));
+    }
+
+    @Test
+    public void ngramSubfieldForContains() {
+        assertEquals(matchQuery(NGRAM, "abc").operator(AND), LikeQueryPlanner.plan(FIELD, "*abc*", REVERSE, NGRAM, MIN_GRAM, MAX_GRAM, false));
+        assertEquals(wildcardQuery(FIELD, "*a?c*"), LikeQueryPlanner.plan(FIELD, "*a?c*", null, NGRAM, MIN_GRAM, MAX_GRAM, true));
+    }
+
+    @Test
+    public void wildcardForContainsOutOfTheNgramLengths() {
+        assertEquals(wildcardQuery(FIELD, "*abcdef*"), LikeQueryPlanner.plan(FIELD, "*abcdef*", null, NGRAM, MIN_GRAM, MAX_GRAM, true));
+        assertEquals(wildcardQuery(FIELD, "*a*"), LikeQueryPlanner.plan(FIELD, "*a*", null, NGRAM, MIN_GRAM, MAX_GRAM, true));
+        assertEquals(matchQuery(NGRAM, "abcde").operator(AND), LikeQueryPlanner.plan(FIELD, "*abcde*", null, NGRAM, MIN_GRAM, MAX_GRAM, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectContainsOutOfTheNgramLengthsWhenLeadingWildcardIsNotAllowed() {
+        LikeQueryPlanner.plan(FIELD, "*abcdef*", null, NGRAM, MIN_GRAM, MAX_GRAM, false);
+    }
+
+    @Test
+    public void reverseSubfieldForLeadingWildcards() {
+        assertEquals(prefixQuery(REVERSE, "cba"), LikeQueryPlanner.plan(FIELD, "*abc", REVERSE, null, MIN_GRAM, MAX_GRAM, false));
+        assertEquals(wildcardQuery(REVERSE, "c*a?"), LikeQueryPlanner.plan(FIELD, "?a*c", REVERSE, null, MIN_GRAM, MAX_GRAM, false));
+        assertEquals(prefixQuery(REVERSE, "c*a"), LikeQueryPlanner.plan(FIELD, "*a\\*c", REVERSE, null, MIN_GRAM, MAX_GRAM, false));
+    }
+
+    @Test
+    public void leadingWildcardWhenAllowed() {
+        assertEquals(wildcardQuery(FIELD, "*abc*"), LikeQueryPlanner.plan(FIELD, "*abc*", REVERSE, null, MIN_GRAM, MAX_GRAM, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectLeadingWildcardWhenNotAllowed() {
+        LikeQueryPlanner.plan(FIELD, "*abc", null, null, MIN_GRAM, MAX_GRAM, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectLeadingWildcardWhenReversedPatternStillStartsWithWildcard() {
+        LikeQueryPlanner.plan(FIELD, "*abc*", REVERSE, null, MIN_GRAM, MAX_GRAM, false);
+    }
+}
@@ -4,8 +4,10 @@ import com.vivareal.search.api.model.http.SearchApiRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.junit.Test;
 
-import static com.vivareal.search.api.adapter.SearchAfterQueryAdapter.SORT_SEPARATOR;
+import static com.vivareal.search.api.adapter.CursorCodec.encode;
+import static com.vivareal.search.api.adapter.CursorCodec.fingerprint;
 import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -18,16 +20,22 @@ public class SearchAfterQueryAdapterTest extends SearchTransportClientMock {
         SearchRequestBuilder requestBuilder = transportClient.prepareSearch(INDEX_NAME);
         requestBuilder.setFrom(20);
 
-        SearchApiRequest request = fullRequest.build();
+        SearchApiRequest request = fullRequest.sort("field1 ASC, field2 DESC").build();
         String _uid = INDEX_NAME + "#1028071465";
-        request.setCursorId("2.765432" + SORT_SEPARATOR + "A%5fB" + SORT_SEPARATOR + _uid);
+        request.setCursorId(encode(fingerprint(INDEX_NAME, request.getSort()), new Object[]{2.765432, "A_B", 10L, _uid}));
 
         searchAfterQueryAdapter.apply(requestBuilder, request);
         assertNotNull(requestBuilder.request().source().searchAfter());
         assertEquals(0, requestBuilder.request().source().from());
-        assertEquals("2.765432", requestBuilder.request().source().searchAfter()[0]);
-        assertEquals("A_B", requestBuilder.request().source().searchAfter()[1]);
-        assertEquals(_uid, requestBuilder.request().source().searchAfter()[2]);
+        assertArrayEquals(new Object[]{2.765432, "A_B", 10L, _uid}, requestBuilder.request().source().searchAfter());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCursorOfAnotherSort() {
+        SearchApiRequest request = fullRequest.sort("field1 ASC").build();
+        request.setCursorId(encode(fingerprint(INDEX_NAME, "field1 DESC"), new Object[]{1L, INDEX_NAME + "#1"}));
+
+        searchAfterQueryAdapter.apply(transportClient.prepareSearch(INDEX_NAME), request);
     }
 
 }
@@ -1,5 +1,7 @@
 package com.vivareal.search.api.adapter;
 
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.SortPlanCache;
 import com.vivareal.search.api.model.http.SearchApiRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
@@ -11,20 +13,21 @@ import java.util.List;
 import java.util.Map;
 
 import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DEFAULT_SORT;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SORT_PLAN_CACHE_SIZE;
 import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
 import static com.vivareal.search.api.model.mapping.MappingType.FIELD_TYPE_NESTED;
 import static org.elasticsearch.search.sort.SortOrder.ASC;
 import static org.elasticsearch.search.sort.SortOrder.DESC;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
 
 public class SortQueryAdapterTest extends SearchTransportClientMock {
 
     private static final SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter = mock(SettingsAdapter.class);
 
-    private final SortQueryAdapter sortQueryAdapter = new SortQueryAdapter(settingsAdapter);
+    private final SortQueryAdapter sortQueryAdapter = new SortQueryAdapter(settingsAdapter, new SortPlanCache(new IndexCacheRegistry()));
 
     @BeforeClass
     public static void setup() {
@@ -81,6 +84,30 @@ public class SortQueryAdapterTest extends SearchTransportClientMock {
         assertNull(sorts.get(2).getNestedPath());
     }
 
+    @Test
+    public void shouldCompileSortOnceByIndexAndMappingVersion() {
+        String sort = "cached.field DESC";
+        SORT_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        try {
+            when(settingsAdapter.mappingVersion(INDEX_NAME)).thenReturn(1L);
+
+            SearchRequestBuilder first = transportClient.prepareSearch(INDEX_NAME);
+            sortQueryAdapter.apply(first, fullRequest.sort(sort).build());
+            SearchRequestBuilder second = transportClient.prepareSearch(INDEX_NAME);
+            sortQueryAdapter.apply(second, fullRequest.sort(sort).build());
+
+            assertEquals(first.request().source().sorts(), second.request().source().sorts());
+            assertSame(first.request().source().sorts().get(0), second.request().source().sorts().get(0));
+            verify(settingsAdapter, times(1)).isTypeOf(INDEX_NAME, "cached", FIELD_TYPE_NESTED);
+
+            when(settingsAdapter.mappingVersion(INDEX_NAME)).thenReturn(2L);
+            sortQueryAdapter.apply(transportClient.prepareSearch(INDEX_NAME), fullRequest.sort(sort).build());
+            verify(settingsAdapter, times(2)).isTypeOf(INDEX_NAME, "cached", FIELD_TYPE_NESTED);
+        } finally {
+            SORT_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "0");
+        }
+    }
+
     @Test
     public void shouldNotApplySortWhenClientInputSortEmptyOnRequest() {
         SearchRequestBuilder requestBuilder = transportClient.prepareSearch(INDEX_NAME);
@@ -0,0 +1,110 @@
+package com.vivareal.search.api.adapter;
+
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.SourceFieldsCache;
+import com.vivareal.search.api.model.search.Fetchable;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.basic;
+import static org.elasticsearch.action.search.SearchAction.INSTANCE;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SourceFieldAdapterTest {
+
+    @Mock
+    private TransportClient transportClient;
+
+    @Mock
+    private SettingsAdapter<Map<String, Map<String, Object>>, String> settingsAdapter;
+
+    private SourceFieldAdapter sourceFieldAdapter;
+
+    private final Map<String, Object> mapping = new HashMap<>();
+
+    @Before
+    public void setup() {
+        initMocks(this);
+
+        ES_DOCVALUE_PROJECTION.setValue(INDEX_NAME, "true");
+        ES_DOCVALUE_PROJECTION_MAX_FIELDS.setValue(INDEX_NAME, "3");
+        SOURCE_FIELDS_CACHE_SIZE.setValue(INDEX_NAME, "10");
+
+        mapping.put("id", "keyword");
+        mapping.put("price", "long");
+        mapping.put("title", "text");
+        mapping.put("title.raw", "keyword");
+        mapping.put("address", "_obj");
+        mapping.put("address.zipCode", "keyword");
+        mapping.put("address.geoLocation", "geo_point");
+        mapping.put("rooms", "integer");
+        mapping.put("rooms.doc_values", false);
+        mapping.put("features", "nested");
+        mapping.put("features.name", "keyword");
+
+        Map<String, Map<String, Object>> settings = new HashMap<>();
+        settings.put(INDEX_NAME, mapping);
+        when(settingsAdapter.settings()).thenReturn(settings);
+        when(settingsAdapter.getFieldType(eq(INDEX_NAME), any())).thenAnswer(invocation -> mapping.get((String) invocation.getArguments()[1]));
+        when(settingsAdapter.getFetchSourceIncludeFields(any())).thenAnswer(invocation -> {
+            Set<String> fields = ((Fetchable) invocation.getArguments()[0]).getIncludeFields();
+            return fields == null ? new String[0] : fields.toArray(new String[0]);
+        });
+        when(settingsAdapter.getFetchSourceExcludeFields(any(), any())).thenReturn(new String[0]);
+
+        sourceFieldAdapter = new SourceFieldAdapter(settingsAdapter, new SourceFieldsCache(new IndexCacheRegistry()));
+    }
+
+    private SearchSourceBuilder apply(final String... includeFields) {
+        SearchRequestBuilder searchRequestBuilder = new SearchRequestBuilder(transportClient, INSTANCE);
+        sourceFieldAdapter.apply(searchRequestBuilder, basic().index(INDEX_NAME).includeFields(newHashSet(includeFields)).build());
+        return searchRequestBuilder.request().source();
+    }
+
+    @Test
+    public void shouldFetchFieldsWithDocValuesWithoutSource() {
+        SearchSourceBuilder source = apply("id", "price", "address.zipCode");
+
+        assertFalse(source.fetchSource().fetchSource());
+        assertEquals(3, source.docValueFields().size());
+        assertTrue(source.docValueFields().containsAll(newHashSet("id", "price", "address.zipCode")));
+    }
+
+    @Test
+    public void shouldFetchSourceWhenAnyFieldHasNoDocValuesRenderedAsInTheSource() {
+        for (String field : new String[]{"title", "title.raw", "address.geoLocation", "rooms", "features.name", "*"}) {
+            SearchSourceBuilder source = apply("id", field);
+
+            assertTrue(field, source.fetchSource().fetchSource());
+            assertNull(field, source.docValueFields());
+        }
+    }
+
+    @Test
+    public void shouldFetchSourceWhenDisabledOrWithTooManyFields() {
+        assertTrue(apply("id", "price", "address.zipCode", "features").fetchSource().fetchSource());
+
+        ES_DOCVALUE_PROJECTION.setValue(INDEX_NAME, "false");
+        assertTrue(apply("id").fetchSource().fetchSource());
+    }
+
+    @Test
+    public void shouldNeverFetchDocumentsByIdFromDocValues() {
+        assertTrue(sourceFieldAdapter.fetchSource(basic().index(INDEX_NAME).includeFields(newHashSet("id")).build()).fetchSource());
+    }
+}
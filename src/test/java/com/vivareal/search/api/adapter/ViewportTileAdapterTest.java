@@ -0,0 +1,115 @@
+package com.vivareal.search.api.adapter;
+
+import com.vivareal.search.api.cache.IndexCacheRegistry;
+import com.vivareal.search.api.cache.QueryFragmentCache;
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.query.GeoBoundingBoxQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.VIEWPORT_TILE_ZOOM;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.create;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class ViewportTileAdapterTest {
+
+    private static final String FIELD = "address.geoLocation";
+
+    private final ViewportTileAdapter viewportTileAdapter = new ViewportTileAdapter(mock(ElasticsearchSettingsAdapter.class), new QueryFragmentCache(new IndexCacheRegistry()));
+
+    @Before
+    public void setup() {
+        VIEWPORT_TILE_ZOOM.setValue(INDEX_NAME, "10");
+    }
+
+    @After
+    public void clear() {
+        VIEWPORT_TILE_ZOOM.setValue(INDEX_NAME, "0");
+    }
+
+    @Test
+    public void snapViewportOutwardToTheCoveringTiles() {
+        GeoBoundingBoxQueryBuilder tiles = (GeoBoundingBoxQueryBuilder) viewportTileAdapter.query(INDEX_NAME, FIELD, new GeoPoint(-23.54, -46.62), new GeoPoint(-23.56, -46.64));
+
+        // Tile x 379 and y 580 of the zoom 10
+        assertEquals(-46.7578125, tiles.topLeft().lon(), 1e-9);
+        assertEquals(-46.40625, tiles.bottomRight().lon(), 1e-9);
+        assertEquals(-23.241346102386135, tiles.topLeft().lat(), 1e-9);
+        assertEquals(-23.56398712845122, tiles.bottomRight().lat(), 1e-9);
+
+        assertEquals(tiles, viewportTileAdapter.query(INDEX_NAME, FIELD, new GeoPoint(-23.25, -46.41), new GeoPoint(-23.56, -46.75)));
+    }
+
+    @Test
+    public void coverThePolesAndTheDateline() {
+        VIEWPORT_TILE_ZOOM.setValue(INDEX_NAME, "1");
+        GeoBoundingBoxQueryBuilder tiles = (GeoBoundingBoxQueryBuilder) viewportTileAdapter.query(INDEX_NAME, FIELD, new GeoPoint(89, 180), new GeoPoint(-89, 10));
+
+        assertEquals(new GeoPoint(90, 0), tiles.topLeft());
+        assertEquals(new GeoPoint(-90, 180), tiles.bottomRight());
+    }
+
+    @Test
+    public void trimHitsOutOfTheViewport() {
+        SearchApiRequest request = create().index(INDEX_NAME).filter(FIELD + " VIEWPORT [[-46.62,-23.54],[-46.64,-23.56]] AND a:1").build();
+        SearchResponse response = response(hit(1, -23.55, -46.63), hit(2, -23.50, -46.63), hit(3, -23.55, -46.60), hit(4, -23.545, -46.635));
+
+        SearchResponse trimmed = viewportTileAdapter.trim(request, response);
+
+        assertEquals(2, trimmed.getHits().getHits().length);
+        assertEquals("1", trimmed.getHits().getAt(0).getId());
+        assertEquals("4", trimmed.getHits().getAt(1).getId());
+        assertEquals(4, trimmed.getHits().getTotalHits());
+    }
+
+    @Test
+    public void returnShortPagesCountingTheCoveringTiles() {
+        SearchApiRequest request = create().index(INDEX_NAME).filter(FIELD + " VIEWPORT [[-46.62,-23.54],[-46.64,-23.56]]").from(0).size(3).build();
+        SearchResponse response = response(10, hit(1, -23.50, -46.63), hit(2, -23.55, -46.60), hit(3, -23.50, -46.60));
+
+        SearchResponse trimmed = viewportTileAdapter.trim(request, response);
+
+        assertEquals(0, trimmed.getHits().getHits().length);
+        assertEquals(10, trimmed.getHits().getTotalHits());
+        assertSame(response.getAggregations(), trimmed.getAggregations());
+    }
+
+    @Test
+    public void keepResponseWithoutTiledViewports() {
+        SearchResponse response = response(hit(1, 0, 0));
+
+        assertSame(response, viewportTileAdapter.trim(create().index(INDEX_NAME).filter("a:1").build(), response));
+        assertSame(response, viewportTileAdapter.trim(create().index(INDEX_NAME).filter("NOT " + FIELD + " VIEWPORT [[-46.62,-23.54],[-46.64,-23.56]]").build(), response));
+        assertSame(response, viewportTileAdapter.trim(create().index(INDEX_NAME).filter(FIELD + " VIEWPORT [[-46.62,-23.54],[-46.64,-23.56]] OR a:1").build(), response));
+
+        VIEWPORT_TILE_ZOOM.setValue(INDEX_NAME, "0");
+        assertSame(response, viewportTileAdapter.trim(create().index(INDEX_NAME).filter(FIELD + " VIEWPORT [[-46.62,-23.54],[-46.64,-23.56]]").build(), response));
+    }
+
+    private static SearchHit hit(final int id, final double lat, final double lon) {
+        Map<String, SearchHitField> fields = singletonMap(FIELD, new SearchHitField(FIELD, singletonList(new GeoPoint(lat, lon))));
+        return new SearchHit(id, String.valueOf(id), new Text("type"), fields);
+    }
+
+    private static SearchResponse response(final SearchHit... hits) {
+        return response(hits.length, hits);
+    }
+
+    private static SearchResponse response(final long totalHits, final SearchHit... hits) {
+        return new SearchResponse(new InternalSearchResponse(new SearchHits(hits, totalHits, 1), null, null, null, false, null, 1), null, 1, 1, 0, 1, null);
+    }
+}
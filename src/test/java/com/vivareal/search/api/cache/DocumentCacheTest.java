@@ -0,0 +1,117 @@
+package com.vivareal.search.api.cache;
+
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.*;
+
+public class DocumentCacheTest {
+
+    private static final String SOURCE = "{\"id\":\"1\"}";
+
+    private final DocumentCache documentCache = new DocumentCache();
+
+    private final List<FetchSourceContext> executions = new ArrayList<>();
+
+    private long version = 1;
+    private boolean exists = true;
+
+    @Before
+    public void setup() {
+        DOCUMENT_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        DOCUMENT_CACHE_MAX_BYTES.setValue(INDEX_NAME, "1000");
+        DOCUMENT_CACHE_TTL.setValue(INDEX_NAME, "60000");
+    }
+
+    private Supplier<GetResponse> executor(final GetRequest request) {
+        return () -> {
+            executions.add(request.fetchSourceContext());
+            boolean fetchSource = request.fetchSourceContext() == null || request.fetchSourceContext().fetchSource();
+            return new GetResponse(new GetResult(request.index(), request.type(), request.id(), version, exists, exists && fetchSource ? new BytesArray(SOURCE) : null, emptyMap()));
+        };
+    }
+
+    private GetResponse get(final String id, final String... includes) {
+        GetRequest request = new GetRequest(INDEX_NAME, INDEX_NAME, id).fetchSourceContext(new FetchSourceContext(true, includes, new String[0]));
+        return documentCache.get(request, executor(request));
+    }
+
+    @Test
+    public void shouldFetchOnlyOnceByIdAndFields() {
+        assertEquals(SOURCE, get("1").getSourceAsString());
+        assertEquals(SOURCE, get("1").getSourceAsString());
+        assertEquals(1, executions.size());
+
+        get("1", "id");
+        get("2");
+        assertEquals(3, executions.size());
+
+        Map<String, Object> stats = documentCache.stats().get(INDEX_NAME);
+        assertEquals(1L, stats.get("hitCount"));
+        assertEquals(3L, stats.get("missCount"));
+        assertEquals(3L, stats.get("size"));
+        assertEquals(3L * SOURCE.length(), stats.get("memorySizeInBytes"));
+    }
+
+    @Test
+    public void shouldRevalidateByVersionAfterTheTtl() {
+        DOCUMENT_CACHE_TTL.setValue(INDEX_NAME, "0");
+
+        get("1");
+        GetResponse response = get("1");
+        assertEquals(SOURCE, response.getSourceAsString());
+        assertEquals(1L, response.getVersion());
+        assertEquals(2, executions.size());
+        assertFalse(executions.get(1).fetchSource());
+
+        version = 2;
+        assertEquals(2L, get("1").getVersion());
+        assertEquals(4, executions.size());
+        assertTrue(executions.get(3).fetchSource());
+
+        exists = false;
+        assertFalse(get("1").isExists());
+        Map<String, Object> stats = documentCache.stats().get(INDEX_NAME);
+        assertEquals(0L, stats.get("size"));
+        assertEquals(3L, stats.get("revalidationCount"));
+        assertEquals(0L, stats.get("hitCount"));
+        assertEquals(1L, stats.get("missCount"));
+        assertEquals(0.0, (double) stats.get("hitRate"), 0);
+    }
+
+    @Test
+    public void shouldBoundTheSizeAndTheBytes() {
+        DOCUMENT_CACHE_MAX_BYTES.setValue(INDEX_NAME, String.valueOf(4 * SOURCE.length()));
+
+        for (int id = 0; id < 10; id++)
+            get(String.valueOf(id));
+
+        Map<String, Object> stats = documentCache.stats().get(INDEX_NAME);
+        assertTrue((long) stats.get("size") <= 4);
+        assertTrue((long) stats.get("memorySizeInBytes") <= 4 * SOURCE.length());
+        assertEquals(10L - (long) stats.get("size"), stats.get("evictionCount"));
+    }
+
+    @Test
+    public void shouldNotCacheWhenSizeIsNotPositive() {
+        DOCUMENT_CACHE_SIZE.setValue(INDEX_NAME, "0");
+
+        get("1");
+        get("1");
+        assertEquals(2, executions.size());
+        assertFalse(documentCache.stats().containsKey(INDEX_NAME));
+    }
+}
@@ -0,0 +1,60 @@
+package com.vivareal.search.api.cache;
+
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_FACET_MAP_CARDINALITY;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FACET_PLAN_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static java.util.Collections.singletonList;
+import static java.util.Optional.ofNullable;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FacetPlanCacheTest {
+
+    private final FacetPlanCache facetPlanCache = new FacetPlanCache(new IndexCacheRegistry());
+
+    private final AtomicInteger compilations = new AtomicInteger();
+
+    private final BiFunction<Set<String>, Integer, List<AggregationBuilder>> compiler = (facets, facetSize) -> {
+        compilations.incrementAndGet();
+        return singletonList(terms(facets.iterator().next()).size(facetSize));
+    };
+
+    @Before
+    public void setup() {
+        FACET_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "10");
+    }
+
+    @Test
+    public void shouldCompileOnceByFacetsAndFacetSize() {
+        List<AggregationBuilder> first = facetPlanCache.get(INDEX_NAME, newHashSet("a"), 10, 1, compiler);
+
+        assertSame(first, facetPlanCache.get(INDEX_NAME, newHashSet("a"), 10, 1, compiler));
+        assertEquals(1, compilations.get());
+
+        facetPlanCache.get(INDEX_NAME, newHashSet("a"), 20, 1, compiler);
+        facetPlanCache.get(INDEX_NAME, newHashSet("b"), 10, 1, compiler);
+        assertEquals(3, compilations.get());
+    }
+
+    @Test
+    public void shouldCompileAgainWhenMappingVersionOrPropertiesChange() {
+        facetPlanCache.get(INDEX_NAME, newHashSet("a"), 10, 1, compiler);
+        facetPlanCache.get(INDEX_NAME, newHashSet("a"), 10, 2, compiler);
+        assertEquals(2, compilations.get());
+
+        ES_FACET_MAP_CARDINALITY.setValue(INDEX_NAME, String.valueOf(ofNullable(ES_FACET_MAP_CARDINALITY.<Integer>getValue(INDEX_NAME)).orElse(0) + 1));
+        facetPlanCache.get(INDEX_NAME, newHashSet("a"), 10, 2, compiler);
+        assertEquals(3, compilations.get());
+    }
+}
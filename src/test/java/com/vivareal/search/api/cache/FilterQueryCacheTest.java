@@ -0,0 +1,71 @@
+package com.vivareal.search.api.cache;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_OPTIMIZER;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_QUERY_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.junit.Assert.*;
+
+public class FilterQueryCacheTest {
+
+    private static final String NOT_CACHED_INDEX = "not-cached-index";
+
+    private final FilterQueryCache filterQueryCache = new FilterQueryCache(new IndexCacheRegistry());
+
+    private final AtomicInteger compilations = new AtomicInteger();
+
+    private final BiFunction<String, String, BoolQueryBuilder> compiler = (index, filter) -> {
+        compilations.incrementAndGet();
+        return boolQuery().must(matchQuery(filter, index));
+    };
+
+    @BeforeClass
+    public static void setup() {
+        FILTER_QUERY_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        FILTER_QUERY_CACHE_SIZE.setValue(NOT_CACHED_INDEX, "0");
+    }
+
+    @Test
+    public void shouldCompileOnceBySameMappingVersion() {
+        BoolQueryBuilder first = filterQueryCache.get(INDEX_NAME, "field", 1, compiler);
+        BoolQueryBuilder second = filterQueryCache.get(INDEX_NAME, "field", 1, compiler);
+
+        assertSame(first, second);
+        assertEquals(1, compilations.get());
+    }
+
+    @Test
+    public void shouldCompileAgainWhenMappingVersionChanges() {
+        BoolQueryBuilder first = filterQueryCache.get(INDEX_NAME, "field", 1, compiler);
+        BoolQueryBuilder second = filterQueryCache.get(INDEX_NAME, "field", 2, compiler);
+
+        assertNotSame(first, second);
+        assertSame(second, filterQueryCache.get(INDEX_NAME, "field", 2, compiler));
+        assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void shouldCompileAgainWhenRemotePropertiesChange() {
+        filterQueryCache.get(INDEX_NAME, "field", 1, compiler);
+        FILTER_OPTIMIZER.setValue(INDEX_NAME, String.valueOf(System.nanoTime()));
+        filterQueryCache.get(INDEX_NAME, "field", 1, compiler);
+
+        assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void shouldNotCacheWhenCacheSizeIsZero() {
+        filterQueryCache.get(NOT_CACHED_INDEX, "field", 1, compiler);
+        filterQueryCache.get(NOT_CACHED_INDEX, "field", 1, compiler);
+
+        assertEquals(2, compilations.get());
+    }
+}
@@ -0,0 +1,99 @@
+package com.vivareal.search.api.cache;
+
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SEARCH_COALESCING;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.create;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class InFlightSearchesTest {
+
+    private static final int CALLERS = 5;
+
+    private final InFlightSearches inFlightSearches = new InFlightSearches(new QueryFragmentCache(new IndexCacheRegistry()));
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        SEARCH_COALESCING.setValue(INDEX_NAME, "true");
+    }
+
+    private <T> Supplier<CompletableFuture<T>> search(final CompletableFuture<T> response) {
+        return () -> {
+            searches.incrementAndGet();
+            return response;
+        };
+    }
+
+    private <T> List<CompletableFuture<T>> concurrently(final SearchApiRequest request, final CompletableFuture<T> running) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(CALLERS);
+        for (int i = 0; i < CALLERS; i++)
+            futures.add(inFlightSearches.executeAsync(request, search(i == 0 ? running : new CompletableFuture<>())));
+        return futures;
+    }
+
+    private long coalesced() {
+        return (long) inFlightSearches.stats().getOrDefault(INDEX_NAME, singletonMap("coalescedCount", 0L)).get("coalescedCount");
+    }
+
+    @Test
+    public void shouldShareTheResponseOfIdenticalConcurrentSearches() throws Exception {
+        CompletableFuture<Object> running = new CompletableFuture<>();
+        List<CompletableFuture<Object>> futures = concurrently(create().index(INDEX_NAME).filter("a = 1").build(), running);
+        futures.forEach(future -> assertFalse(future.isDone()));
+
+        Object response = new Object();
+        running.complete(response);
+        for (CompletableFuture<Object> future : futures)
+            assertSame(response, future.get(5, SECONDS));
+
+        assertEquals(1, searches.get());
+        assertEquals(1L, inFlightSearches.stats().get(INDEX_NAME).get("searchCount"));
+        assertEquals((long) CALLERS - 1, coalesced());
+
+        inFlightSearches.executeAsync(create().index(INDEX_NAME).filter("a = 1").build(), search(completedFuture(new Object())));
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void shouldShareTheErrorOfIdenticalConcurrentSearches() throws Exception {
+        CompletableFuture<Object> running = new CompletableFuture<>();
+        List<CompletableFuture<Object>> futures = concurrently(create().index(INDEX_NAME).filter("a = 1").build(), running);
+
+        running.completeExceptionally(new IllegalArgumentException("invalid"));
+        for (CompletableFuture<Object> future : futures) {
+            try {
+                future.get(5, SECONDS);
+                fail("The search error should be completed to every caller");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public void shouldNotCoalesceWhenDisabled() {
+        SEARCH_COALESCING.setValue(INDEX_NAME, "false");
+        SearchApiRequest request = create().index(INDEX_NAME).build();
+
+        inFlightSearches.executeAsync(request, search(new CompletableFuture<>()));
+        inFlightSearches.executeAsync(request, search(new CompletableFuture<>()));
+        assertEquals(2, searches.get());
+        assertFalse(inFlightSearches.stats().containsKey(INDEX_NAME));
+    }
+}
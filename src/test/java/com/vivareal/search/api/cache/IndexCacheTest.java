@@ -0,0 +1,101 @@
+package com.vivareal.search.api.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static org.junit.Assert.*;
+
+public class IndexCacheTest {
+
+    private static final String OTHER_INDEX = "other-index";
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, String> loader = key -> {
+        loads.incrementAndGet();
+        return key.toUpperCase();
+    };
+
+    private IndexCache<String, String> cache;
+
+    @Before
+    public void setup() {
+        FILTER_CACHE_SIZE.setValue(INDEX_NAME, "2");
+        FILTER_CACHE_SIZE.setValue(OTHER_INDEX, "0");
+        cache = new IndexCacheRegistry().register("test", FILTER_CACHE_SIZE);
+    }
+
+    @Test
+    public void shouldLoadOnlyOnceForTheSameKey() {
+        assertEquals("A", cache.get(INDEX_NAME, "a", loader));
+        assertEquals("A", cache.get(INDEX_NAME, "a", loader));
+        assertEquals(1, loads.get());
+
+        Map<String, Object> stats = cache.stats().get(INDEX_NAME);
+        assertEquals(1L, stats.get("hitCount"));
+        assertEquals(1L, stats.get("missCount"));
+        assertEquals(1L, stats.get("size"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntry() {
+        cache.get(INDEX_NAME, "a", loader);
+        cache.get(INDEX_NAME, "b", loader);
+        cache.get(INDEX_NAME, "a", loader);
+        cache.get(INDEX_NAME, "c", loader);
+
+        assertNotNull(cache.getIfPresent(INDEX_NAME, "a"));
+        assertNull(cache.getIfPresent(INDEX_NAME, "b"));
+        assertNotNull(cache.getIfPresent(INDEX_NAME, "c"));
+        assertEquals(1L, cache.stats().get(INDEX_NAME).get("evictionCount"));
+    }
+
+    @Test
+    public void shouldNotCacheWhenSizeIsNotPositive() {
+        cache.get(OTHER_INDEX, "a", loader);
+        cache.get(OTHER_INDEX, "a", loader);
+
+        assertEquals(2, loads.get());
+        assertFalse(cache.stats().containsKey(OTHER_INDEX));
+    }
+
+    @Test
+    public void shouldRebuildCacheWhenSizeChanges() {
+        cache.get(INDEX_NAME, "a", loader);
+        FILTER_CACHE_SIZE.setValue(INDEX_NAME, "10");
+
+        cache.get(INDEX_NAME, "a", loader);
+        assertEquals(2, loads.get());
+        assertEquals(10, cache.stats().get(INDEX_NAME).get("maxSize"));
+    }
+
+    @Test
+    public void shouldNotCacheAndRethrowLoaderException() {
+        Function<String, String> failure = key -> {
+            loads.incrementAndGet();
+            throw new IllegalArgumentException(key);
+        };
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(INDEX_NAME, "a", failure);
+                fail("IllegalArgumentException should be thrown");
+            } catch (IllegalArgumentException e) {
+                assertEquals("a", e.getMessage());
+            }
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotRegisterTheSameCacheTwice() {
+        IndexCacheRegistry registry = new IndexCacheRegistry();
+        registry.register("test", FILTER_CACHE_SIZE);
+        registry.register("test", FILTER_CACHE_SIZE);
+    }
+}
@@ -0,0 +1,44 @@
+package com.vivareal.search.api.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.NavigableMap;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_DEEP_PAGE_CHECKPOINT_TTL;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.PAGE_CHECKPOINT_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.create;
+import static org.junit.Assert.*;
+
+public class PageCheckpointCacheTest {
+
+    private final PageCheckpointCache pageCheckpointCache = new PageCheckpointCache(new IndexCacheRegistry());
+
+    @Before
+    public void setup() {
+        PAGE_CHECKPOINT_CACHE_SIZE.setValue(INDEX_NAME, "10");
+        ES_DEEP_PAGE_CHECKPOINT_TTL.setValue(INDEX_NAME, "60000");
+    }
+
+    @Test
+    public void shouldShareTheCheckpointsBetweenPagesOfTheSameShape() {
+        NavigableMap<Integer, Object[]> checkpoints = pageCheckpointCache.get(create().index(INDEX_NAME).filter("a:1").sort("id ASC").from(1000).size(10).build());
+        checkpoints.put(1000, new Object[]{"a"});
+
+        NavigableMap<Integer, Object[]> samePage = pageCheckpointCache.get(create().index(INDEX_NAME).filter("a:1").sort("id ASC").from(2500).size(20).build());
+        assertArrayEquals(new Object[]{"a"}, samePage.floorEntry(2000).getValue());
+
+        assertTrue(pageCheckpointCache.get(create().index(INDEX_NAME).filter("a:1").sort("id DESC").from(1000).size(10).build()).isEmpty());
+        assertTrue(pageCheckpointCache.get(create().index(INDEX_NAME).filter("a:2").sort("id ASC").from(1000).size(10).build()).isEmpty());
+    }
+
+    @Test
+    public void shouldDiscardTheCheckpointsAfterTheTtl() throws InterruptedException {
+        ES_DEEP_PAGE_CHECKPOINT_TTL.setValue(INDEX_NAME, "1");
+        pageCheckpointCache.get(create().index(INDEX_NAME).filter("b:1").build()).put(1000, new Object[]{"a"});
+        Thread.sleep(5);
+
+        assertTrue(pageCheckpointCache.get(create().index(INDEX_NAME).filter("b:1").build()).isEmpty());
+    }
+}
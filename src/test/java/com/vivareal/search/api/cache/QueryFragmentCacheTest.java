@@ -0,0 +1,52 @@
+package com.vivareal.search.api.cache;
+
+import com.vivareal.search.api.model.query.QueryFragment;
+import org.jparsec.error.ParserException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.vivareal.search.api.cache.QueryFragmentCache.DESCENT_PARSER;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_CACHE_SIZE;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.FILTER_PARSER;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class QueryFragmentCacheTest {
+
+    private final QueryFragmentCache queryFragmentCache = new QueryFragmentCache(new IndexCacheRegistry());
+
+    @BeforeClass
+    public static void setup() {
+        FILTER_CACHE_SIZE.setValue(INDEX_NAME, "10");
+    }
+
+    @Test
+    public void shouldReturnTheSameParsedFilter() {
+        QueryFragment first = queryFragmentCache.parse(INDEX_NAME, "rooms:3 AND (parkingLots:1 OR NOT xpto <> 3)");
+        QueryFragment second = queryFragmentCache.parse(INDEX_NAME, "rooms:3 AND (parkingLots:1 OR NOT xpto <> 3)");
+
+        assertSame(first, second);
+        assertEquals("(rooms EQUAL 3 AND (parkingLots EQUAL 1 OR NOT xpto DIFFERENT 3))", second.toString());
+    }
+
+    @Test
+    public void shouldParseTheSameFilterWithBothParsers() {
+        String filter = "rooms:3 AND (parkingLots IN [1, 2] OR NOT title LIKE '%pool%')";
+        FILTER_PARSER.setValue("descent-index", DESCENT_PARSER);
+
+        assertEquals(queryFragmentCache.parse(INDEX_NAME, filter).toString(), queryFragmentCache.parse("descent-index", filter).toString());
+    }
+
+    @Test(expected = ParserException.class)
+    public void shouldThrowParserExceptionForInvalidFilter() {
+        queryFragmentCache.parse(INDEX_NAME, "AND field:1");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotAllowChangesOnCachedFilter() {
+        ((List<QueryFragment>) queryFragmentCache.parse(INDEX_NAME, "a:1 AND b:2")).clear();
+    }
+}
@@ -0,0 +1,52 @@
+package com.vivareal.search.api.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.QS_PLAN_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class QueryStringPlanCacheTest {
+
+    private final QueryStringPlanCache queryStringPlanCache = new QueryStringPlanCache(new IndexCacheRegistry());
+
+    private final AtomicInteger compilations = new AtomicInteger();
+
+    private final BiFunction<String, Set<String>, Map<String, Map<String, Float>>> compiler = (index, fields) -> {
+        compilations.incrementAndGet();
+        return singletonMap("not_nested", singletonMap(fields.iterator().next(), 1.0f));
+    };
+
+    @Before
+    public void setup() {
+        QS_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "10");
+    }
+
+    @Test
+    public void shouldCompileOnceByFieldsAndMappingVersion() {
+        Map<String, Map<String, Float>> first = queryStringPlanCache.get(INDEX_NAME, newHashSet("a"), 1, compiler);
+
+        assertSame(first, queryStringPlanCache.get(INDEX_NAME, newHashSet("a"), 1, compiler));
+        assertEquals(1, compilations.get());
+
+        queryStringPlanCache.get(INDEX_NAME, newHashSet("b"), 1, compiler);
+        assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void shouldCompileAgainWhenMappingVersionChanges() {
+        queryStringPlanCache.get(INDEX_NAME, newHashSet("a"), 1, compiler);
+        queryStringPlanCache.get(INDEX_NAME, newHashSet("a"), 2, compiler);
+
+        assertEquals(2, compilations.get());
+    }
+}
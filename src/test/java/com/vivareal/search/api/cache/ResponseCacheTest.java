@@ -0,0 +1,103 @@
+package com.vivareal.search.api.cache;
+
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.*;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.create;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+
+    private final ResponseCache responseCache = new ResponseCache(new QueryFragmentCache(new IndexCacheRegistry()));
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private final Supplier<byte[]> loader = () -> String.valueOf(searches.incrementAndGet()).getBytes();
+
+    private final Supplier<CompletableFuture<byte[]>> asyncLoader = () -> completedFuture(loader.get());
+
+    @Before
+    public void setup() {
+        RESPONSE_CACHE_MAX_BYTES.setValue(INDEX_NAME, "1000");
+        RESPONSE_CACHE_TTL.setValue(INDEX_NAME, "60000");
+        RESPONSE_CACHE_STALE.setValue(INDEX_NAME, "60000");
+    }
+
+    @Test
+    public void shouldSearchOnlyOnceByRequestWithTheFilterNormalized() {
+        SearchApiRequest request = create().index(INDEX_NAME).filter("a = 1 AND b = 2").from(0).size(10).build();
+        SearchApiRequest sameFilter = create().index(INDEX_NAME).filter("a=1   AND b=2").from(0).size(10).build();
+
+        assertEquals("1", new String(responseCache.getAsync(request, asyncLoader).join()));
+        assertEquals("1", new String(responseCache.getAsync(sameFilter, asyncLoader).join()));
+        assertEquals(1, searches.get());
+
+        responseCache.getAsync(create().index(INDEX_NAME).filter("a = 1 AND b = 2").from(10).size(10).build(), asyncLoader).join();
+        responseCache.getAsync(create().index(INDEX_NAME).filter("a = 1 AND b = 2").from(0).size(10).sort("c ASC").build(), asyncLoader).join();
+        assertEquals(3, searches.get());
+
+        assertEquals(1L, responseCache.stats().get(INDEX_NAME).get("hitCount"));
+        assertEquals(3L, responseCache.stats().get(INDEX_NAME).get("missCount"));
+    }
+
+    @Test
+    public void shouldKeepTheResponseWhenTheAsyncLoaderCompletes() throws Exception {
+        RESPONSE_CACHE_TTL.setValue(INDEX_NAME, "1");
+        SearchApiRequest request = create().index(INDEX_NAME).filter("a = 1").from(0).size(10).build();
+        CompletableFuture<byte[]> search = new CompletableFuture<>();
+
+        CompletableFuture<byte[]> response = responseCache.getAsync(request, () -> search);
+        assertFalse(response.isDone());
+        search.complete(loader.get());
+        assertEquals("1", new String(response.get(5, SECONDS)));
+        Thread.sleep(5);
+
+        assertEquals("1", new String(responseCache.getAsync(request, asyncLoader).get(5, SECONDS)));
+        assertEquals(2, searches.get());
+        assertEquals(1L, responseCache.stats().get(INDEX_NAME).get("hitCount"));
+        assertEquals(1L, responseCache.stats().get(INDEX_NAME).get("refreshCount"));
+    }
+
+    @Test
+    public void shouldServeTheStaleResponseWhileRefreshing() throws Exception {
+        RESPONSE_CACHE_TTL.setValue(INDEX_NAME, "1");
+        SearchApiRequest request = create().index(INDEX_NAME).filter("a = 1").build();
+        responseCache.getAsync(request, asyncLoader).join();
+        Thread.sleep(5);
+
+        CompletableFuture<byte[]> refresh = new CompletableFuture<>();
+        AtomicInteger refreshes = new AtomicInteger();
+        Supplier<CompletableFuture<byte[]>> slowLoader = () -> {
+            refreshes.incrementAndGet();
+            return refresh;
+        };
+
+        assertEquals("1", new String(responseCache.getAsync(request, slowLoader).get(5, SECONDS)));
+        assertEquals("1", new String(responseCache.getAsync(request, slowLoader).get(5, SECONDS)));
+        assertEquals(1, refreshes.get());
+        assertEquals(0L, responseCache.stats().get(INDEX_NAME).get("refreshCount"));
+
+        refresh.complete("2".getBytes());
+        assertEquals(1L, responseCache.stats().get(INDEX_NAME).get("refreshCount"));
+    }
+
+    @Test
+    public void shouldNotCacheWhenMaxBytesIsNotPositive() {
+        RESPONSE_CACHE_MAX_BYTES.setValue(INDEX_NAME, "0");
+        SearchApiRequest request = create().index(INDEX_NAME).build();
+
+        assertFalse(responseCache.isEnabled(INDEX_NAME));
+        responseCache.getAsync(request, asyncLoader).join();
+        responseCache.getAsync(request, asyncLoader).join();
+        assertEquals(2, searches.get());
+    }
+}
@@ -0,0 +1,109 @@
+package com.vivareal.search.api.cache;
+
+import com.vivareal.search.api.model.http.SearchApiRequest;
+import com.vivareal.search.api.model.http.SearchApiRequestBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.vivareal.search.api.cache.SearchTemplateCache.Section.*;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.QS_MM;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SEARCH_TEMPLATE_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.junit.Assert.*;
+
+public class SearchTemplateCacheTest {
+
+    private final SearchTemplateCache searchTemplateCache = new SearchTemplateCache(new IndexCacheRegistry());
+
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private final Function<SearchApiRequest, SearchSourceBuilder> builder = request -> {
+        builds.incrementAndGet();
+        return new SearchSourceBuilder().query(matchQuery("field", request.getFilter()));
+    };
+
+    @Before
+    public void setup() {
+        SEARCH_TEMPLATE_CACHE_SIZE.setValue(INDEX_NAME, "10");
+    }
+
+    @Test
+    public void shouldBuildOnceForRequestsWithTheSameShape() {
+        SearchSourceBuilder first = searchTemplateCache.get(INDEX_NAME, request().from(0).size(10).build(), 1, builder);
+        SearchSourceBuilder second = searchTemplateCache.get(INDEX_NAME, request().from(10).size(20).cursorId("1_a").build(), 1, builder);
+
+        assertEquals(1, builds.get());
+        assertNotSame(first, second);
+        assertSame(first.query(), second.query());
+    }
+
+    @Test
+    public void shouldNotShareThePaginationBetweenCopies() {
+        SearchSourceBuilder first = searchTemplateCache.get(INDEX_NAME, request().build(), 1, builder).from(10).size(5).searchAfter(new Object[]{"a"});
+        SearchSourceBuilder second = searchTemplateCache.get(INDEX_NAME, request().build(), 1, builder);
+
+        assertEquals(10, first.from());
+        assertEquals(-1, second.from());
+        assertEquals(-1, second.size());
+        assertNull(second.searchAfter());
+    }
+
+    @Test
+    public void shouldBuildAgainForDifferentShapes() {
+        searchTemplateCache.get(INDEX_NAME, request().build(), 1, builder);
+        searchTemplateCache.get(INDEX_NAME, request().filter("b:2").build(), 1, builder);
+        searchTemplateCache.get(INDEX_NAME, request().sort("price ASC").build(), 1, builder);
+
+        assertEquals(3, builds.get());
+    }
+
+    @Test
+    public void shouldShareTheFacetsTemplateBetweenSorts() {
+        searchTemplateCache.get(INDEX_NAME, request().build(), FACETS, 1, builder);
+        searchTemplateCache.get(INDEX_NAME, request().sort("price ASC").build(), FACETS, 1, builder);
+        assertEquals(1, builds.get());
+
+        searchTemplateCache.get(INDEX_NAME, request().build(), HITS, 1, builder);
+        searchTemplateCache.get(INDEX_NAME, request().build(), HITS_AND_FACETS, 1, builder);
+        assertEquals(3, builds.get());
+    }
+
+    @Test
+    public void shouldBuildAgainWhenMappingVersionChanges() {
+        searchTemplateCache.get(INDEX_NAME, request().build(), 1, builder);
+        searchTemplateCache.get(INDEX_NAME, request().build(), 2, builder);
+
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    public void shouldNotServeATemplateBuiltForAnotherMappingVersion() {
+        Function<SearchApiRequest, SearchSourceBuilder> versionOne = request -> new SearchSourceBuilder().query(matchQuery("field", "v1"));
+        Function<SearchApiRequest, SearchSourceBuilder> versionTwo = request -> new SearchSourceBuilder().query(matchQuery("field", "v2"));
+
+        searchTemplateCache.get(INDEX_NAME, request().build(), 2, versionTwo);
+        SearchSourceBuilder older = searchTemplateCache.get(INDEX_NAME, request().build(), 1, versionOne);
+        SearchSourceBuilder newer = searchTemplateCache.get(INDEX_NAME, request().build(), 2, versionOne);
+
+        assertEquals(matchQuery("field", "v1"), older.query());
+        assertEquals(matchQuery("field", "v2"), newer.query());
+    }
+
+    @Test
+    public void shouldBuildAgainWhenRemotePropertiesChange() {
+        searchTemplateCache.get(INDEX_NAME, request().build(), 1, builder);
+        QS_MM.setValue(INDEX_NAME, String.valueOf(System.nanoTime()));
+        searchTemplateCache.get(INDEX_NAME, request().build(), 1, builder);
+
+        assertEquals(2, builds.get());
+    }
+
+    private static SearchApiRequestBuilder.ComplexRequestBuilder request() {
+        return SearchApiRequestBuilder.create().index(INDEX_NAME).filter("a:1");
+    }
+}
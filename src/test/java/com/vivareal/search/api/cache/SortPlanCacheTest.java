@@ -0,0 +1,52 @@
+package com.vivareal.search.api.cache;
+
+import org.elasticsearch.search.sort.SortBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SORT_PLAN_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static java.util.Collections.singletonList;
+import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SortPlanCacheTest {
+
+    private final SortPlanCache sortPlanCache = new SortPlanCache(new IndexCacheRegistry());
+
+    private final AtomicInteger compilations = new AtomicInteger();
+
+    private final BiFunction<String, String, List<SortBuilder<?>>> compiler = (index, sort) -> {
+        compilations.incrementAndGet();
+        return singletonList(fieldSort(sort));
+    };
+
+    @Before
+    public void setup() {
+        SORT_PLAN_CACHE_SIZE.setValue(INDEX_NAME, "10");
+    }
+
+    @Test
+    public void shouldCompileOnceBySortAndMappingVersion() {
+        List<SortBuilder<?>> first = sortPlanCache.get(INDEX_NAME, "a ASC", 1, compiler);
+
+        assertSame(first, sortPlanCache.get(INDEX_NAME, "a ASC", 1, compiler));
+        assertEquals(1, compilations.get());
+
+        sortPlanCache.get(INDEX_NAME, "b ASC", 1, compiler);
+        assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void shouldCompileAgainWhenMappingVersionChanges() {
+        sortPlanCache.get(INDEX_NAME, "a ASC", 1, compiler);
+        sortPlanCache.get(INDEX_NAME, "a ASC", 2, compiler);
+
+        assertEquals(2, compilations.get());
+    }
+}
@@ -0,0 +1,55 @@
+package com.vivareal.search.api.cache;
+
+import com.vivareal.search.api.model.search.Fetchable;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.SOURCE_FIELDS_CACHE_SIZE;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.basic;
+import static org.junit.Assert.*;
+
+public class SourceFieldsCacheTest {
+
+    private final SourceFieldsCache sourceFieldsCache = new SourceFieldsCache(new IndexCacheRegistry());
+
+    private final AtomicInteger resolutions = new AtomicInteger();
+
+    private final Function<Fetchable, FetchSourceContext> resolver = request -> {
+        resolutions.incrementAndGet();
+        return new FetchSourceContext(true, request.getIncludeFields().toArray(new String[0]), new String[0]);
+    };
+
+    @Before
+    public void setup() {
+        SOURCE_FIELDS_CACHE_SIZE.setValue(INDEX_NAME, "10");
+    }
+
+    @Test
+    public void shouldResolveOnceForTheSameFields() {
+        FetchSourceContext first = sourceFieldsCache.get(basic().index(INDEX_NAME).includeFields(newHashSet("a", "b")).build(), false, 1, resolver);
+        FetchSourceContext second = sourceFieldsCache.get(basic().index(INDEX_NAME).includeFields(newHashSet("b", "a")).build(), false, 1, resolver);
+
+        assertEquals(1, resolutions.get());
+        assertSame(first, second);
+
+        sourceFieldsCache.get(basic().index(INDEX_NAME).includeFields(newHashSet("a")).build(), false, 1, resolver);
+        assertEquals(2, resolutions.get());
+
+        sourceFieldsCache.get(basic().index(INDEX_NAME).includeFields(newHashSet("a", "b")).build(), true, 1, resolver);
+        assertEquals(3, resolutions.get());
+    }
+
+    @Test
+    public void shouldResolveAgainWhenTheMappingChanges() {
+        sourceFieldsCache.get(basic().index(INDEX_NAME).includeFields(newHashSet("a")).build(), false, 1, resolver);
+        sourceFieldsCache.get(basic().index(INDEX_NAME).includeFields(newHashSet("a")).build(), false, 2, resolver);
+
+        assertEquals(2, resolutions.get());
+    }
+}
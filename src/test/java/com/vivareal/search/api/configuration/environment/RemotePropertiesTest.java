@@ -30,9 +30,9 @@ public class RemotePropertiesTest {
     private static final String NON_EXISTING_INDEX = "nonExistingIndex";
     private static final String CUSTOM_INDEX = "customIndex";
 
-    private static final Set<RemoteProperties> PROPERTIES_AS_SET = newLinkedHashSet(QS_DEFAULT_FIELDS, SOURCE_INCLUDES, SOURCE_EXCLUDES);
-    private static final Set<RemoteProperties> NUMERIC_PROPERTIES = newLinkedHashSet(ES_DEFAULT_SIZE, ES_MAX_SIZE, ES_FACET_SIZE, ES_QUERY_TIMEOUT_VALUE, ES_STREAM_SIZE, ES_SCROLL_TIMEOUT);
-    private static final Set<RemoteProperties> TIME_AS_SET = newLinkedHashSet(ES_CONTROLLER_SEARCH_TIMEOUT, ES_CONTROLLER_STREAM_TIMEOUT);
+    private static final Set<RemoteProperties> PROPERTIES_AS_SET = newLinkedHashSet(QS_DEFAULT_FIELDS, SOURCE_INCLUDES, SOURCE_EXCLUDES, FILTER_OPTIMIZER, ES_FACET_CARDINALITY);
+    private static final Set<RemoteProperties> NUMERIC_PROPERTIES = newLinkedHashSet(ES_DEFAULT_SIZE, ES_MAX_SIZE, ES_MGET_MAX_IDS, ES_FACET_SIZE, ES_FACET_MAP_CARDINALITY, ES_FACET_TIMEOUT_VALUE, ES_QUERY_TIMEOUT_VALUE, ES_STREAM_SIZE, ES_MSEARCH_MAX_REQUESTS, ES_DEEP_PAGE_FROM, ES_DOCVALUE_PROJECTION_MAX_FIELDS, ES_SCROLL_TIMEOUT, FILTER_CACHE_SIZE, FILTER_QUERY_CACHE_SIZE, LIKE_NGRAM_MIN_GRAM, LIKE_NGRAM_MAX_GRAM, POLYGON_SIMPLIFY_TOLERANCE, VIEWPORT_TILE_ZOOM, SEARCH_TEMPLATE_CACHE_SIZE, SORT_PLAN_CACHE_SIZE, QS_PLAN_CACHE_SIZE, FACET_PLAN_CACHE_SIZE, SOURCE_FIELDS_CACHE_SIZE, DOCUMENT_CACHE_SIZE, DOCUMENT_CACHE_MAX_BYTES, RESPONSE_CACHE_MAX_BYTES, PAGE_CHECKPOINT_CACHE_SIZE);
+    private static final Set<RemoteProperties> TIME_AS_SET = newLinkedHashSet(ES_CONTROLLER_SEARCH_TIMEOUT, ES_CONTROLLER_STREAM_TIMEOUT, DOCUMENT_CACHE_TTL, RESPONSE_CACHE_TTL, RESPONSE_CACHE_STALE, ES_DEEP_PAGE_CHECKPOINT_TTL);
     private static final Set<RemoteProperties> TEXT_PROPERTIES = of(values()).filter(p -> !PROPERTIES_AS_SET.contains(p) && !NUMERIC_PROPERTIES.contains(p) && !TIME_AS_SET.contains(p)).collect(toSet());
 
     @Before
@@ -240,6 +240,18 @@ public class RemotePropertiesTest {
         });
     }
 
+    @Test
+    public void changeVersionOnlyWhenValueChanges() {
+        QS_MM.setValue(CUSTOM_INDEX, "75%");
+        long version = version();
+
+        QS_MM.setValue(CUSTOM_INDEX, "75%");
+        assertEquals(version, version());
+
+        QS_MM.setValue(CUSTOM_INDEX, "50%");
+        assertEquals(version + 1, version());
+    }
+
     private void checkIsValidRequestForProperty(RemoteProperties property, Set<String> expectedIndexValue, String indexName) {
         assertEquals(property.name(), expectedIndexValue, property.getValue(null, indexName));
         assertEquals(property.name(), expectedIndexValue, property.getValue(new HashSet<>(), indexName));
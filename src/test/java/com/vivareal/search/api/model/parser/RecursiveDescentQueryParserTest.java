@@ -0,0 +1,215 @@
+package com.vivareal.search.api.model.parser;
+
+import com.vivareal.search.api.model.query.*;
+import org.jparsec.error.ParserException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class RecursiveDescentQueryParserTest {
+
+    private static final List<String> QUERIES = asList(
+        "field1 EQ 'value1' AND field2 NE 'value2' OR field3 GT 123 AND field4 NE 42",
+        "banos IN [3,4]",
+        "address.geoLocation IN [1, \"df\", true, null]",
+        "rooms:3 OR (parkingLots:1 AND xpto <> 3)",
+        "rooms:3 AND pimba:2 AND(suites=1 OR (parkingLots IN [1,\"abc\"] AND xpto <> 3))",
+        "a = 2 AND b = 3",
+        "(a = 2) AND (b = 1)",
+        "((a = 2) AND (b = 3))",
+        "(a = 2 AND (b = 3))",
+        "suites=1 AND NOT a:\"a\"",
+        "suites=1 AND (x=1 OR NOT a:\"a\")",
+        "suites=1 AND (NOT a:\"a\")",
+        "(NOT suites=1)",
+        "NOT NOT suites=1",
+        "rooms:3",
+        "(rooms:3)",
+        "x LESS_EQUAL 10",
+        "AND field:1",
+        Collections.nCopies(QueryFragment.MAX_FRAGMENTS + 1, "field:1").stream().collect(Collectors.joining(" AND ")),
+        "field=\"value\"",
+        "field10=10",
+        "field.field2 = 'space value'",
+        "list IN [\"a\", 'b']",
+        "list = [\"a\", 'b']",
+        "list IN \"a\", \"b\"",
+        "field = \"\"",
+        "field = NULL",
+        "field = 'NULL'",
+        "field = true",
+        "field = FALSE",
+        "field = [   1.2 ,'2   ',          3    ,   \"   4   \"  , error   ]",
+        "field = unquoted",
+        "field LIKE '%a_b\\%'",
+        "price RANGE [1, 10]",
+        "price RG [1,2,3]",
+        "address.geoLocation EQ [[-23.5534103,-46.6597479],[-23.5534103,-46.6597479]]",
+        "address.geoLocation VIEWPORT [[-23.5534103,-46.6597479],[-23.5534103,-46.6597479]]",
+        "address.geoLocation VIEWPORT [[-23.5534103,-46.6597479],[-23.5534103]]",
+        "address.geoLocation VIEWPORT [[-23.5534103,-46.6597479]]",
+        "address.geoLocation VIEWPORT []",
+        "address.geoLocation VIEWPORT [,]",
+        "address.geoLocation VIEWPORT \"df\"",
+        "address.geoLocation VIEWPORT",
+        "address.geoLocation POLYGON [[42.0,-74.0],[-40.0,-72.0],[-30.0,-23.0]]",
+        "address.geoLocation POLYGON [[42.0,-74.0],[-40.0,-72.0]]",
+        "address.geoLocation POLYGON [[,-74.0],[-40.0,-72.0],[-30,-23]]",
+        "",
+        "   ",
+        "a:1 b:2",
+        "a = 'x' AND b",
+        "a:1 AND AND b:2",
+        "a:99999999999"
+    );
+
+    private static final String[] FILTERS = {"a:1", "a.b IN [1, 'x']", "price RANGE [1, 10]", "loc VIEWPORT [[-23.5,-46.6],[-23.4,-46.5]]", "loc POLYGON [[-23.5,-46.6], [-23.4,-46.5], [-23.3,-46.4]]", "title LIKE '%casa_%'", "x >= 1.5", "b <> \"y\"", "flag = true", "v = NULL", "n LT -.5"};
+
+    private static final String[] FIELDS = {"a", "field", "a.b", "x_1", "NOTa", "ANDb", "a.", "_f", "1a", "a..b"};
+
+    private static final String[] OPERATORS = {":", "=", "EQ", "NE", "<>", ">", ">=", "GT", "GTE", "<", "<=", "LT", "LTE", "IN", "INTO", "LIKE", "LK", "RG", "RANGE", "@", "VIEWPORT", "PG", "POLYGON", "EQUAL", "LESS_EQUAL", "GREATER", "==", "!"};
+
+    private static final String[] VALUES = {"1", "-1", "1.5", ".5", "1.", "-.5", "-0", "99999999999", "01", "true", "FALSE", "null", "NuLl", "trueish", "'x'", "'it''s'", "\"a\\\"b\"", "\"x'y\"", "' spaced '", "'unterminated", "\"unterminated", "[1,2]", "[1, 2]", "[ 1 ,2 ]", "[]", "[ ]", "[1,]", "[1, ]", "['a','b']", "[[1,2],[3,4]]", "[[1.0,2.0],[3.0,4.0]]", "[[-23.5,-46.6],[-23.4,-46.5]]", "[[-23.5,-46.6], [-23.4,-46.5], [-23.3,-46.4]]", "[[1.0,2.0] ,[3.0,4.0]]", "[[1.0,2.0] , [3.0,4.0]]", "'%a_b%'", "abc", "1e3", "--1"};
+
+    private static final String[] LOGICAL_OPERATORS = {"AND", "OR", "&&", "||", "AND AND", "ANDOR"};
+
+    private static final String[] WHITESPACES = {"", " ", " ", " ", "  ", "\t", "\n"};
+
+    private static final String MUTATIONS = "()[],'\" :ANDOTR1a.-\n";
+
+    @Test
+    public void sameResultsOfQueryParserForTheFixtures() {
+        QUERIES.forEach(RecursiveDescentQueryParserTest::assertSameResultOfQueryParser);
+    }
+
+    @Test
+    public void sameResultsOfQueryParserForRandomQueries() {
+        Random random = new Random(1618L);
+        for (int i = 0; i < 20000; i++) {
+            String query = query(random, 0);
+            if (random.nextInt(3) == 0)
+                query = mutate(random, query);
+
+            assertSameResultOfQueryParser(query);
+        }
+    }
+
+    @Test
+    public void sameErrorPositions() {
+        assertEquals("1:13", parse(RecursiveDescentQueryParser::parse, "a = 'x' AND b"));
+        assertEquals("1:9", parse(RecursiveDescentQueryParser::parse, "a:1 AND AND b:2"));
+        assertEquals("1:8", parse(RecursiveDescentQueryParser::parse, "AND a:1"));
+        assertEquals("1:9", parse(RecursiveDescentQueryParser::parse, "NOT NOT a:1"));
+        assertEquals("1:1", parse(RecursiveDescentQueryParser::parse, ""));
+    }
+
+    @Test(expected = ParserException.class)
+    public void exceededQueryFragmentLists() {
+        RecursiveDescentQueryParser.parse(QUERIES.get(18));
+    }
+
+    @Test
+    public void keepTheCauseOfFailures() {
+        try {
+            RecursiveDescentQueryParser.parse(QUERIES.get(18));
+        } catch (ParserException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+            assertTrue(e.getMessage().contains(e.getCause().getMessage()));
+            return;
+        }
+        fail();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiableQueryFragmentList() {
+        ((QueryFragmentList) RecursiveDescentQueryParser.parse("a:1 AND b:2")).add(new QueryFragmentOperator(LogicalOperator.OR));
+    }
+
+    private static void assertSameResultOfQueryParser(String query) {
+        assertEquals(query, parse(QueryParser::parse, query), parse(RecursiveDescentQueryParser::parse, query));
+    }
+
+    private static String parse(Function<String, QueryFragment> parser, String query) {
+        try {
+            return describe(parser.apply(query));
+        } catch (ParserException e) {
+            return e.getLocation().line + ":" + e.getLocation().column;
+        }
+    }
+
+    private static String describe(Object object) {
+        if (object instanceof QueryFragmentList)
+            return ((QueryFragmentList) object).stream().map(RecursiveDescentQueryParserTest::describe).collect(Collectors.joining(" ", "(", ")"));
+
+        if (object instanceof QueryFragmentItem) {
+            QueryFragmentItem item = (QueryFragmentItem) object;
+            return item.getLogicalOperator() + " " + describe(item.getFilter());
+        }
+
+        if (object instanceof QueryFragmentNot)
+            return ((QueryFragmentNot) object).isNot() ? "NOT" : "!NOT";
+
+        if (object instanceof Filter) {
+            Filter filter = (Filter) object;
+            return filter.getField().getName() + " " + filter.getRelationalOperator() + " " + describe(filter.getValue());
+        }
+
+        if (object instanceof Value) {
+            Value value = (Value) object;
+            return value.getClass().getSimpleName() + value.stream().map(RecursiveDescentQueryParserTest::describe).collect(Collectors.joining(",", "[", "]"));
+        }
+
+        return object == null ? "null" : object.getClass().getSimpleName() + "<" + object + ">";
+    }
+
+    private static String query(Random random, int depth) {
+        switch (depth < 3 ? random.nextInt(6) : 0) {
+            case 0:
+            case 1:
+                return filter(random);
+            case 2:
+                return "(" + whitespace(random) + query(random, depth + 1) + whitespace(random) + ")";
+            case 3:
+                return "NOT" + whitespace(random) + query(random, depth + 1);
+            default:
+                return query(random, depth + 1) + whitespace(random) + pick(random, LOGICAL_OPERATORS) + whitespace(random) + query(random, depth + 1);
+        }
+    }
+
+    private static String filter(Random random) {
+        if (random.nextBoolean())
+            return pick(random, FILTERS);
+
+        return pick(random, FIELDS) + whitespace(random) + pick(random, OPERATORS) + whitespace(random) + pick(random, VALUES);
+    }
+
+    private static String whitespace(Random random) {
+        return pick(random, WHITESPACES);
+    }
+
+    private static String mutate(Random random, String query) {
+        if (query.isEmpty())
+            return query;
+
+        int index = random.nextInt(query.length());
+        switch (random.nextInt(3)) {
+            case 0:
+                return query.substring(0, index) + query.substring(index + 1);
+            case 1:
+                return query.substring(0, index) + MUTATIONS.charAt(random.nextInt(MUTATIONS.length())) + query.substring(index);
+            default:
+                return query.substring(0, index) + query.substring(index, Math.min(query.length(), index + 4)) + query.substring(index);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,65 @@
+package com.vivareal.search.api.model.query;
+
+import com.vivareal.search.api.model.parser.RecursiveDescentQueryParser;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.*;
+
+public class ValueArrayTest {
+
+    @Test
+    public void integersAreEqualToListOfValues() {
+        List<Object> values = new ValueArray.Builder().add(1).add(2).add(3).build();
+
+        assertThat(values, instanceOf(ValueArray.Integers.class));
+        assertArrayEquals(new int[]{1, 2, 3}, ((ValueArray.Integers) values).values());
+        assertEquals(asList(new Value(1), new Value(2), new Value(3)), values);
+        assertEquals(asList(new Value(1), new Value(2), new Value(3)).hashCode(), values.hashCode());
+        assertEquals(new Value(asList(new Value(1), new Value(2), new Value(3))), new Value((Object) values));
+    }
+
+    @Test
+    public void decimalsAndStrings() {
+        List<Object> decimals = new ValueArray.Builder().add(1.5).add(-2.0).build();
+        List<Object> strings = new ValueArray.Builder().add("a").add(new Value("b")).build();
+
+        assertArrayEquals(new double[]{1.5, -2.0}, ((ValueArray.Decimals) decimals).values(), 0);
+        assertArrayEquals(new String[]{"1.5", "-2.0"}, ((ValueArray.Decimals) decimals).toStrings());
+        assertArrayEquals(new String[]{"a", "b"}, ((ValueArray.Strings) strings).values());
+    }
+
+    @Test
+    public void mixedTypesFallBackToListOfValues() {
+        List<Object> values = new ValueArray.Builder().add(1).add(2).add(2.5).add(Value.NULL_VALUE).add("a").build();
+
+        assertFalse(values instanceof ValueArray);
+        assertEquals(asList(new Value(1), new Value(2), new Value(2.5), Value.NULL_VALUE, new Value("a")), values);
+    }
+
+    @Test
+    public void emptyList() {
+        List<Object> values = new ValueArray.Builder().build();
+
+        assertTrue(values.isEmpty());
+        assertNull(new Value((Object) values).array());
+    }
+
+    @Test
+    public void parseLongInListIntoPrimitiveArray() {
+        StringBuilder query = new StringBuilder("id IN [");
+        for (int i = 0; i < 1000; i++)
+            query.append(i == 0 ? "" : ",").append(i);
+
+        QueryFragmentItem item = (QueryFragmentItem) ((QueryFragmentList) RecursiveDescentQueryParser.parse(query.append("]").toString())).get(0);
+        ValueArray values = item.getFilter().getValue().array();
+
+        assertThat(values, instanceOf(ValueArray.Integers.class));
+        assertEquals(1000, values.size());
+        assertEquals(999, ((ValueArray.Integers) values).values()[999]);
+        assertEquals(Integer.valueOf(999), item.getFilter().getValue().value(999));
+    }
+}
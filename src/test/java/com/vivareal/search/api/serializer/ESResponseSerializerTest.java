@@ -7,8 +7,11 @@ import com.vivareal.search.api.model.serializer.SearchResponseEnvelope;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.text.Text;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.SearchSortValues;
 import org.elasticsearch.search.aggregations.Aggregation;
@@ -26,7 +29,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.vivareal.search.api.adapter.CursorCodec.encode;
+import static com.vivareal.search.api.adapter.CursorCodec.fingerprint;
 import static com.vivareal.search.api.model.http.SearchApiRequestBuilder.INDEX_NAME;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.util.Lists.newArrayList;
 import static org.elasticsearch.search.SearchHit.createFromMap;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -266,7 +273,31 @@ public class ESResponseSerializerTest {
         hits[0] = createFromMap(values);
 
         when(searchHits.getHits()).thenReturn(hits);
-        assertThat(mapper.writeValueAsString(new SearchResponseEnvelope<>(INDEX_NAME, searchResponse)), containsString("\"cursorId\":\"0.23456_A%5fB_" + _uid + "\""));
+        String cursorId = encode(fingerprint(INDEX_NAME, "field ASC"), new Object[]{0.23456, "A_B", _uid});
+        assertThat(mapper.writeValueAsString(new SearchResponseEnvelope<>(INDEX_NAME, searchResponse, "field ASC")), containsString("\"cursorId\":\"" + cursorId + "\""));
     }
 
+    @Test
+    public void shouldRenderHitsProjectedFromDocValuesWithTheSourcePaths() throws IOException {
+        SearchResponse searchResponse = mock(SearchResponse.class);
+        when(searchResponse.getTookInMillis()).thenReturn(2L);
+
+        SearchHits searchHits = mock(SearchHits.class);
+        when(searchResponse.getHits()).thenReturn(searchHits);
+        when(searchHits.getTotalHits()).thenReturn(1L);
+
+        Map<String, SearchHitField> fields = new LinkedHashMap<>();
+        fields.put("price", new SearchHitField("price", singletonList(100L)));
+        fields.put("id", new SearchHitField("id", singletonList("1")));
+        fields.put("address.geoLocation", new SearchHitField("address.geoLocation", singletonList(new GeoPoint(-23.5, -46.6))));
+        fields.put("address.city", new SearchHitField("address.city", singletonList("Sao Paulo")));
+        fields.put("tags", new SearchHitField("tags", asList("a", "b")));
+
+        when(searchHits.getHits()).thenReturn(new SearchHit[]{new SearchHit(1, "1", new Text(INDEX_NAME), fields)});
+
+        String expected = "{\"time\":2,\"totalCount\":1,\"result\":{\"" + INDEX_NAME + "\":["
+            + "{\"address\":{\"city\":\"Sao Paulo\"},\"id\":\"1\",\"price\":100,\"tags\":[\"a\",\"b\"]}"
+            + "]}}";
+        assertEquals(expected, mapper.writeValueAsString(new SearchResponseEnvelope<>(INDEX_NAME, searchResponse)));
+    }
 }
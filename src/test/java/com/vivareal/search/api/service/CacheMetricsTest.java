@@ -0,0 +1,66 @@
+package com.vivareal.search.api.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.vivareal.search.api.service.CacheMetrics.name;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CacheMetricsTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final CacheService cacheService = mock(CacheService.class);
+
+    private final CacheMetrics cacheMetrics = new CacheMetrics(registry, cacheService);
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    @Before
+    public void setup() {
+        Map<String, Map<String, Map<String, Object>>> stats = new HashMap<>();
+        stats.put("document", singletonMap("my_index", values));
+        when(cacheService.localStats()).thenReturn(stats);
+    }
+
+    @Test
+    public void shouldNameTheMetricsByStat() {
+        assertEquals("search.cache.hit", name("hit"));
+        assertEquals("search.cache.hit.rate", name("hitRate"));
+        assertEquals("search.cache.memory.size.in.bytes", name("memorySizeInBytes"));
+    }
+
+    @Test
+    public void shouldRegisterTheCountsAsCountersAndTheOtherStatsAsGauges() {
+        values.put("hitCount", 3L);
+        values.put("revalidationCount", 2L);
+        values.put("size", 5);
+        values.put("enabled", true);
+        cacheMetrics.refresh();
+
+        assertEquals(3.0, registry.get("search.cache.hit").tags("cache", "document", "index", "my_index").functionCounter().count(), 0);
+        assertEquals(2.0, registry.get("search.cache.revalidation").functionCounter().count(), 0);
+        assertEquals(5.0, registry.get("search.cache.size").gauge().value(), 0);
+        assertNull(registry.find("search.cache.enabled").meter());
+    }
+
+    @Test
+    public void shouldReadTheStatsOfTheLastRefresh() {
+        values.put("hitCount", 3L);
+        cacheMetrics.refresh();
+        values.put("hitCount", 7L);
+        cacheMetrics.refresh();
+
+        assertEquals(1, registry.find("search.cache.hit").meters().size());
+        assertEquals(7.0, registry.get("search.cache.hit").functionCounter().count(), 0);
+    }
+}
@@ -0,0 +1,45 @@
+package com.vivareal.search.api.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.vivareal.search.api.configuration.environment.RemoteProperties.ES_MSEARCH_MAX_REQUESTS;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.springframework.test.util.ReflectionTestUtils.getField;
+
+public class SearchServiceTest {
+
+    private final SearchService searchService = new SearchService();
+
+    private final Map<String, Object> maxRequests = new HashMap<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void unsetMaxRequests() {
+        Map<String, Object> indexProperties = (Map<String, Object>) getField(ES_MSEARCH_MAX_REQUESTS, "indexProperties");
+        maxRequests.putAll(indexProperties);
+        indexProperties.clear();
+    }
+
+    @After
+    @SuppressWarnings("unchecked")
+    public void restoreMaxRequests() {
+        ((Map<String, Object>) getField(ES_MSEARCH_MAX_REQUESTS, "indexProperties")).putAll(maxRequests);
+    }
+
+    @Test
+    public void shouldRejectEmptyMultiSearchWithoutMaxRequests() {
+        try {
+            searchService.multiSearch(emptyList());
+            fail("An empty multi search should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("The multi search must have at least 1 request", e.getMessage());
+        }
+    }
+}